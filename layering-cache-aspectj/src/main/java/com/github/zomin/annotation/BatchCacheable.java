@@ -0,0 +1,82 @@
+package com.github.zomin.annotation;
+
+import org.springframework.core.annotation.AliasFor;
+
+import java.lang.annotation.*;
+
+/**
+ * 表示调用的方法的结果可以按元素批量缓存，适用于 {@code Map<Long, User> findByIds(List<Long> ids)} 这类方法。
+ * 被注解方法的批量参数必须是 {@link java.util.Collection}，返回值必须是以批量参数元素为key的 {@link java.util.Map}。
+ * <p>调用时会将批量参数拆分成每个元素各自的缓存key，命中的元素直接从一级/二级缓存返回，
+ * 只用未命中的元素调用一次被缓存的方法，最后将结果合并返回。</p>
+ *
+ * @author kalend.zhang
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface BatchCacheable {
+
+    /**
+     * 别名是 {@link #cacheNames}.
+     *
+     * @return String[]
+     */
+    @AliasFor("cacheNames")
+    String[] value() default {};
+
+    /**
+     * 缓存名称
+     *
+     * @return String[]
+     */
+    @AliasFor("value")
+    String[] cacheNames() default {};
+
+    /**
+     * 描述
+     *
+     * @return String
+     */
+    String depict() default "";
+
+    /**
+     * 批量参数在方法参数列表中的位置，默认第一个参数
+     *
+     * @return int
+     */
+    int batchArgIndex() default 0;
+
+    /**
+     * 每个元素的缓存key，支持SpEL表达式，默认直接使用元素本身作为key
+     * <p>除了 {@link Cacheable#key()} 支持的内容外，还可以通过 {@code #element} 引用当前元素，
+     * 如 {@code 'user:' + #element}</p>
+     *
+     * @return String
+     */
+    String key() default "";
+
+    /**
+     * 是否忽略在操作缓存中遇到的异常，如反序列化异常，默认true。
+     * <p>true: 有异常会输出warn级别的日志，并直接执行被缓存的方法（缓存将失效）</p>
+     * <p>false:有异常会输出error级别的日志，并抛出异常</p>
+     *
+     * @return boolean
+     */
+    boolean ignoreException() default true;
+
+    /**
+     * 一级缓存配置
+     *
+     * @return FirstCache
+     */
+    FirstCache firstCache() default @FirstCache();
+
+    /**
+     * 二级缓存配置
+     *
+     * @return SecondaryCache
+     */
+    SecondaryCache secondaryCache() default @SecondaryCache();
+}
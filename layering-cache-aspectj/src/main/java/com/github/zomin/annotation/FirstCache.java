@@ -29,6 +29,13 @@ public @interface FirstCache {
      */
     int maximumSize() default 5000;
 
+    /**
+     * 缓存最大权重，默认按估算的内存占用（字节）计算，大于0时按权重淘汰并忽略maximumSize
+     *
+     * @return long
+     */
+    long maximumWeight() default 0;
+
     /**
      * 缓存有效时间
      *
@@ -50,4 +57,25 @@ public @interface FirstCache {
      * @see ExpireMode
      */
     ExpireMode expireMode() default ExpireMode.WRITE;
+
+    /**
+     * 缓存刷新时间，时间单位同有效时间，写入超过该时间后的读取返回旧值并异步从二级缓存刷新，0表示不刷新
+     *
+     * @return int
+     */
+    int refreshTime() default 0;
+
+    /**
+     * 是否把缓存值序列化后存放在堆外内存，适合数据量大、读多写少的缓存，减少GC压力
+     *
+     * @return boolean
+     */
+    boolean offHeap() default false;
+
+    /**
+     * 是否在一级缓存里存放二级缓存读到的原始字节，第一次读取时才反序列化，适合读多写少的不可变数据
+     *
+     * @return boolean
+     */
+    boolean lazyDeserialize() default false;
 }
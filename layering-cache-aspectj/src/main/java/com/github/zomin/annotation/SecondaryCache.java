@@ -59,4 +59,11 @@ public @interface SecondaryCache {
      * @return int
      */
     int magnification() default 1;
+
+    /**
+     * 压缩阈值，序列化后不小于该字节数的缓存值压缩后再放到redis，0表示不压缩
+     *
+     * @return int
+     */
+    int compressThreshold() default 0;
 }
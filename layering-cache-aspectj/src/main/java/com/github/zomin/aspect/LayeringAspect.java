@@ -30,8 +30,14 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * 缓存拦截，用于注册方法信息
@@ -44,6 +50,14 @@ public class LayeringAspect {
 
     private static final String CACHE_KEY_ERROR_MESSAGE = "缓存Key %s 不能为NULL";
     private static final String CACHE_NAME_ERROR_MESSAGE = "缓存名称不能为NULL";
+    private static final String BATCH_ARG_ERROR_MESSAGE = "批量缓存方法 %s 的第 %s 个参数必须是Collection";
+    private static final String BATCH_ARG_INDEX_ERROR_MESSAGE = "批量缓存方法 %s 的批量参数位置 %s 超出范围，方法参数个数是 %s";
+    private static final String BATCH_RESULT_ERROR_MESSAGE = "批量缓存方法 %s 的返回值必须是Map";
+
+    /**
+     * 批量缓存key的SpEL表达式中当前元素的变量名
+     */
+    private static final String ELEMENT_VARIABLE = "element";
 
     /**
      * SpEL表达式计算器
@@ -60,6 +74,10 @@ public class LayeringAspect {
     public void cacheablePointcut() {
     }
 
+    @Pointcut("@annotation(com.github.zomin.annotation.BatchCacheable)")
+    public void batchCacheablePointcut() {
+    }
+
     @Pointcut("@annotation(com.github.zomin.annotation.CacheEvict)")
     public void cacheEvictPointcut() {
     }
@@ -102,6 +120,33 @@ public class LayeringAspect {
         }
     }
 
+    @Around("batchCacheablePointcut()")
+    public Object batchCacheablePointcut(ProceedingJoinPoint joinPoint) throws Throwable {
+        CacheOperationInvoker aopAllianceInvoker = getCacheOperationInvoker(joinPoint);
+
+        // 获取method
+        Method method = this.getSpecificmethod(joinPoint);
+        // 获取注解
+        BatchCacheable batchCacheable = AnnotationUtils.findAnnotation(method, BatchCacheable.class);
+
+        try {
+            // 执行批量查询缓存方法
+            return executeBatchCacheable(joinPoint, batchCacheable, method, joinPoint.getArgs(), joinPoint.getTarget());
+        } catch (Exception e) {
+            // 被缓存的方法自己抛出的异常直接抛出，不能再调用一次
+            Throwable original = getMethodException(e);
+            if (original != null) {
+                throw original;
+            }
+            // 忽略操作缓存过程中遇到的异常
+            if (batchCacheable.ignoreException()) {
+                logger.warn(e.getMessage(), e);
+                return aopAllianceInvoker.invoke();
+            }
+            throw e;
+        }
+    }
+
     @Around("cacheEvictPointcut()")
     public Object cacheEvictPointcut(ProceedingJoinPoint joinPoint) throws Throwable {
         CacheOperationInvoker aopAllianceInvoker = getCacheOperationInvoker(joinPoint);
@@ -167,17 +212,7 @@ public class LayeringAspect {
         Assert.notNull(key, String.format(CACHE_KEY_ERROR_MESSAGE, cacheable.key()));
 
         // 从注解中获取缓存配置
-        FirstCache firstCache = cacheable.firstCache();
-        SecondaryCache secondaryCache = cacheable.secondaryCache();
-        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(firstCache.initialCapacity(), firstCache.maximumSize(),
-                firstCache.expireTime(), firstCache.timeUnit(), firstCache.expireMode());
-
-        SecondaryCacheSetting secondaryCacheSetting = new SecondaryCacheSetting(secondaryCache.expireTime(),
-                secondaryCache.preloadTime(), secondaryCache.timeUnit(), secondaryCache.forceRefresh(),
-                secondaryCache.isAllowNullValue(), secondaryCache.magnification());
-
-        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting, secondaryCacheSetting,
-                cacheable.depict());
+        LayeringCacheSetting layeringCacheSetting = buildLayeringCacheSetting(cacheable.firstCache(), cacheable.secondaryCache(), cacheable.depict());
 
         // 通过cacheName和缓存配置获取Cache
         Cache cache = cacheManager.getCache(cacheName, layeringCacheSetting);
@@ -186,6 +221,133 @@ public class LayeringAspect {
         return cache.get(key, () -> invoker.invoke());
     }
 
+    /**
+     * 执行BatchCacheable切面
+     *
+     * @param joinPoint      切点，用于使用未命中的元素调用被缓存的方法
+     * @param batchCacheable {@link BatchCacheable}
+     * @param method         {@link Method}
+     * @param args           注解方法参数
+     * @param target         target
+     * @return {@link Map}
+     */
+    private Object executeBatchCacheable(ProceedingJoinPoint joinPoint, BatchCacheable batchCacheable,
+                                         Method method, Object[] args, Object target) {
+
+        String[] cacheNames = batchCacheable.cacheNames();
+        Assert.notEmpty(batchCacheable.cacheNames(), CACHE_NAME_ERROR_MESSAGE);
+        String cacheName = cacheNames[0];
+        int batchArgIndex = batchCacheable.batchArgIndex();
+        Assert.isTrue(batchArgIndex >= 0 && batchArgIndex < args.length,
+                String.format(BATCH_ARG_INDEX_ERROR_MESSAGE, method.getName(), batchArgIndex, args.length));
+        Assert.isTrue(args[batchArgIndex] == null || args[batchArgIndex] instanceof Collection,
+                String.format(BATCH_ARG_ERROR_MESSAGE, method.getName(), batchArgIndex));
+        Collection<?> elements = (Collection<?>) args[batchArgIndex];
+        if (CollectionUtils.isEmpty(elements)) {
+            return invokeWithBatchArg(joinPoint, args, batchArgIndex, elements);
+        }
+
+        // 解析SpEL表达式获取每个元素对应的缓存key
+        Map<Object, Object> keyElementMap = generateBatchKeys(batchCacheable.key(), elements, method, args, target);
+
+        // 从注解中获取缓存配置
+        LayeringCacheSetting layeringCacheSetting = buildLayeringCacheSetting(batchCacheable.firstCache(), batchCacheable.secondaryCache(), batchCacheable.depict());
+
+        // 通过cacheName和缓存配置获取Cache
+        Cache cache = cacheManager.getCache(cacheName, layeringCacheSetting);
+
+        // 批量获取缓存，只用未命中的元素调用一次被缓存的方法
+        Map<Object, Object> cacheResult = cache.getAll(keyElementMap.keySet(), missKeys -> {
+            List<Object> missElements = new ArrayList<>(missKeys.size());
+            for (Object missKey : missKeys) {
+                missElements.add(keyElementMap.get(missKey));
+            }
+            Object result = invokeWithBatchArg(joinPoint, args, batchArgIndex, missElements);
+            Assert.isTrue(result == null || result instanceof Map, String.format(BATCH_RESULT_ERROR_MESSAGE, method.getName()));
+            Map<Object, Object> loaded = new LinkedHashMap<>();
+            if (result != null) {
+                Map<?, ?> resultMap = (Map<?, ?>) result;
+                for (Object missKey : missKeys) {
+                    loaded.put(missKey, resultMap.get(keyElementMap.get(missKey)));
+                }
+            }
+            return loaded;
+        });
+
+        // 按照入参顺序合并结果
+        Map<Object, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> entry : keyElementMap.entrySet()) {
+            Object value = cacheResult.get(entry.getKey());
+            if (value != null) {
+                result.put(entry.getValue(), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 使用指定的批量参数调用被缓存的方法
+     *
+     * @param joinPoint     切点
+     * @param args          原始参数列表
+     * @param batchArgIndex 批量参数位置
+     * @param elements      批量参数
+     * @return 被缓存方法的返回值
+     */
+    private Object invokeWithBatchArg(ProceedingJoinPoint joinPoint, Object[] args, int batchArgIndex, Collection<?> elements) {
+        Object[] newArgs = args.clone();
+        // 尽量保持原参数的集合类型
+        newArgs[batchArgIndex] = args[batchArgIndex] instanceof Set ? new LinkedHashSet<>(elements) : elements;
+        try {
+            return joinPoint.proceed(newArgs);
+        } catch (Throwable ex) {
+            throw new CacheOperationInvoker.ThrowableWrapperException(ex);
+        }
+    }
+
+    /**
+     * 从异常链中找出被缓存方法自己抛出的异常
+     *
+     * @param e 执行批量缓存切面时的异常
+     * @return 被缓存方法抛出的异常，不是被缓存方法抛出的返回NULL
+     */
+    private Throwable getMethodException(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof CacheOperationInvoker.ThrowableWrapperException) {
+                return ((CacheOperationInvoker.ThrowableWrapperException) cause).getOriginal();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析SpEL表达式，获取批量参数中每个元素对应的缓存key
+     *
+     * @return 缓存key和元素的映射，保持入参顺序
+     */
+    private Map<Object, Object> generateBatchKeys(String keySpEl, Collection<?> elements, Method method, Object[] args, Object target) {
+        Map<Object, Object> keyElementMap = new LinkedHashMap<>();
+        if (!StringUtils.hasText(keySpEl)) {
+            for (Object element : elements) {
+                Assert.notNull(element, String.format(CACHE_KEY_ERROR_MESSAGE, ELEMENT_VARIABLE));
+                keyElementMap.put(element, element);
+            }
+            return keyElementMap;
+        }
+
+        Class<?> targetClass = getTargetClass(target);
+        EvaluationContext evaluationContext = evaluator.createEvaluationContext(method, args, target,
+                targetClass, CacheOperationExpressionEvaluator.NO_RESULT);
+        AnnotatedElementKey methodCacheKey = new AnnotatedElementKey(method, targetClass);
+        for (Object element : elements) {
+            evaluationContext.setVariable(ELEMENT_VARIABLE, element);
+            Object keyValue = evaluator.key(keySpEl, methodCacheKey, evaluationContext);
+            Assert.notNull(keyValue, String.format(CACHE_KEY_ERROR_MESSAGE, keySpEl));
+            keyElementMap.put(keyValue, element);
+        }
+        return keyElementMap;
+    }
+
     /**
      * 执行 CacheEvict 切面
      *
@@ -273,18 +435,8 @@ public class LayeringAspect {
         Object key = generateKey(cachePut.key(), method, args, target);
         Assert.notNull(key, String.format(CACHE_KEY_ERROR_MESSAGE, cachePut.key()));
 
-        // 从解决中获取缓存配置
-        FirstCache firstCache = cachePut.firstCache();
-        SecondaryCache secondaryCache = cachePut.secondaryCache();
-        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(firstCache.initialCapacity(), firstCache.maximumSize(),
-                firstCache.expireTime(), firstCache.timeUnit(), firstCache.expireMode());
-
-        SecondaryCacheSetting secondaryCacheSetting = new SecondaryCacheSetting(secondaryCache.expireTime(),
-                secondaryCache.preloadTime(), secondaryCache.timeUnit(), secondaryCache.forceRefresh(),
-                secondaryCache.isAllowNullValue(), secondaryCache.magnification());
-
-        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting, secondaryCacheSetting,
-                cachePut.depict());
+        // 从注解中获取缓存配置
+        LayeringCacheSetting layeringCacheSetting = buildLayeringCacheSetting(cachePut.firstCache(), cachePut.secondaryCache(), cachePut.depict());
 
         // 指定调用方法获取缓存值
         Object result = invoker.invoke();
@@ -298,6 +450,30 @@ public class LayeringAspect {
         return result;
     }
 
+    /**
+     * 根据注解上的一级缓存、二级缓存配置生成缓存配置
+     *
+     * @param firstCache     {@link FirstCache}
+     * @param secondaryCache {@link SecondaryCache}
+     * @param depict         缓存描述
+     * @return {@link LayeringCacheSetting}
+     */
+    private LayeringCacheSetting buildLayeringCacheSetting(FirstCache firstCache, SecondaryCache secondaryCache, String depict) {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(firstCache.initialCapacity(), firstCache.maximumSize(),
+                firstCache.expireTime(), firstCache.timeUnit(), firstCache.expireMode());
+        firstCacheSetting.setRefreshTime(firstCache.refreshTime());
+        firstCacheSetting.setMaximumWeight(firstCache.maximumWeight());
+        firstCacheSetting.setOffHeap(firstCache.offHeap());
+        firstCacheSetting.setLazyDeserialize(firstCache.lazyDeserialize());
+
+        SecondaryCacheSetting secondaryCacheSetting = new SecondaryCacheSetting(secondaryCache.expireTime(),
+                secondaryCache.preloadTime(), secondaryCache.timeUnit(), secondaryCache.forceRefresh(),
+                secondaryCache.isAllowNullValue(), secondaryCache.magnification());
+        secondaryCacheSetting.setCompressThreshold(secondaryCache.compressThreshold());
+
+        return new LayeringCacheSetting(firstCacheSetting, secondaryCacheSetting, depict);
+    }
+
     private CacheOperationInvoker getCacheOperationInvoker(ProceedingJoinPoint joinPoint) {
         return () -> {
             try {
@@ -17,9 +17,12 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 // SpringJUnit4ClassRunner再Junit环境下提供Spring TestContext Framework的功能。
@@ -491,6 +494,52 @@ public class CacheAspectTest {
         Assert.assertNull(result3);
     }
 
+    @Test
+    public void testBatchCacheable() {
+        testService.getBatchUserIds().clear();
+        Map<Long, User> users = testService.getUserByIds(Arrays.asList(131L, 132L));
+        Assert.assertEquals(2, users.size());
+        Assert.assertNotNull(redisTemplate.opsForValue().get("user:batch:id:131"));
+        Assert.assertEquals(Collections.singletonList(Arrays.asList(131L, 132L)), testService.getBatchUserIds());
+
+        // 重叠的id只会用未命中的元素调用被缓存方法，并按入参顺序合并结果
+        users = testService.getUserByIds(Arrays.asList(132L, 133L, 131L));
+        Assert.assertEquals(2, testService.getBatchUserIds().size());
+        Assert.assertEquals(Collections.singletonList(133L), testService.getBatchUserIds().get(1));
+        Assert.assertEquals(3, users.size());
+        Assert.assertEquals(Arrays.asList(132L, 133L, 131L), new LinkedList<>(users.keySet()));
+        Assert.assertEquals(133L, users.get(133L).getUserId());
+        Assert.assertNotNull(redisTemplate.opsForValue().get("user:batch:id:133"));
+
+        // 全部命中时不调用被缓存方法
+        users = testService.getUserByIds(Arrays.asList(131L, 133L));
+        Assert.assertEquals(2, users.size());
+        Assert.assertEquals(2, testService.getBatchUserIds().size());
+    }
+
+    @Test
+    public void testBatchCacheableException() {
+        testService.getBatchExceptionCount().set(0);
+        try {
+            testService.getUserByIdsException(Arrays.asList(141L, 142L));
+            Assert.fail("被缓存方法的异常需要抛出");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("批量缓存方法异常", e.getMessage());
+        }
+        // 被缓存方法自己抛出的异常不会因为ignoreException再调用一次
+        Assert.assertEquals(1, testService.getBatchExceptionCount().get());
+    }
+
+    @Test
+    public void testBatchCacheableWrongIndex() {
+        try {
+            testService.getUserByIdsWrongIndex(Arrays.asList(151L, 152L));
+            Assert.fail("批量参数位置超出范围需要抛出异常");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("超出范围"));
+        }
+    }
+
 
     private void sleep(int time) {
         try {
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class TestService {
@@ -343,4 +344,51 @@ public class TestService {
     @CacheEvict(value = "user:info", allEntries = true, ignoreException = false)
     public void evictAllUser() {
     }
+
+    /**
+     * 记录每次调用批量缓存方法时传入的id
+     */
+    private final List<List<Long>> batchUserIds = new Vector<>();
+
+    /**
+     * 批量缓存方法抛出异常的次数
+     */
+    private final AtomicInteger batchExceptionCount = new AtomicInteger();
+
+    @BatchCacheable(value = "user:batch", key = "'id:' + #element", ignoreException = false,
+            firstCache = @FirstCache(expireTime = 4, timeUnit = TimeUnit.SECONDS),
+            secondaryCache = @SecondaryCache(expireTime = 10, preloadTime = 3, timeUnit = TimeUnit.SECONDS))
+    public Map<Long, User> getUserByIds(List<Long> userIds) {
+        logger.debug("测试批量缓存方法，参数：{}", userIds);
+        batchUserIds.add(new ArrayList<>(userIds));
+        Map<Long, User> result = new HashMap<>();
+        for (Long userId : userIds) {
+            User user = new User();
+            user.setUserId(userId);
+            user.setAge(31);
+            result.put(userId, user);
+        }
+        return result;
+    }
+
+    @BatchCacheable(value = "user:batch:exception", key = "#element", ignoreException = true)
+    public Map<Long, User> getUserByIdsException(List<Long> userIds) {
+        logger.debug("测试批量缓存方法抛出异常，参数：{}", userIds);
+        batchExceptionCount.incrementAndGet();
+        throw new IllegalStateException("批量缓存方法异常");
+    }
+
+    @BatchCacheable(value = "user:batch:index", key = "#element", batchArgIndex = 1, ignoreException = false)
+    public Map<Long, User> getUserByIdsWrongIndex(List<Long> userIds) {
+        logger.debug("测试批量参数位置超出范围，参数：{}", userIds);
+        return new HashMap<>();
+    }
+
+    public List<List<Long>> getBatchUserIds() {
+        return batchUserIds;
+    }
+
+    public AtomicInteger getBatchExceptionCount() {
+        return batchExceptionCount;
+    }
 }
@@ -0,0 +1,79 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.aspect.LayeringAspect;
+import com.github.zomin.manager.CacheManager;
+import com.github.zomin.manager.LayeringCacheManager;
+import com.github.zomin.redis.embedded.EmbeddedRedisServer;
+import com.github.zomin.redis.serializer.RedisKeySerializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试使用的缓存配置
+ * <p>
+ * 默认使用进程内的redis替身，通过系统属性 benchmark.redis.latency 给每条命令注入延迟（微秒）模拟网络往返；
+ * 指定系统属性 benchmark.redis.host / benchmark.redis.port 时连接真实的redis
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@Configuration
+@EnableAspectJAutoProxy
+public class BenchmarkConfig {
+
+    @Bean(destroyMethod = "stop")
+    public EmbeddedRedisServer embeddedRedisServer() {
+        EmbeddedRedisServer server = new EmbeddedRedisServer();
+        if (System.getProperty("benchmark.redis.host") == null) {
+            server.setLatency(Long.getLong("benchmark.redis.latency", 0L), TimeUnit.MICROSECONDS);
+            server.start();
+        }
+        return server;
+    }
+
+    @Bean
+    public RedisConnectionFactory redisConnectionFactory(EmbeddedRedisServer embeddedRedisServer) {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
+        config.setHostName(System.getProperty("benchmark.redis.host", embeddedRedisServer.getHost()));
+        config.setPort(Integer.getInteger("benchmark.redis.port", embeddedRedisServer.getPort()));
+        return new JedisConnectionFactory(config);
+    }
+
+    @Bean
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(redisConnectionFactory);
+        RedisKeySerializer redisKeySerializer = new RedisKeySerializer();
+        template.setKeySerializer(redisKeySerializer);
+        template.setHashKeySerializer(redisKeySerializer);
+        GenericJackson2JsonRedisSerializer valueSerializer = new GenericJackson2JsonRedisSerializer();
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
+        return template;
+    }
+
+    @Bean
+    public CacheManager cacheManager(RedisTemplate<String, Object> redisTemplate) {
+        LayeringCacheManager layeringCacheManager = new LayeringCacheManager(redisTemplate);
+        layeringCacheManager.setStats(false);
+        return layeringCacheManager;
+    }
+
+    @Bean
+    public LayeringAspect layeringAspect() {
+        return new LayeringAspect();
+    }
+
+    @Bean
+    public BenchmarkService benchmarkService() {
+        return new BenchmarkService();
+    }
+}
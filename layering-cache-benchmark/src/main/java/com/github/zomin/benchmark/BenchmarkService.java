@@ -0,0 +1,20 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.annotation.Cacheable;
+import com.github.zomin.annotation.FirstCache;
+import com.github.zomin.annotation.SecondaryCache;
+
+/**
+ * 基准测试使用的被缓存方法
+ *
+ * @author kalend.zhang
+ */
+public class BenchmarkService {
+
+    @Cacheable(value = "benchmark:aspect", key = "'user:' + #userId + ':' + #type",
+            firstCache = @FirstCache(expireTime = 10, maximumSize = 10000),
+            secondaryCache = @SecondaryCache(expireTime = 100, preloadTime = 10))
+    public String getUser(long userId, String type) {
+        return "user-" + userId + "-" + type;
+    }
+}
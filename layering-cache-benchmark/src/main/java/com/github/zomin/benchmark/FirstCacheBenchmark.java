@@ -0,0 +1,88 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.cache.AbstractValueAdaptingCache;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.offheap.OffHeapCache;
+import com.github.zomin.setting.FirstCacheSetting;
+import com.github.zomin.support.ExpireMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一级缓存实现的基准测试，对比 Caffeine 和堆外缓存的读写耗时，不需要连接redis
+ * <p>
+ * 堆外缓存每次读取都要反序列化，读耗时明显高于Caffeine，收益在于堆内只保留索引。
+ * 使用 -prof gc 对比每次操作分配的内存和GC次数。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FirstCacheBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    @Param({"caffeine", "offHeap"})
+    private String type;
+
+    /**
+     * 缓存值包含的元素个数
+     */
+    @Param({"10", "100"})
+    private int valueSize;
+
+    private AbstractValueAdaptingCache cache;
+
+    private String[] keys;
+
+    private List<String> value;
+
+    @Setup
+    public void setUp() {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(KEY_COUNT, KEY_COUNT * 2, 10, TimeUnit.MINUTES, ExpireMode.WRITE);
+        if ("offHeap".equals(type)) {
+            cache = new OffHeapCache("benchmark:first", firstCacheSetting, false, new GenericJackson2JsonRedisSerializer());
+        } else {
+            cache = new CaffeineCache("benchmark:first", firstCacheSetting, false);
+        }
+
+        value = new ArrayList<>(valueSize);
+        for (int i = 0; i < valueSize; i++) {
+            value.add("value:" + i);
+        }
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key:" + i;
+            cache.put(keys[i], value);
+        }
+    }
+
+    @Benchmark
+    public Object get(LayeringCacheBenchmark.KeyCursor cursor) {
+        return cache.get(cursor.next(keys));
+    }
+
+    @Benchmark
+    public void put(LayeringCacheBenchmark.KeyCursor cursor) {
+        cache.put(cursor.next(keys), value);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.expression.CacheOperationExpressionEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.expression.EvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注解缓存的基准测试：SpEL key 解析和经过切面的一级缓存命中
+ *
+ * @author kalend.zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LayeringAspectBenchmark {
+
+    private static final String KEY_SPEL = "'user:' + #userId + ':' + #type";
+
+    private static final int USER_COUNT = 1024;
+
+    private final CacheOperationExpressionEvaluator evaluator = new CacheOperationExpressionEvaluator();
+
+    private AnnotationConfigApplicationContext context;
+
+    private BenchmarkService benchmarkService;
+
+    private BenchmarkService target;
+
+    private Method method;
+
+    private AnnotatedElementKey methodKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+        context = new AnnotationConfigApplicationContext(BenchmarkConfig.class);
+        benchmarkService = context.getBean(BenchmarkService.class);
+        for (long i = 0; i < USER_COUNT; i++) {
+            benchmarkService.getUser(i, "vip");
+        }
+
+        target = new BenchmarkService();
+        method = BenchmarkService.class.getMethod("getUser", long.class, String.class);
+        methodKey = new AnnotatedElementKey(method, BenchmarkService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object spelKey(UserCursor cursor) {
+        // 和 LayeringAspect#generateKey 的解析过程一致
+        Object[] args = {cursor.next(), "vip"};
+        EvaluationContext evaluationContext = evaluator.createEvaluationContext(method, args, target,
+                BenchmarkService.class, CacheOperationExpressionEvaluator.NO_RESULT);
+        return evaluator.key(KEY_SPEL, methodKey, evaluationContext);
+    }
+
+    @Benchmark
+    public Object aspectL1Hit(UserCursor cursor) {
+        return benchmarkService.getUser(cursor.next(), "vip");
+    }
+
+    /**
+     * 每个线程按顺序循环访问用户
+     */
+    @State(Scope.Thread)
+    public static class UserCursor {
+        private long userId;
+
+        long next() {
+            userId = (userId + 1) & (USER_COUNT - 1);
+            return userId;
+        }
+    }
+}
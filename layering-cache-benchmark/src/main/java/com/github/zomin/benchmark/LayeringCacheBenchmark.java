@@ -0,0 +1,113 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.manager.CacheManager;
+import com.github.zomin.setting.FirstCacheSetting;
+import com.github.zomin.setting.LayeringCacheSetting;
+import com.github.zomin.setting.SecondaryCacheSetting;
+import com.github.zomin.support.ExpireMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多级缓存读写路径的基准测试
+ * <p>
+ * L1未命中和加载数据的场景在每次操作前会先删除对应层级的缓存，删除本地缓存的开销远小于一次redis往返，
+ * 删除二级缓存会多一次redis往返，对比结果时需要考虑进去。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LayeringCacheBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    private AnnotationConfigApplicationContext context;
+
+    private LayeringCache cache;
+
+    private String[] keys;
+
+    private Callable<String> valueLoader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext(BenchmarkConfig.class);
+        CacheManager cacheManager = context.getBean(CacheManager.class);
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(KEY_COUNT, KEY_COUNT * 2, 10, TimeUnit.MINUTES, ExpireMode.WRITE);
+        SecondaryCacheSetting secondaryCacheSetting = new SecondaryCacheSetting(100, 10, TimeUnit.MINUTES, false, true, 1);
+        cache = (LayeringCache) cacheManager.getCache("benchmark:layering",
+                new LayeringCacheSetting(firstCacheSetting, secondaryCacheSetting, "基准测试"));
+
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key:" + i;
+            cache.put(keys[i], "value:" + i);
+        }
+        valueLoader = () -> "value";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object l1Hit(KeyCursor cursor) {
+        return cache.get(cursor.next(keys), valueLoader);
+    }
+
+    @Benchmark
+    public Object l1MissL2Hit(KeyCursor cursor) {
+        String key = cursor.next(keys);
+        cache.getFirstCache().evict(key);
+        return cache.get(key, valueLoader);
+    }
+
+    @Benchmark
+    public Object loader(KeyCursor cursor) {
+        String key = cursor.next(keys);
+        cache.getFirstCache().evict(key);
+        cache.getSecondCache().evict(key);
+        return cache.get(key, valueLoader);
+    }
+
+    @Benchmark
+    public void put(KeyCursor cursor) {
+        // 写二级缓存，并发布删除其它节点一级缓存的消息
+        cache.put(cursor.next(keys), "value");
+    }
+
+    /**
+     * 每个线程按顺序循环访问key
+     */
+    @State(Scope.Thread)
+    public static class KeyCursor {
+        private int index;
+
+        String next(String[] keys) {
+            index = (index + 1) & (keys.length - 1);
+            return keys[index];
+        }
+    }
+}
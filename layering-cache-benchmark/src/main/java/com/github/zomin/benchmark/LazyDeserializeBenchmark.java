@@ -0,0 +1,99 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.cache.LazyValue;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.setting.FirstCacheSetting;
+import com.github.zomin.support.ExpireMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一级缓存延迟反序列化（lazyDeserialize）的基准测试，不需要连接redis
+ * <p>
+ * promote* 对比把二级缓存读到的字节提升到一级缓存的耗时，对应预热、快照恢复、后台刷新这些提升后不一定被读取的场景；
+ * readThrough* 对比提升后马上读取的耗时，对应业务请求读穿透，两种方式都要反序列化一次，耗时应该接近。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LazyDeserializeBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    /**
+     * 缓存值包含的元素个数
+     */
+    @Param({"10", "100"})
+    private int valueSize;
+
+    private RedisSerializer<Object> serializer;
+
+    private CaffeineCache cache;
+
+    private String[] keys;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(KEY_COUNT, KEY_COUNT * 2, 10, TimeUnit.MINUTES, ExpireMode.WRITE);
+        firstCacheSetting.setLazyDeserialize(true);
+        cache = new CaffeineCache("benchmark:lazy", firstCacheSetting, false);
+        serializer = new GenericJackson2JsonRedisSerializer();
+
+        List<String> value = new ArrayList<>(valueSize);
+        for (int i = 0; i < valueSize; i++) {
+            value.add("value:" + i);
+        }
+        bytes = serializer.serialize(value);
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key:" + i;
+        }
+    }
+
+    @Benchmark
+    public void promoteEager(LayeringCacheBenchmark.KeyCursor cursor) {
+        cache.put(cursor.next(keys), serializer.deserialize(bytes));
+    }
+
+    @Benchmark
+    public void promoteLazy(LayeringCacheBenchmark.KeyCursor cursor) {
+        cache.put(cursor.next(keys), new LazyValue(bytes, serializer));
+    }
+
+    @Benchmark
+    public Object readThroughEager(LayeringCacheBenchmark.KeyCursor cursor) {
+        String key = cursor.next(keys);
+        cache.put(key, serializer.deserialize(bytes));
+        return cache.get(key);
+    }
+
+    @Benchmark
+    public Object readThroughLazy(LayeringCacheBenchmark.KeyCursor cursor) {
+        String key = cursor.next(keys);
+        cache.put(key, new LazyValue(bytes, serializer));
+        return cache.get(key);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.cache.redis.RedisCache;
+import com.github.zomin.redis.serializer.RedisKeySerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis key 生成的基准测试，不需要连接redis
+ * <p>
+ * 使用 -prof gc 查看每次操作分配的内存（gc.alloc.rate.norm）
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisCacheKeyBenchmark {
+
+    private RedisCache redisCache;
+
+    private String stringKey;
+
+    private Long longKey;
+
+    private UUID objectKey;
+
+    @Setup
+    public void setUp() {
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setKeySerializer(new RedisKeySerializer());
+        redisTemplate.setValueSerializer(new JdkSerializationRedisSerializer());
+        redisCache = new RedisCache("benchmark:key", redisTemplate, 100, 10, false, true, true, 1, false);
+        stringKey = "user:10086";
+        longKey = 10086L;
+        objectKey = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public String stringKey() {
+        return redisCache.getRedisCacheKey(stringKey).getKey();
+    }
+
+    @Benchmark
+    public String longKey() {
+        return redisCache.getRedisCacheKey(longKey).getKey();
+    }
+
+    @Benchmark
+    public String objectKey() {
+        return redisCache.getRedisCacheKey(objectKey).getKey();
+    }
+
+    @Benchmark
+    public byte[] stringRawKey() {
+        return redisCache.getRedisCacheKey(stringKey).getRawKey();
+    }
+
+    @Benchmark
+    public byte[] longRawKey() {
+        return redisCache.getRedisCacheKey(longKey).getRawKey();
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.zomin.benchmark;
+
+import com.github.zomin.redis.serializer.ProtostuffRedisSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis value 序列化方式的基准测试，对比Jackson和protostuff的序列化、反序列化耗时，不需要连接redis
+ * <p>
+ * 序列化后的字节数在每次试验开始时以info级别记录到日志，使用 -prof gc 对比每次操作分配的内存。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(SerializerBenchmark.class);
+
+    @Param({"jackson", "protostuff"})
+    private String type;
+
+    /**
+     * 缓存值包含的元素个数
+     */
+    @Param({"1", "100"})
+    private int valueSize;
+
+    private RedisSerializer<Object> serializer;
+
+    private List<Item> value;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        if ("protostuff".equals(type)) {
+            serializer = new ProtostuffRedisSerializer();
+        } else {
+            serializer = new GenericJackson2JsonRedisSerializer();
+        }
+
+        value = new ArrayList<>(valueSize);
+        for (int i = 0; i < valueSize; i++) {
+            value.add(new Item(i, "name:" + i, new BigDecimal("99.9" + i), Arrays.asList("tag1", "tag2")));
+        }
+        bytes = serializer.serialize(value);
+        logger.info("序列化方式={}，元素个数={}，字节数={}", type, valueSize, bytes.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+
+    /**
+     * 缓存值中的元素
+     */
+    public static class Item {
+        private long id;
+
+        private String name;
+
+        private BigDecimal price;
+
+        private List<String> tags;
+
+        public Item() {
+        }
+
+        Item(long id, String name, BigDecimal price, List<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.tags = tags;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public void setPrice(BigDecimal price) {
+            this.price = price;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+    }
+}
@@ -21,7 +21,11 @@ import com.github.zomin.stats.CacheStats;
 import com.github.zomin.support.NullValue;
 import org.springframework.util.Assert;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 
 /**
@@ -105,6 +109,33 @@ public abstract class AbstractValueAdaptingCache implements Cache {
         return userValue;
     }
 
+    /**
+     * 通过bulkLoader批量加载数据，并记录统计信息
+     *
+     * @param keys       需要加载的key
+     * @param bulkLoader 批量加载缓存的回调方法
+     * @param <K>        key类型
+     * @param <V>        value类型
+     * @return 加载到的数据，不会为NULL
+     */
+    protected <K, V> Map<K, V> loaderAllValue(Set<K> keys, Function<Set<K>, Map<K, V>> bulkLoader) {
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        if (isStats()) {
+            getCacheStats().addCachedMethodRequestCount(keys.size());
+        }
+
+        try {
+            Map<K, V> loaded = bulkLoader.apply(keys);
+            if (isStats()) {
+                getCacheStats().addCachedMethodRequestTime(System.currentTimeMillis() - start);
+                getCacheStats().recordLoadLatency(System.nanoTime() - startNanos);
+            }
+            return loaded == null ? Collections.emptyMap() : loaded;
+        } catch (Exception e) {
+            throw new LoaderCacheValueException(keys, e);
+        }
+    }
 
     /**
      * {@link #get(Object, Callable)} 方法加载缓存值的包装异常
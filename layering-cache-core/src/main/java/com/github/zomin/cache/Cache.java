@@ -3,7 +3,11 @@ package com.github.zomin.cache;
 import com.github.zomin.manager.CacheManager;
 import com.github.zomin.stats.CacheStats;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /**
  * 缓存的顶级接口
@@ -54,6 +58,18 @@ public interface Cache {
      */
     <T> T get(Object key, Callable<T> valueLoader);
 
+    /**
+     * 批量获取缓存，未命中的key会一次性交给bulkLoader加载，并将加载结果放到缓存
+     * <p>返回结果只包含命中或加载到的key，允许缓存NULL值时value可能为NULL</p>
+     *
+     * @param keys       缓存key集合
+     * @param bulkLoader 批量加载缓存的回调方法，入参是未命中的key，为NULL则只查询缓存
+     * @param <K>        key类型
+     * @param <V>        value类型
+     * @return key和缓存值的映射
+     */
+    <K, V> Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> bulkLoader);
+
     /**
      * 将对应key-value放到缓存，如果key原来有值就直接覆盖
      *
@@ -62,6 +78,13 @@ public interface Cache {
      */
     void put(Object key, Object value);
 
+    /**
+     * 批量将key-value放到缓存，如果key原来有值就直接覆盖
+     *
+     * @param map 缓存key和缓存值的映射
+     */
+    void putAll(Map<?, ?> map);
+
     /**
      * 如果缓存key没有对应的值就将值put到缓存，如果有就直接返回原有的值
      * <p>就相当于:
@@ -95,6 +118,13 @@ public interface Cache {
      */
     void evict(Object key);
 
+    /**
+     * 在缓存中批量删除对应的key
+     *
+     * @param keys 缓存key集合
+     */
+    void evictAll(Collection<?> keys);
+
     /**
      * 清楚缓存
      */
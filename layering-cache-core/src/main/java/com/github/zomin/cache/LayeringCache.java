@@ -1,18 +1,30 @@
 package com.github.zomin.cache;
 
 import com.alibaba.fastjson.JSON;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.redis.RedisCache;
+import com.github.zomin.listener.RedisEvictPublisher;
 import com.github.zomin.listener.RedisPubSubMessage;
 import com.github.zomin.listener.RedisPubSubMessageType;
 import com.github.zomin.listener.RedisPublisher;
+import com.github.zomin.manager.CacheManager;
 import com.github.zomin.setting.LayeringCacheSetting;
 import com.github.zomin.stats.CacheStats;
+import com.github.zomin.stats.HotKeyTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.util.ObjectUtils;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * 多级缓存
@@ -48,6 +60,46 @@ public class LayeringCache extends AbstractValueAdaptingCache {
      */
     private boolean useFirstCache = true;
 
+    /**
+     * 一级缓存是否存放二级缓存读到的原始字节，第一次读取时才反序列化
+     */
+    private final boolean lazyDeserialize;
+
+    /**
+     * 合并发布删除一级缓存消息，为NULL时逐条同步发布
+     */
+    private RedisEvictPublisher evictPublisher;
+
+    /**
+     * 缓存管理器，用来查找本机同名的其他缓存
+     */
+    private CacheManager cacheManager;
+
+    /**
+     * 是否按升级前的格式发布pub/sub消息
+     */
+    private volatile boolean pubSubLegacyFormat = false;
+
+    /**
+     * 热点key探测器，为NULL时不探测
+     */
+    private HotKeyTracker hotKeyTracker;
+
+    /**
+     * 热点key专用的本地缓存，不受一级缓存配置的影响，为NULL时不提升热点key
+     */
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> hotKeyCache;
+
+    /**
+     * 估算的请求次数达到该值的key从二级缓存取到数据后放入热点key缓存
+     */
+    private long hotKeyPromoteThreshold;
+
+    /**
+     * 热点key缓存命中次数，单独计数，不计入一级缓存的统计
+     */
+    private final LongAdder hotKeyHitCount = new LongAdder();
+
     /**
      * 创建一个多级缓存对象
      *
@@ -79,6 +131,9 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         this.secondCache = secondCache;
         this.useFirstCache = useFirstCache;
         this.layeringCacheSetting = layeringCacheSetting;
+        this.lazyDeserialize = useFirstCache && firstCache instanceof CaffeineCache && secondCache instanceof RedisCache
+            && layeringCacheSetting != null && layeringCacheSetting.getFirstCacheSetting() != null
+            && layeringCacheSetting.getFirstCacheSetting().isLazyDeserialize();
     }
 
     @Override
@@ -88,7 +143,11 @@ public class LayeringCache extends AbstractValueAdaptingCache {
 
     @Override
     public Object get(Object key) {
-        Object result = null;
+        recordHotKey(key);
+        Object result = getHotKeyValue(key);
+        if (result != null) {
+            return fromStoreValue(result);
+        }
         if (useFirstCache) {
             result = firstCache.get(key);
             if(logger.isDebugEnabled()) {
@@ -100,6 +159,7 @@ public class LayeringCache extends AbstractValueAdaptingCache {
             if(useFirstCache) {
                 firstCache.put(key, result);
             }
+            promoteHotKey(key, result);
             if(logger.isDebugEnabled()) {
                 logger.debug("查询二级缓存,并将数据放到一级缓存。 key={},返回值是:{}", key, JSON.toJSONString(result));
             }
@@ -109,6 +169,11 @@ public class LayeringCache extends AbstractValueAdaptingCache {
 
     @Override
     public <T> T get(Object key, Class<T> type) {
+        recordHotKey(key);
+        Object hotKeyValue = getHotKeyValue(key);
+        if (hotKeyValue != null) {
+            return (T) fromStoreValue(hotKeyValue);
+        }
         if (useFirstCache) {
             Object result = firstCache.get(key, type);
             if(logger.isDebugEnabled()) {
@@ -123,6 +188,7 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         if (useFirstCache) {
             firstCache.putIfAbsent(key, result);
         }
+        promoteHotKey(key, result);
         if(logger.isDebugEnabled()) {
             logger.debug("查询二级缓存,并将数据放到一级缓存。 key={},返回值是:{}", key, JSON.toJSONString(result));
         }
@@ -131,6 +197,11 @@ public class LayeringCache extends AbstractValueAdaptingCache {
 
     @Override
     public <T> T get(Object key, Callable<T> valueLoader) {
+        recordHotKey(key);
+        Object hotKeyValue = getHotKeyValue(key);
+        if (hotKeyValue != null) {
+            return (T) fromStoreValue(hotKeyValue);
+        }
         if (useFirstCache) {
             Object result = firstCache.get(key);
             if(logger.isDebugEnabled()) {
@@ -140,30 +211,103 @@ public class LayeringCache extends AbstractValueAdaptingCache {
                 return (T) fromStoreValue(result);
             }
         }
+        if (lazyDeserialize) {
+            return getLazy(key, valueLoader);
+        }
         T result = secondCache.get(key, valueLoader);
         if (useFirstCache) {
             firstCache.putIfAbsent(key, result);
         }
+        promoteHotKey(key, result);
         if(logger.isDebugEnabled()) {
             logger.debug("查询二级缓存,并将数据放到一级缓存。 key={},返回值是:{}", key, JSON.toJSONString(result));
         }
         return result;
     }
 
+    /**
+     * 二级缓存命中时一级缓存存放原始字节，返回值和一级缓存共用同一个 {@link LazyValue}，只反序列化一次
+     * <p>
+     * 调用方马上要用到返回值，这条读穿透路径上的反序列化省不掉，只是不再重复反序列化；
+     * 真正推迟到读取时才反序列化的是提升到一级缓存后不一定被读取的条目：预热、快照恢复、后台刷新和UPDATE消息
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getLazy(Object key, Callable<T> valueLoader) {
+        Object value = ((RedisCache) secondCache).getLazy(key, valueLoader);
+        // 马上就要返回反序列化的结果，先反序列化再放到一级缓存，权重按反序列化后的对象计算
+        T result = (T) LazyValue.unwrap(value);
+        firstCache.putIfAbsent(key, value);
+        promoteHotKey(key, result);
+        if(logger.isDebugEnabled()) {
+            logger.debug("查询二级缓存,并将原始数据放到一级缓存。 key={},返回值是:{}", key, JSON.toJSONString(result));
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> bulkLoader) {
+        if (hotKeyTracker != null) {
+            for (K key : keys) {
+                hotKeyTracker.record(key);
+            }
+        }
+        Map<K, V> result = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+        Set<K> missKeys = new LinkedHashSet<>(keys);
+        if (useFirstCache) {
+            Map<K, Object> firstResult = firstCache.getAll(missKeys, null);
+            for (Map.Entry<K, Object> entry : firstResult.entrySet()) {
+                result.put(entry.getKey(), (V) fromStoreValue(entry.getValue()));
+                missKeys.remove(entry.getKey());
+            }
+            if(logger.isDebugEnabled()) {
+                logger.debug("批量查询一级缓存。 keys={},命中数量:{}", JSON.toJSONString(keys), firstResult.size());
+            }
+        }
+        if (missKeys.isEmpty()) {
+            return result;
+        }
+
+        // 只有一级缓存未命中的key才查询二级缓存，二级缓存未命中的key一次性交给bulkLoader加载
+        Map<K, V> secondResult = secondCache.getAll(missKeys, bulkLoader);
+        if (useFirstCache) {
+            for (Map.Entry<K, V> entry : secondResult.entrySet()) {
+                firstCache.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        if(logger.isDebugEnabled()) {
+            logger.debug("批量查询二级缓存,并将数据放到一级缓存。 keys={},返回数量:{}", JSON.toJSONString(missKeys), secondResult.size());
+        }
+        result.putAll(secondResult);
+        return result;
+    }
+
     @Override
     public void put(Object key, Object value) {
         secondCache.put(key, value);
         // 删除一级缓存
-        if (useFirstCache) {
+        if (useLocalCache()) {
             deleteFirstCache(key);
         }
     }
 
+    @Override
+    public void putAll(Map<?, ?> map) {
+        secondCache.putAll(map);
+        // 删除一级缓存
+        if (useLocalCache()) {
+            for (Object key : map.keySet()) {
+                deleteFirstCache(key);
+            }
+        }
+    }
+
     @Override
     public Object putIfAbsent(Object key, Object value) {
         Object result = secondCache.putIfAbsent(key, value);
         // 删除一级缓存
-        if (useFirstCache) {
+        if (useLocalCache()) {
             deleteFirstCache(key);
         }
         return result;
@@ -174,16 +318,28 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         // 删除的时候要先删除二级缓存再删除一级缓存，否则有并发问题
         secondCache.evict(key);
         // 删除一级缓存
-        if (useFirstCache) {
+        if (useLocalCache()) {
             deleteFirstCache(key);
         }
     }
 
+    @Override
+    public void evictAll(Collection<?> keys) {
+        // 删除的时候要先删除二级缓存再删除一级缓存，否则有并发问题
+        secondCache.evictAll(keys);
+        // 删除一级缓存
+        if (useLocalCache()) {
+            for (Object key : keys) {
+                deleteFirstCache(key);
+            }
+        }
+    }
+
     @Override
     public void clear() {
         // 删除的时候要先删除二级缓存再删除一级缓存，否则有并发问题
         secondCache.clear();
-        if (useFirstCache) {
+        if (useLocalCache()) {
             clearFirstCache();
         }
     }
@@ -204,15 +360,111 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         return result;
     }
 
+    /**
+     * 是否使用了本机缓存，包括一级缓存和热点key缓存，使用时修改数据需要通知所有节点删除本机缓存
+     */
+    private boolean useLocalCache() {
+        return useFirstCache || hotKeyCache != null;
+    }
+
+    /**
+     * 查询热点key缓存，命中次数单独记录，没有开启一级缓存时也不会记到一级缓存的统计里
+     */
+    private Object getHotKeyValue(Object key) {
+        if (hotKeyCache == null) {
+            return null;
+        }
+        Object value = hotKeyCache.getIfPresent(key);
+        if (value != null && isStats()) {
+            hotKeyHitCount.increment();
+        }
+        return value;
+    }
+
+    /**
+     * 估算的请求次数达到阈值时把从二级缓存取到的数据放入热点key缓存
+     */
+    private void promoteHotKey(Object key, Object value) {
+        if (hotKeyCache == null || hotKeyTracker == null || value == null || hotKeyTracker.estimate(key) < hotKeyPromoteThreshold) {
+            return;
+        }
+        hotKeyCache.put(key, toStoreValue(value));
+        if(logger.isDebugEnabled()) {
+            logger.debug("热点key提升到热点key缓存。 cacheName={},key={}", getName(), key);
+        }
+    }
+
+    /**
+     * 删除本机热点key缓存
+     *
+     * @param key key
+     */
+    public void evictHotKey(Object key) {
+        if (hotKeyCache != null) {
+            hotKeyCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 批量删除本机热点key缓存
+     *
+     * @param keys key集合
+     */
+    public void evictAllHotKeys(Collection<?> keys) {
+        if (hotKeyCache != null) {
+            hotKeyCache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * 清空本机热点key缓存
+     */
+    public void clearHotKeys() {
+        if (hotKeyCache != null) {
+            hotKeyCache.invalidateAll();
+        }
+    }
+
+    private void recordHotKey(Object key) {
+        if (hotKeyTracker != null) {
+            hotKeyTracker.record(key);
+        }
+    }
+
     private void deleteFirstCache(Object key) {
+        if (evictPublisher != null) {
+            // 先删除本机一级缓存，其他节点的删除消息在时间窗口内合并后异步发布
+            evictLocalCache(key);
+            evictPublisher.publish(getName(), key, isStats() ? firstCache.getCacheStats() : null);
+            return;
+        }
         // 删除一级缓存需要用到redis的Pub/Sub（订阅/发布）模式，否则集群中其他服服务器节点的一级缓存数据无法删除
         RedisPubSubMessage message = new RedisPubSubMessage();
         message.setCacheName(getName());
         message.setKey(key);
         message.setMessageType(RedisPubSubMessageType.EVICT);
         // 发布消息
+        publish(message);
+    }
 
-        RedisPublisher.publisher(redisTemplate, new ChannelTopic(getName()), message);
+    /**
+     * 删除本机所有同名缓存的一级缓存和热点key缓存，本节点收到自己发布的删除消息时不再处理，
+     * 所以同名但配置不同的缓存也要在这里删除
+     *
+     * @param key key
+     */
+    private void evictLocalCache(Object key) {
+        if (cacheManager == null) {
+            firstCache.evict(key);
+            evictHotKey(key);
+            return;
+        }
+        for (Cache cache : cacheManager.getCache(getName())) {
+            if (cache instanceof LayeringCache) {
+                ((LayeringCache) cache).getFirstCache().evict(key);
+                ((LayeringCache) cache).evictHotKey(key);
+            }
+        }
     }
 
     private void clearFirstCache() {
@@ -221,7 +473,7 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         message.setCacheName(getName());
         message.setMessageType(RedisPubSubMessageType.CLEAR);
         // 发布消息
-        RedisPublisher.publisher(redisTemplate, new ChannelTopic(getName()), message);
+        publish(message);
     }
 
     private void updateFirstCache(Object key) {
@@ -231,7 +483,20 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         message.setKey(key);
         message.setMessageType(RedisPubSubMessageType.UPDATE);
         // 发布消息
-        RedisPublisher.publisher(redisTemplate, new ChannelTopic(getName()),message);
+        publish(message);
+    }
+
+    /**
+     * 发布一级缓存消息，开启统计时记录发布耗时
+     *
+     * @param message {@link RedisPubSubMessage}
+     */
+    private void publish(RedisPubSubMessage message) {
+        long start = isStats() ? System.nanoTime() : 0L;
+        RedisPublisher.publisher(redisTemplate, new ChannelTopic(getName()), message, pubSubLegacyFormat);
+        if (isStats()) {
+            firstCache.getCacheStats().recordPublishLatency(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -265,6 +530,76 @@ public class LayeringCache extends AbstractValueAdaptingCache {
         return cacheStats;
     }
 
+    public void setEvictPublisher(RedisEvictPublisher evictPublisher) {
+        this.evictPublisher = evictPublisher;
+    }
+
+    public boolean isPubSubLegacyFormat() {
+        return pubSubLegacyFormat;
+    }
+
+    /**
+     * 设置是否按升级前的格式发布pub/sub消息，同时设置二级缓存
+     *
+     * @param pubSubLegacyFormat 是否按升级前的格式发布
+     */
+    public void setPubSubLegacyFormat(boolean pubSubLegacyFormat) {
+        this.pubSubLegacyFormat = pubSubLegacyFormat;
+        if (secondCache instanceof RedisCache) {
+            ((RedisCache) secondCache).setPubSubLegacyFormat(pubSubLegacyFormat);
+        }
+    }
+
+    /**
+     * 设置缓存管理器，合并发布删除消息时用来删除本机同名的其他缓存
+     *
+     * @param cacheManager 缓存管理器
+     */
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    public HotKeyTracker getHotKeyTracker() {
+        return hotKeyTracker;
+    }
+
+    public void setHotKeyTracker(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
+    }
+
+    public com.github.benmanes.caffeine.cache.Cache<Object, Object> getHotKeyCache() {
+        return hotKeyCache;
+    }
+
+    /**
+     * 热点key缓存累计命中次数，开启统计时才记录
+     *
+     * @return long
+     */
+    public long getHotKeyHitCount() {
+        return hotKeyHitCount.sum();
+    }
+
+    /**
+     * 设置热点key缓存，没有设置{@link HotKeyTracker}时不会有key提升到热点key缓存
+     *
+     * @param hotKeyCache            热点key缓存
+     * @param hotKeyPromoteThreshold 估算的请求次数达到该值时提升到热点key缓存
+     */
+    public void setHotKeyCache(com.github.benmanes.caffeine.cache.Cache<Object, Object> hotKeyCache, long hotKeyPromoteThreshold) {
+        this.hotKeyCache = hotKeyCache;
+        this.hotKeyPromoteThreshold = hotKeyPromoteThreshold;
+    }
+
+    /**
+     * 一级缓存是否存放二级缓存读到的原始字节
+     *
+     * @return boolean
+     */
+    public boolean isLazyDeserialize() {
+        return lazyDeserialize;
+    }
+
     public LayeringCacheSetting getLayeringCacheSetting() {
         return layeringCacheSetting;
     }
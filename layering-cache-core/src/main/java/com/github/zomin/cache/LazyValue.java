@@ -0,0 +1,96 @@
+package com.github.zomin.cache;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+/**
+ * 延迟反序列化的缓存值，一级缓存开启 lazyDeserialize 时存放二级缓存读到的原始字节
+ * <p>
+ * 第一次调用 {@link #get()} 时反序列化并记住结果，之后直接返回同一个对象，同时释放原始字节，
+ * 所以只从二级缓存提升到一级缓存、一直没有被读取的条目（预热、快照恢复）不需要反序列化。
+ * 缓存值必须是不可变的，所有读取方共享同一个对象。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public final class LazyValue {
+
+    /**
+     * 还没有反序列化的标记
+     */
+    private static final Object UNRESOLVED = new Object();
+
+    private final RedisSerializer<Object> serializer;
+
+    /**
+     * 原始字节数
+     */
+    private final int size;
+
+    /**
+     * 原始字节，反序列化后置为NULL
+     */
+    private volatile byte[] bytes;
+
+    private volatile Object value = UNRESOLVED;
+
+    /**
+     * @param bytes      序列化后的字节
+     * @param serializer 写入这些字节时使用的序列化器
+     */
+    public LazyValue(byte[] bytes, RedisSerializer<Object> serializer) {
+        Assert.notNull(bytes, "bytes 不能为NULL");
+        Assert.notNull(serializer, "RedisSerializer 不能为NULL");
+        this.bytes = bytes;
+        this.size = bytes.length;
+        this.serializer = serializer;
+    }
+
+    /**
+     * 获取缓存值，第一次调用时反序列化
+     *
+     * @return 缓存值
+     */
+    public Object get() {
+        Object result = value;
+        if (result == UNRESOLVED) {
+            synchronized (this) {
+                result = value;
+                if (result == UNRESOLVED) {
+                    result = serializer.deserialize(bytes);
+                    value = result;
+                    bytes = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 是否已经反序列化
+     *
+     * @return boolean
+     */
+    public boolean isResolved() {
+        return value != UNRESOLVED;
+    }
+
+    /**
+     * 原始字节数，用于计算没有反序列化的条目在一级缓存里的权重
+     *
+     * @return int
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 如果是 {@link LazyValue} 返回反序列化后的值，否则原样返回
+     *
+     * @param value 缓存值
+     * @return 缓存值
+     */
+    public static Object unwrap(Object value) {
+        return value instanceof LazyValue ? ((LazyValue) value).get() : value;
+    }
+}
@@ -2,16 +2,27 @@ package com.github.zomin.cache.caffeine;
 
 import com.alibaba.fastjson.JSON;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.github.zomin.cache.AbstractValueAdaptingCache;
+import com.github.zomin.cache.LazyValue;
 import com.github.zomin.setting.FirstCacheSetting;
 import com.github.zomin.support.ExpireMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.support.NullValue;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 
 /**
  * 基于Caffeine实现的一级缓存
@@ -26,6 +37,11 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
      */
     private final Cache<Object, Object> cache;
 
+    /**
+     * 是否按权重淘汰
+     */
+    private final boolean weighted;
+
     /**
      * 使用name和{@link FirstCacheSetting}创建一个 {@link CaffeineCache} 实例
      *
@@ -34,8 +50,25 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
      * @param stats             是否开启统计模式
      */
     public CaffeineCache(String name, FirstCacheSetting firstCacheSetting, boolean stats) {
+        this(name, firstCacheSetting, stats, null, null, null);
+    }
+
+    /**
+     * 配置了刷新时间（refreshTime）时，缓存写入超过刷新时间后的第一次读取仍然返回旧值，
+     * 同时在refreshExecutor中通过refreshLoader重新加载，加载结果为NULL时删除缓存
+     *
+     * @param name              缓存名称
+     * @param firstCacheSetting 一级缓存配置 {@link FirstCacheSetting}
+     * @param stats             是否开启统计模式
+     * @param refreshLoader     刷新时加载数据，一般是查询二级缓存，为NULL时不刷新
+     * @param refreshExecutor   执行刷新的线程池，为NULL时使用Caffeine默认的线程池
+     * @param weigher           配置了最大权重（maximumWeight）时计算权重，为NULL时使用{@link EstimatedSizeWeigher}
+     */
+    public CaffeineCache(String name, FirstCacheSetting firstCacheSetting, boolean stats,
+                         Function<Object, Object> refreshLoader, Executor refreshExecutor, Weigher<Object, Object> weigher) {
         super(stats, name);
-        this.cache = getCache(firstCacheSetting);
+        this.cache = getCache(firstCacheSetting, stats, refreshLoader, refreshExecutor, weigher);
+        this.weighted = firstCacheSetting.getMaximumWeight() > 0;
     }
 
     @Override
@@ -53,10 +86,15 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
             getCacheStats().addCacheRequestCount(1);
         }
 
-        if (this.cache instanceof LoadingCache) {
-            return ((LoadingCache<Object, Object>) this.cache).get(key);
+        long start = isStats() ? System.nanoTime() : 0L;
+        try {
+            // 未命中时由LayeringCache查询二级缓存，这里不同步加载；开启刷新时getIfPresent也会触发异步刷新
+            return fromStoreValue(key, cache.getIfPresent(key));
+        } finally {
+            if (isStats()) {
+                getCacheStats().recordRequestLatency(System.nanoTime() - start);
+            }
         }
-        return cache.getIfPresent(key);
     }
 
     @Override
@@ -70,13 +108,59 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
             getCacheStats().addCacheRequestCount(1);
         }
 
+        long start = isStats() ? System.nanoTime() : 0L;
         Object result = this.cache.get(key, k -> loaderValue(key, valueLoader));
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
         // 如果不允许存NULL值 直接删除NULL值缓存
         boolean isEvict = !isAllowNullValues() && (result == null || result instanceof org.springframework.cache.support.NullValue);
         if (isEvict) {
             evict(key);
         }
-        return (T) fromStoreValue(result);
+        return (T) fromStoreValue(key, result);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> bulkLoader) {
+        if(log.isDebugEnabled()) {
+            log.debug("caffeine缓存 keys={} 批量获取缓存", JSON.toJSONString(keys));
+        }
+
+        if (isStats()) {
+            getCacheStats().addCacheRequestCount(keys.size());
+        }
+
+        long start = isStats() ? System.nanoTime() : 0L;
+        Map<Object, Object> present = this.cache.getAllPresent(keys);
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        Map<K, V> result = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+        for (Map.Entry<Object, Object> entry : present.entrySet()) {
+            result.put((K) entry.getKey(), (V) fromStoreValue(entry.getKey(), entry.getValue()));
+        }
+        if (bulkLoader == null || present.size() == keys.size()) {
+            return result;
+        }
+
+        // 未命中的key一次性加载
+        Set<K> missKeys = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (!present.containsKey(key)) {
+                missKeys.add(key);
+            }
+        }
+        Map<K, V> loaded = loaderAllValue(missKeys, bulkLoader);
+        for (Map.Entry<K, V> entry : loaded.entrySet()) {
+            // 不允许存NULL值
+            if (entry.getValue() != null) {
+                this.cache.put(entry.getKey(), toStoreValue(entry.getValue()));
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
     }
 
     @Override
@@ -103,6 +187,16 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
         }
     }
 
+    @Override
+    public void putAll(Map<?, ?> map) {
+        if(log.isDebugEnabled()) {
+            log.debug("caffeine缓存 keys={} 批量put缓存", JSON.toJSONString(map.keySet()));
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
     @Override
     public Object putIfAbsent(Object key, Object value) {
         if(log.isDebugEnabled()) {
@@ -113,7 +207,8 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
             return null;
         }
         Object result = this.cache.get(key, k -> toStoreValue(value));
-        return fromStoreValue(result);
+        // 刚放入的延迟反序列化值不在这里反序列化
+        return result == value ? value : fromStoreValue(key, result);
     }
 
     @Override
@@ -124,6 +219,14 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
         this.cache.invalidate(key);
     }
 
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if(log.isDebugEnabled()) {
+            log.debug("caffeine缓存 keys={} 批量清除缓存", JSON.toJSONString(keys));
+        }
+        this.cache.invalidateAll(keys);
+    }
+
     @Override
     public void clear() {
         if(log.isDebugEnabled()) {
@@ -137,6 +240,7 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
      */
     private <T> Object loaderValue(Object key, Callable<T> valueLoader) {
         long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         if (isStats()) {
             getCacheStats().addCachedMethodRequestCount(1);
         }
@@ -149,6 +253,7 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
 
             if (isStats()) {
                 getCacheStats().addCachedMethodRequestTime(System.currentTimeMillis() - start);
+                getCacheStats().recordLoadLatency(System.nanoTime() - startNanos);
             }
             return toStoreValue(t);
         } catch (Exception e) {
@@ -161,22 +266,110 @@ public class CaffeineCache extends AbstractValueAdaptingCache {
      * 根据配置获取本地缓存对象
      *
      * @param firstCacheSetting 一级缓存配置
+     * @param stats             是否开启统计，开启时同时打开Caffeine自带的命中、淘汰统计
+     * @param refreshLoader     刷新时加载数据
+     * @param refreshExecutor   执行刷新的线程池
+     * @param weigher           权重计算
      * @return {@link Cache}
      */
-    private static Cache<Object, Object> getCache(FirstCacheSetting firstCacheSetting) {
+    private static Cache<Object, Object> getCache(FirstCacheSetting firstCacheSetting, boolean stats,
+                                                  Function<Object, Object> refreshLoader, Executor refreshExecutor,
+                                                  Weigher<Object, Object> weigher) {
         // 根据配置创建Caffeine builder
         Caffeine<Object, Object> builder = Caffeine.newBuilder();
         builder.initialCapacity(firstCacheSetting.getInitialCapacity());
-        builder.maximumSize(firstCacheSetting.getMaximumSize());
+        if (firstCacheSetting.getMaximumWeight() > 0) {
+            builder.maximumWeight(firstCacheSetting.getMaximumWeight());
+            if (weigher == null) {
+                builder.weigher(new EstimatedSizeWeigher());
+            } else if (firstCacheSetting.isLazyDeserialize()) {
+                // 延迟反序列化的值没有反序列化时按原始字节数计算权重，反序列化后按反序列化的对象计算
+                Weigher<Object, Object> lazyValueWeigher = new EstimatedSizeWeigher();
+                builder.weigher((key, value) -> !(value instanceof LazyValue) ? weigher.weigh(key, value)
+                    : ((LazyValue) value).isResolved() ? weigher.weigh(key, ((LazyValue) value).get()) : lazyValueWeigher.weigh(key, value));
+            } else {
+                builder.weigher(weigher);
+            }
+        } else {
+            builder.maximumSize(firstCacheSetting.getMaximumSize());
+        }
         if (ExpireMode.WRITE.equals(firstCacheSetting.getExpireMode())) {
             builder.expireAfterWrite(firstCacheSetting.getExpireTime(), firstCacheSetting.getTimeUnit());
         } else if (ExpireMode.ACCESS.equals(firstCacheSetting.getExpireMode())) {
             builder.expireAfterAccess(firstCacheSetting.getExpireTime(), firstCacheSetting.getTimeUnit());
         }
+        if (stats) {
+            builder.recordStats();
+        }
+        if (firstCacheSetting.getRefreshTime() > 0 && refreshLoader != null) {
+            if (firstCacheSetting.getExpireTime() <= firstCacheSetting.getRefreshTime()) {
+                log.warn("一级缓存刷新时间{}大于等于有效时间{}，缓存过期前不会触发刷新", firstCacheSetting.getRefreshTime(),
+                         firstCacheSetting.getExpireTime());
+            }
+            builder.refreshAfterWrite(firstCacheSetting.getRefreshTime(), firstCacheSetting.getTimeUnit());
+            return builder.build(new RefreshLoader(refreshLoader, refreshExecutor));
+        }
         // 根据Caffeine builder创建 Cache 对象
         return builder.build();
     }
 
+    /**
+     * 一级缓存刷新加载器，在指定的线程池中异步加载，线程池拒绝时保留旧值，等下一个刷新周期再刷新
+     */
+    private static class RefreshLoader implements CacheLoader<Object, Object> {
+        private final Function<Object, Object> loader;
+
+        private final Executor executor;
+
+        RefreshLoader(Function<Object, Object> loader, Executor executor) {
+            this.loader = loader;
+            this.executor = executor;
+        }
+
+        @Override
+        public Object load(Object key) {
+            Object value = loader.apply(key);
+            // 一级缓存不存NULL值，返回NULL时Caffeine会删除缓存
+            return value instanceof NullValue ? null : value;
+        }
+
+        @Override
+        public CompletableFuture<Object> asyncReload(Object key, Object oldValue, Executor defaultExecutor) {
+            try {
+                return CompletableFuture.supplyAsync(() -> load(key), executor == null ? defaultExecutor : executor);
+            } catch (RejectedExecutionException e) {
+                if(log.isDebugEnabled()) {
+                    log.debug("caffeine缓存 key={} 后台任务队列已满，本次不刷新", JSON.toJSONString(key));
+                }
+                return CompletableFuture.completedFuture(oldValue);
+            }
+        }
+    }
+
+    /**
+     * 延迟反序列化的值在这里反序列化
+     */
+    @Override
+    protected Object fromStoreValue(Object storeValue) {
+        return super.fromStoreValue(LazyValue.unwrap(storeValue));
+    }
+
+    /**
+     * 延迟反序列化的值第一次读取时反序列化，按权重淘汰时把同一个值重新写入一次，让Caffeine按反序列化后的对象重新计算权重，
+     * 重新写入会重新开始计算按写入时间的有效时间
+     *
+     * @param key        缓存key
+     * @param storeValue 一级缓存里存的值
+     * @return 缓存值
+     */
+    private Object fromStoreValue(Object key, Object storeValue) {
+        if (weighted && storeValue instanceof LazyValue && !((LazyValue) storeValue).isResolved()) {
+            ((LazyValue) storeValue).get();
+            this.cache.asMap().replace(key, storeValue, storeValue);
+        }
+        return fromStoreValue(storeValue);
+    }
+
     @Override
     public boolean isAllowNullValues() {
         return false;
@@ -0,0 +1,118 @@
+package com.github.zomin.cache.caffeine;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.zomin.cache.LazyValue;
+import org.springframework.cache.support.NullValue;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 按估算的内存占用（字节）计算一级缓存条目权重，配合{@link com.github.zomin.setting.FirstCacheSetting#getMaximumWeight()}使用
+ * <p>
+ * 字符串、数组、基本类型包装类直接按对象布局估算；集合和Map只取前{@value #SAMPLE_SIZE}个元素估算平均大小再乘以元素个数；
+ * 其它对象按JSON序列化后的长度估算。权重只在写入一级缓存时计算，
+ * 延迟反序列化的值（{@link LazyValue}）第一次读取时由一级缓存重新写入一次再计算，结果是近似值，只用于控制内存总量。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class EstimatedSizeWeigher implements Weigher<Object, Object> {
+
+    /**
+     * 集合、Map估算时取样的元素个数
+     */
+    private static final int SAMPLE_SIZE = 16;
+
+    /**
+     * 嵌套集合最多估算的层数，更深的按一个普通对象算
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * 对象头和对齐的大致开销
+     */
+    private static final int OBJECT_SIZE = 16;
+
+    /**
+     * Caffeine每个缓存节点的大致开销
+     */
+    private static final int ENTRY_SIZE = 64;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long size = ENTRY_SIZE + estimate(key, 0) + estimate(value, 0);
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * 估算对象占用的内存
+     *
+     * @param value 对象
+     * @param depth 当前嵌套层数
+     * @return 字节数
+     */
+    static long estimate(Object value, int depth) {
+        if (value == null || value instanceof NullValue || value instanceof Enum) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return OBJECT_SIZE + 8;
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_SIZE + ((byte[]) value).length;
+        }
+        if (value instanceof LazyValue) {
+            // 没有反序列化时按原始字节估算，反序列化后原始字节已经释放，按反序列化的对象估算
+            LazyValue lazyValue = (LazyValue) value;
+            return lazyValue.isResolved() ? OBJECT_SIZE * 2 + estimate(lazyValue.get(), depth) : OBJECT_SIZE * 2 + lazyValue.getSize();
+        }
+        if (depth >= MAX_DEPTH) {
+            return OBJECT_SIZE;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            return 40 + collection.size() * (OBJECT_SIZE + sampleAverage(collection.iterator(), depth));
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            return 48 + map.size() * (32 + sampleAverage(map.entrySet().iterator(), depth));
+        }
+        if (value instanceof Map.Entry) {
+            return estimate(((Map.Entry<?, ?>) value).getKey(), depth) + estimate(((Map.Entry<?, ?>) value).getValue(), depth);
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            if (value.getClass().getComponentType().isPrimitive()) {
+                return OBJECT_SIZE + 8L * length;
+            }
+            long total = 0;
+            int sampled = Math.min(length, SAMPLE_SIZE);
+            for (int i = 0; i < sampled; i++) {
+                total += estimate(Array.get(value, i), depth + 1);
+            }
+            return OBJECT_SIZE + 4L * length + (sampled == 0 ? 0 : total / sampled * length);
+        }
+        try {
+            return OBJECT_SIZE + 2L * JSON.toJSONString(value).length();
+        } catch (Exception e) {
+            return OBJECT_SIZE;
+        }
+    }
+
+    private static long sampleAverage(Iterator<?> iterator, int depth) {
+        long total = 0;
+        int sampled = 0;
+        while (iterator.hasNext() && sampled < SAMPLE_SIZE) {
+            total += estimate(iterator.next(), depth + 1);
+            sampled++;
+        }
+        return sampled == 0 ? 0 : total / sampled;
+    }
+}
@@ -0,0 +1,430 @@
+package com.github.zomin.cache.offheap;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.zomin.cache.AbstractValueAdaptingCache;
+import com.github.zomin.setting.FirstCacheSetting;
+import com.github.zomin.support.ExpireMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 基于堆外内存实现的一级缓存
+ * <p>
+ * 缓存值序列化后存放在{@link OffHeapSlabAllocator}分配的直接内存里，堆内只保留一个Caffeine索引（key -> 堆外内存块），
+ * 淘汰、过期的规则和{@link com.github.zomin.cache.caffeine.CaffeineCache}一样由Caffeine处理，
+ * 条目被删除时把内存块还给分配器。每次读取都要反序列化，适合数据量大、读多写少、对GC停顿敏感的缓存。
+ * </p>
+ * <p>
+ * 按权重淘汰（maximumWeight大于0）时权重是条目占用的堆外内存字节数，不使用自定义的权重计算，也不受一级缓存全局预算管理。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class OffHeapCache extends AbstractValueAdaptingCache {
+    protected static final Logger log = LoggerFactory.getLogger(OffHeapCache.class);
+
+    /**
+     * 每个slab的大小
+     */
+    private static final int SLAB_SIZE = 1024 * 1024;
+
+    /**
+     * 缓存索引
+     */
+    private final Cache<Object, OffHeapEntry> cache;
+
+    /**
+     * 堆外内存分配器
+     */
+    private final OffHeapSlabAllocator allocator = new OffHeapSlabAllocator(SLAB_SIZE);
+
+    /**
+     * 缓存值序列化器
+     */
+    private final RedisSerializer<Object> serializer;
+
+    /**
+     * @param name              缓存名称
+     * @param firstCacheSetting 一级缓存配置 {@link FirstCacheSetting}
+     * @param stats             是否开启统计模式
+     * @param serializer        缓存值序列化器，一般和二级缓存使用同一个，为NULL时使用JDK序列化
+     */
+    public OffHeapCache(String name, FirstCacheSetting firstCacheSetting, boolean stats, RedisSerializer<Object> serializer) {
+        super(stats, name);
+        this.serializer = serializer == null ? new JdkSerializationRedisSerializer() : serializer;
+        this.cache = getCache(firstCacheSetting, stats);
+    }
+
+    @Override
+    public Cache<Object, ?> getNativeCache() {
+        return this.cache;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 key={} 获取缓存", JSON.toJSONString(key));
+        }
+
+        if (isStats()) {
+            getCacheStats().addCacheRequestCount(1);
+        }
+
+        long start = isStats() ? System.nanoTime() : 0L;
+        try {
+            return read(key, cache.getIfPresent(key));
+        } finally {
+            if (isStats()) {
+                getCacheStats().recordRequestLatency(System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 key={} 获取缓存， 如果没有命中就走库加载缓存", JSON.toJSONString(key));
+        }
+
+        if (isStats()) {
+            getCacheStats().addCacheRequestCount(1);
+        }
+
+        long start = isStats() ? System.nanoTime() : 0L;
+        // 本次加载的值直接返回，不再从堆外内存反序列化
+        Object[] loaded = new Object[1];
+        OffHeapEntry entry = this.cache.get(key, k -> {
+            loaded[0] = loaderValue(key, valueLoader);
+            return write(key, loaded[0]);
+        });
+        Object result = loaded[0] != null ? loaded[0] : read(key, entry);
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        // 不允许存NULL值 直接删除NULL值缓存
+        if (result == null || result instanceof NullValue) {
+            evict(key);
+        }
+        return (T) fromStoreValue(result);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> bulkLoader) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 keys={} 批量获取缓存", JSON.toJSONString(keys));
+        }
+
+        if (isStats()) {
+            getCacheStats().addCacheRequestCount(keys.size());
+        }
+
+        long start = isStats() ? System.nanoTime() : 0L;
+        Map<Object, OffHeapEntry> present = this.cache.getAllPresent(keys);
+        Map<K, V> result = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+        for (Map.Entry<Object, OffHeapEntry> entry : present.entrySet()) {
+            Object value = read(entry.getKey(), entry.getValue());
+            if (value != null) {
+                result.put((K) entry.getKey(), (V) fromStoreValue(value));
+            }
+        }
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        if (bulkLoader == null || result.size() == keys.size()) {
+            return result;
+        }
+
+        // 未命中的key一次性加载
+        Set<K> missKeys = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (!result.containsKey(key)) {
+                missKeys.add(key);
+            }
+        }
+        Map<K, V> loaded = loaderAllValue(missKeys, bulkLoader);
+        for (Map.Entry<K, V> entry : loaded.entrySet()) {
+            // 不允许存NULL值
+            if (entry.getValue() != null) {
+                put(entry.getKey(), entry.getValue());
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            if(log.isDebugEnabled()) {
+                log.debug("缓存值为NULL并且不允许存NULL值，不缓存数据");
+            }
+            return;
+        }
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 key={} put缓存，缓存值：{}", JSON.toJSONString(key), JSON.toJSONString(value));
+        }
+        OffHeapEntry entry = write(key, value);
+        if (entry == null) {
+            // 序列化失败时删除旧值，避免读到过期数据
+            this.cache.invalidate(key);
+            return;
+        }
+        this.cache.put(key, entry);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> map) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 keys={} 批量put缓存", JSON.toJSONString(map.keySet()));
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Object putIfAbsent(Object key, Object value) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 key={} putIfAbsent 缓存，缓存值：{}", JSON.toJSONString(key), JSON.toJSONString(value));
+        }
+        if (value == null) {
+            return null;
+        }
+        boolean[] written = new boolean[1];
+        OffHeapEntry entry = this.cache.get(key, k -> {
+            written[0] = true;
+            return write(key, value);
+        });
+        return written[0] ? value : fromStoreValue(read(key, entry));
+    }
+
+    @Override
+    public void evict(Object key) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 key={} 清除缓存", JSON.toJSONString(key));
+        }
+        this.cache.invalidate(key);
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 keys={} 批量清除缓存", JSON.toJSONString(keys));
+        }
+        this.cache.invalidateAll(keys);
+    }
+
+    @Override
+    public void clear() {
+        if(log.isDebugEnabled()) {
+            log.debug("堆外缓存 清空缓存");
+        }
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * 已经申请的堆外内存字节数，包括空闲的块
+     *
+     * @return long
+     */
+    public long getAllocatedBytes() {
+        return allocator.getAllocatedBytes();
+    }
+
+    /**
+     * 缓存条目正在使用的堆外内存字节数
+     *
+     * @return long
+     */
+    public long getUsedBytes() {
+        return allocator.getUsedBytes();
+    }
+
+    /**
+     * 序列化并写入堆外内存
+     *
+     * @return 序列化失败或堆外内存不足时返回NULL
+     */
+    private OffHeapEntry write(Object key, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof NullValue) {
+            return new OffHeapEntry(null, 0);
+        }
+        byte[] bytes;
+        try {
+            bytes = serializer.serialize(value);
+        } catch (Exception e) {
+            log.warn("堆外缓存 key={} 序列化缓存值异常，不缓存数据：{}", JSON.toJSONString(key), e.getMessage(), e);
+            return null;
+        }
+        ByteBuffer slot;
+        try {
+            slot = allocator.allocate(bytes.length);
+        } catch (OutOfMemoryError e) {
+            // 直接内存超过 -XX:MaxDirectMemorySize，只是不缓存，不影响业务调用
+            log.warn("堆外缓存 key={} 申请堆外内存失败，不缓存数据：{}", JSON.toJSONString(key), e.getMessage());
+            return null;
+        }
+        slot.duplicate().put(bytes);
+        return new OffHeapEntry(slot, bytes.length);
+    }
+
+    /**
+     * 从堆外内存读取并反序列化，条目已经被删除或反序列化失败时返回NULL
+     */
+    private Object read(Object key, OffHeapEntry entry) {
+        if (entry == null) {
+            return null;
+        }
+        if (entry.slot == null) {
+            return NullValue.INSTANCE;
+        }
+        // 引用计数加1，避免读取过程中条目被删除、内存块被其它条目复用
+        if (!entry.retain()) {
+            return null;
+        }
+        byte[] bytes = new byte[entry.length];
+        try {
+            ByteBuffer buffer = entry.slot.duplicate();
+            buffer.get(bytes);
+        } finally {
+            entry.release();
+        }
+        try {
+            return serializer.deserialize(bytes);
+        } catch (Exception e) {
+            log.warn("堆外缓存 key={} 反序列化缓存值异常，删除缓存：{}", JSON.toJSONString(key), e.getMessage(), e);
+            this.cache.invalidate(key);
+            return null;
+        }
+    }
+
+    /**
+     * 加载数据
+     */
+    private <T> Object loaderValue(Object key, Callable<T> valueLoader) {
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        if (isStats()) {
+            getCacheStats().addCachedMethodRequestCount(1);
+        }
+
+        try {
+            T t = valueLoader.call();
+            if(log.isDebugEnabled()) {
+                log.debug("堆外缓存 key={} 从库加载缓存: {}", JSON.toJSONString(key), JSON.toJSONString(t));
+            }
+
+            if (isStats()) {
+                getCacheStats().addCachedMethodRequestTime(System.currentTimeMillis() - start);
+                getCacheStats().recordLoadLatency(System.nanoTime() - startNanos);
+            }
+            return toStoreValue(t);
+        } catch (Exception e) {
+            throw new LoaderCacheValueException(key, e);
+        }
+    }
+
+    /**
+     * 根据配置创建缓存索引，条目被删除（淘汰、过期、覆盖、手动删除）时释放堆外内存
+     *
+     * @param firstCacheSetting 一级缓存配置
+     * @param stats             是否开启统计
+     * @return {@link Cache}
+     */
+    private Cache<Object, OffHeapEntry> getCache(FirstCacheSetting firstCacheSetting, boolean stats) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        builder.initialCapacity(firstCacheSetting.getInitialCapacity());
+        // 在调用线程里执行删除回调，内存块能尽快被复用
+        builder.executor(Runnable::run);
+        if (ExpireMode.WRITE.equals(firstCacheSetting.getExpireMode())) {
+            builder.expireAfterWrite(firstCacheSetting.getExpireTime(), firstCacheSetting.getTimeUnit());
+        } else if (ExpireMode.ACCESS.equals(firstCacheSetting.getExpireMode())) {
+            builder.expireAfterAccess(firstCacheSetting.getExpireTime(), firstCacheSetting.getTimeUnit());
+        }
+        if (stats) {
+            builder.recordStats();
+        }
+        if (firstCacheSetting.getRefreshTime() > 0) {
+            log.warn("堆外缓存 {} 不支持刷新，忽略refreshTime配置", getName());
+        }
+        Caffeine<Object, OffHeapEntry> typedBuilder = builder.removalListener(
+            (Object key, OffHeapEntry entry, RemovalCause cause) -> {
+                if (entry != null) {
+                    entry.release();
+                }
+            });
+        if (firstCacheSetting.getMaximumWeight() <= 0) {
+            log.warn("堆外缓存 {} 没有配置maximumWeight，只按条数淘汰，堆外内存占用只受 -XX:MaxDirectMemorySize 限制", getName());
+        }
+        if (firstCacheSetting.getMaximumWeight() > 0) {
+            return typedBuilder.maximumWeight(firstCacheSetting.getMaximumWeight())
+                .weigher((Object key, OffHeapEntry entry) -> entry.weight())
+                .build();
+        }
+        return typedBuilder.maximumSize(firstCacheSetting.getMaximumSize()).build();
+    }
+
+    @Override
+    public boolean isAllowNullValues() {
+        return false;
+    }
+
+    /**
+     * 堆外缓存条目，用引用计数管理内存块：缓存持有一个引用，读取时临时加一个，减到0时归还内存块
+     */
+    private final class OffHeapEntry {
+        private final ByteBuffer slot;
+
+        private final int length;
+
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        OffHeapEntry(ByteBuffer slot, int length) {
+            this.slot = slot;
+            this.length = length;
+        }
+
+        boolean retain() {
+            for (;;) {
+                int count = refCount.get();
+                if (count <= 0) {
+                    return false;
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refCount.decrementAndGet() == 0 && slot != null) {
+                allocator.free(slot);
+            }
+        }
+
+        int weight() {
+            return slot == null ? 1 : slot.capacity();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.zomin.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外内存分配器
+ * <p>
+ * 按2的幂划分大小等级（最小{@value #MIN_SLOT_SIZE}字节，最大一个slab），每个等级维护一个空闲块队列。
+ * 空闲块用完时申请一个slab（{@link ByteBuffer#allocateDirect(int)}）切成该等级大小的块，释放的块放回对应等级的队列复用。
+ * 超过slab大小的值单独申请一块直接内存，释放后由GC回收。slab申请后不归还，
+ * 最多浪费一半的块内空间，堆外内存总量还受JVM参数 -XX:MaxDirectMemorySize 限制。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+class OffHeapSlabAllocator {
+
+    /**
+     * 最小块大小
+     */
+    static final int MIN_SLOT_SIZE = 64;
+
+    private static final int MIN_SLOT_SHIFT = Integer.numberOfTrailingZeros(MIN_SLOT_SIZE);
+
+    /**
+     * 每个slab的大小，2的幂
+     */
+    private final int slabSize;
+
+    /**
+     * 每个大小等级的空闲块
+     */
+    private final Queue<ByteBuffer>[] freeSlots;
+
+    /**
+     * 已经申请的堆外内存字节数
+     */
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /**
+     * 正在使用的块的字节数
+     */
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * @param slabSize 每个slab的大小，向上取整到2的幂
+     */
+    @SuppressWarnings("unchecked")
+    OffHeapSlabAllocator(int slabSize) {
+        this.slabSize = Math.max(MIN_SLOT_SIZE, Integer.highestOneBit(Math.max(1, slabSize - 1)) << 1);
+        this.freeSlots = new Queue[sizeClassOf(this.slabSize) + 1];
+        for (int i = 0; i < freeSlots.length; i++) {
+            freeSlots[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * 分配一个至少size字节的块
+     *
+     * @param size 需要的字节数
+     * @return 容量为块大小、position为0的 {@link ByteBuffer}
+     */
+    ByteBuffer allocate(int size) {
+        if (size > slabSize) {
+            allocatedBytes.addAndGet(size);
+            usedBytes.addAndGet(size);
+            return ByteBuffer.allocateDirect(size);
+        }
+        int sizeClass = sizeClassOf(size);
+        ByteBuffer slot = freeSlots[sizeClass].poll();
+        if (slot == null) {
+            slot = newSlab(sizeClass);
+        }
+        usedBytes.addAndGet(slot.capacity());
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * 释放块，同一个块只能释放一次
+     *
+     * @param slot {@link #allocate(int)} 返回的块
+     */
+    void free(ByteBuffer slot) {
+        usedBytes.addAndGet(-slot.capacity());
+        if (slot.capacity() > slabSize) {
+            allocatedBytes.addAndGet(-slot.capacity());
+            return;
+        }
+        freeSlots[sizeClassOf(slot.capacity())].offer(slot);
+    }
+
+    /**
+     * 申请一个新的slab并切分成指定等级的块，返回第一个块，其余放入空闲队列
+     */
+    private ByteBuffer newSlab(int sizeClass) {
+        int slotSize = MIN_SLOT_SIZE << sizeClass;
+        ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+        allocatedBytes.addAndGet(slabSize);
+        ByteBuffer first = null;
+        for (int position = 0; position + slotSize <= slabSize; position += slotSize) {
+            slab.limit(position + slotSize).position(position);
+            ByteBuffer slot = slab.slice();
+            if (first == null) {
+                first = slot;
+            } else {
+                freeSlots[sizeClass].offer(slot);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * 能放下size字节的最小等级
+     */
+    private static int sizeClassOf(int size) {
+        if (size <= MIN_SLOT_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SLOT_SHIFT;
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    long getUsedBytes() {
+        return usedBytes.get();
+    }
+}
@@ -2,6 +2,11 @@ package com.github.zomin.cache.redis;
 
 import com.alibaba.fastjson.JSON;
 import com.github.zomin.cache.AbstractValueAdaptingCache;
+import com.github.zomin.cache.LazyValue;
+import com.github.zomin.listener.RedisPubSubMessage;
+import com.github.zomin.listener.RedisPubSubMessageType;
+import com.github.zomin.listener.RedisPublisher;
+import com.github.zomin.redis.serializer.CompressRedisSerializer;
 import com.github.zomin.setting.SecondaryCacheSetting;
 import com.github.zomin.support.AwaitThreadContainer;
 import com.github.zomin.support.Lock;
@@ -10,13 +15,40 @@ import com.github.zomin.util.RedisHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.support.NullValue;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * 基于Redis实现的二级缓存
@@ -29,23 +61,108 @@ public class RedisCache extends AbstractValueAdaptingCache {
     /**
      * 刷新缓存重试次数
      */
-    private static final int RETRY_COUNT = 20;
+    private static final int RETRY_COUNT = 4;
 
     /**
      * 刷新缓存等待时间，单位毫秒
+     * <p>
+     * 持有锁的节点加载完成后会发布{@link RedisPubSubMessageType#LOADED}消息唤醒等待线程，
+     * 这里的等待时间只是消息丢失时的兜底轮询间隔
+     * </p>
+     */
+    private static final long WAIT_TIME = 100;
+
+    /**
+     * 等待本机其它线程加载数据的最长时间，单位秒，和加载数据的分布式锁的过期时间一致
+     */
+    private static final long LOADING_TIMEOUT = 60;
+
+    /**
+     * key 不存在时 PTTL 的返回值
+     */
+    private static final long KEY_NOT_EXISTS = -2;
+
+    /**
+     * 一次往返同时获取缓存值和剩余有效时间(毫秒)的lua脚本
+     * <p>
+     * 返回 {pttl, value}，pttl 放在第一位，避免 value 为 nil 时数组被截断
+     * </p>
+     */
+    private static final RedisScript<List> GET_WITH_TTL_SCRIPT = RedisScript.of(
+        "return {redis.call('pttl', KEYS[1]), redis.call('get', KEYS[1])}", List.class);
+
+    private static final byte[] GET_WITH_TTL_SCRIPT_BYTES = GET_WITH_TTL_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * redis还没有缓存脚本时错误回复的错误类型
      */
-    private static final long WAIT_TIME = 20;
+    private static final String NO_SCRIPT_ERROR = "NOSCRIPT";
+
+    /**
+     * 不反序列化lua脚本返回的缓存值
+     */
+    @SuppressWarnings("unchecked")
+    private static final RedisSerializer<List> RAW_SERIALIZER = (RedisSerializer) new RawRedisSerializer();
+
+    /**
+     * 表示redis返回了错误回复（如 ERR、NOPERM）的客户端异常，连接异常、超时等不是错误回复
+     */
+    private static final String[] ERROR_REPLY_EXCEPTIONS = {"redis.clients.jedis.exceptions.JedisDataException",
+        "io.lettuce.core.RedisCommandExecutionException"};
+
+    /**
+     * 检测redis是否支持执行lua脚本时使用的key，不存在的key上执行脚本只会因为不支持EVAL命令返回错误回复
+     */
+    private static final String SCRIPT_PROBE_KEY = "layering:cache:script_probe";
+
+    /**
+     * redis不支持执行lua脚本时，间隔多久重新检测一次，单位毫秒
+     */
+    private static final long SCRIPT_PROBE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 下次检测redis是否支持执行lua脚本的时间：-1表示还没有检测，0表示支持，大于0表示在这之前使用降级方式获取缓存
+     */
+    private volatile long scriptProbeTime = -1L;
 
     /**
      * 等待线程容器
      */
     private AwaitThreadContainer container = new AwaitThreadContainer();
 
+    /**
+     * 本机正在加载的key，同一个key在本机只有一个线程去竞争分布式锁，其它线程等待同一个结果
+     */
+    private final ConcurrentMap<String, CompletableFuture<Object>> loadingFutures = new ConcurrentHashMap<>(16);
+
     /**
      * redis 客户端
      */
     private RedisTemplate<String, Object> redisTemplate;
 
+    /**
+     * 读写缓存值的redis客户端，开启压缩时值序列化器包装了{@link CompressRedisSerializer}，否则就是{@link #redisTemplate}
+     * <p>
+     * 发布消息、加锁等仍然使用{@link #redisTemplate}，保证和其它节点的消息格式一致
+     * </p>
+     */
+    private final RedisTemplate<String, Object> valueRedisTemplate;
+
+    /**
+     * NULL值序列化后的字节，延迟反序列化时用来识别缓存的NULL值
+     */
+    private final byte[] nullValueBytes;
+
+    /**
+     * 缓存key前缀，每个缓存只计算一次
+     */
+    private final String keyPrefix;
+
+    /**
+     * 缓存key前缀的byte数组
+     */
+    private final byte[] keyPrefixBytes;
+
     /**
      * 缓存有效时间,毫秒
      */
@@ -81,6 +198,26 @@ public class RedisCache extends AbstractValueAdaptingCache {
      */
     private final int magnification;
 
+    /**
+     * 执行强制刷新的线程池，由CacheManager管理，为空时使用{@link ThreadTaskUtils}
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 是否按升级前的格式发布pub/sub消息，旧格式不支持加载完成消息，这期间等待的线程依靠轮询兜底
+     */
+    private volatile boolean pubSubLegacyFormat = false;
+
+    /**
+     * 已提交到{@link #scheduler}还没执行完的强制刷新任务数
+     */
+    private final LongAdder pendingRefreshCount = new LongAdder();
+
+    /**
+     * 累计等待其它线程或其它节点加载数据的次数
+     */
+    private final LongAdder lockWaitCount = new LongAdder();
+
     /**
      * @param name                  缓存名称
      * @param redisTemplate         redis客户端 redis 客户端
@@ -92,7 +229,8 @@ public class RedisCache extends AbstractValueAdaptingCache {
         this(name, redisTemplate, secondaryCacheSetting.getTimeUnit().toMillis(secondaryCacheSetting.getExpiration()),
              secondaryCacheSetting.getTimeUnit().toMillis(secondaryCacheSetting.getPreloadTime()),
              secondaryCacheSetting.isForceRefresh(), secondaryCacheSetting.isUsePrefix(),
-             secondaryCacheSetting.isAllowNullValue(), secondaryCacheSetting.getMagnification(), stats);
+             secondaryCacheSetting.isAllowNullValue(), secondaryCacheSetting.getMagnification(),
+             secondaryCacheSetting.getCompressThreshold(), stats);
     }
 
     /**
@@ -108,16 +246,38 @@ public class RedisCache extends AbstractValueAdaptingCache {
      */
     public RedisCache(String name, RedisTemplate<String, Object> redisTemplate, long expiration, long preloadTime,
                       boolean forceRefresh, boolean usePrefix, boolean allowNullValues, int magnification, boolean stats) {
+        this(name, redisTemplate, expiration, preloadTime, forceRefresh, usePrefix, allowNullValues, magnification, 0, stats);
+    }
+
+    /**
+     * @param name              缓存名称
+     * @param redisTemplate     redis客户端   redis 客户端
+     * @param expiration        key的有效时间
+     * @param preloadTime       缓存主动在失效前强制刷新缓存的时间
+     * @param forceRefresh      是否强制刷新（执行被缓存的方法），默认是false
+     * @param usePrefix         是否使用缓存名称作为前缀
+     * @param allowNullValues   是否允许存NULL值，模式允许
+     * @param magnification     非空值和null值之间的时间倍率
+     * @param compressThreshold 压缩阈值，单位字节，0表示不压缩
+     * @param stats             是否开启统计模式
+     */
+    public RedisCache(String name, RedisTemplate<String, Object> redisTemplate, long expiration, long preloadTime,
+                      boolean forceRefresh, boolean usePrefix, boolean allowNullValues, int magnification,
+                      int compressThreshold, boolean stats) {
         super(stats, name);
 
         Assert.notNull(redisTemplate, "RedisTemplate 不能为NULL");
         this.redisTemplate = redisTemplate;
+        this.valueRedisTemplate = compressThreshold > 0 ? compressRedisTemplate(redisTemplate, compressThreshold) : redisTemplate;
+        this.nullValueBytes = serializeNullValue(getValueSerializer());
         this.expiration = expiration;
         this.preloadTime = preloadTime;
         this.forceRefresh = forceRefresh;
         this.usePrefix = usePrefix;
         this.allowNullValues = allowNullValues;
         this.magnification = magnification;
+        this.keyPrefix = RedisCacheKey.prefix(name);
+        this.keyPrefixBytes = RedisCacheKey.prefixBytes(name);
     }
 
     @Override
@@ -135,11 +295,53 @@ public class RedisCache extends AbstractValueAdaptingCache {
         if(log.isDebugEnabled()) {
             log.debug("redis缓存 key= {} 查询redis缓存", redisCacheKey.getKey());
         }
-        return redisTemplate.opsForValue().get(redisCacheKey.getKey());
+        byte[] rawKey = redisCacheKey.getRawKey();
+        long start = isStats() ? System.nanoTime() : 0L;
+        byte[] rawValue = valueRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        return rawValue == null ? null : getValueSerializer().deserialize(rawValue);
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(Object key, Callable<T> valueLoader) {
+        return (T) get(key, valueLoader, false);
+    }
+
+    /**
+     * 和 {@link #get(Object)} 一样查询缓存，但是命中时不反序列化，用于一级缓存后台刷新等提升后不一定被读取的场景
+     *
+     * @param key 缓存key
+     * @return 命中时返回 {@link LazyValue}，缓存的NULL值是 {@link com.github.zomin.support.NullValue}，未命中返回NULL
+     */
+    public Object getLazy(Object key) {
+        if (isStats()) {
+            getCacheStats().addCacheRequestCount(1);
+        }
+
+        byte[] rawKey = getRedisCacheKey(key).getRawKey();
+        long start = isStats() ? System.nanoTime() : 0L;
+        byte[] result = valueRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        return toLazyValue(result);
+    }
+
+    /**
+     * 和 {@link #get(Object, Callable)} 一样查询缓存、刷新缓存和加载数据，但是命中时不反序列化
+     *
+     * @param key         缓存key
+     * @param valueLoader 未命中时加载数据
+     * @return 命中时返回 {@link LazyValue}，缓存的NULL值返回NULL；未命中时返回加载的数据
+     */
+    public Object getLazy(Object key, Callable<?> valueLoader) {
+        return get(key, valueLoader, true);
+    }
+
+    private Object get(Object key, Callable<?> valueLoader, boolean lazy) {
         if (isStats()) {
             getCacheStats().addCacheRequestCount(1);
         }
@@ -148,17 +350,109 @@ public class RedisCache extends AbstractValueAdaptingCache {
         if(log.isDebugEnabled()) {
             log.debug("redis缓存 key= {} 查询redis缓存如果没有命中，从数据库获取数据", redisCacheKey.getKey());
         }
-        // 先获取缓存，如果有直接返回
-        Object result = redisTemplate.opsForValue().get(redisCacheKey.getKey());
-        if (result != null || redisTemplate.hasKey(redisCacheKey.getKey())) {
+        // 先获取缓存和剩余有效时间，如果有直接返回
+        long start = isStats() ? System.nanoTime() : 0L;
+        List<Object> values = getWithTtl(redisCacheKey.getRawKey(), lazy);
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        long ttl = ((Number) values.get(0)).longValue();
+        Object result = values.size() > 1 ? values.get(1) : null;
+        if (lazy) {
+            result = toLazyValue((byte[]) result);
+        }
+        if (result != null || ttl != KEY_NOT_EXISTS) {
             // 刷新缓存
-            refreshCache(redisCacheKey, valueLoader, result);
-            return (T) fromStoreValue(result);
+            refreshCache(redisCacheKey, valueLoader, result, ttl);
+            return fromStoreValue(result);
         }
         // 执行缓存方法
         return executeCacheMethod(redisCacheKey, valueLoader);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> bulkLoader) {
+        if (isStats()) {
+            getCacheStats().addCacheRequestCount(keys.size());
+        }
+
+        Map<K, V> result = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+        if (CollectionUtils.isEmpty(keys)) {
+            return result;
+        }
+        List<K> keyList = new ArrayList<>(keys);
+        List<String> redisKeys = new ArrayList<>(keyList.size());
+        for (K key : keyList) {
+            redisKeys.add(getRedisCacheKey(key).getKey());
+        }
+        if(log.isDebugEnabled()) {
+            log.debug("redis缓存 keys= {} 批量查询redis缓存", JSON.toJSONString(redisKeys));
+        }
+        // 一次MGET获取所有缓存
+        long start = isStats() ? System.nanoTime() : 0L;
+        List<Object> values = valueRedisTemplate.opsForValue().multiGet(redisKeys);
+        if (isStats()) {
+            getCacheStats().recordRequestLatency(System.nanoTime() - start);
+        }
+        Set<K> missKeys = new LinkedHashSet<>();
+        for (int i = 0; i < keyList.size(); i++) {
+            Object value = values == null ? null : values.get(i);
+            if (value != null) {
+                result.put(keyList.get(i), (V) fromStoreValue(value));
+            } else {
+                missKeys.add(keyList.get(i));
+            }
+        }
+        if (bulkLoader == null || missKeys.isEmpty()) {
+            return result;
+        }
+
+        // 未命中的key一次性加载，并批量放到缓存
+        Map<K, V> loaded = loaderAllValue(missKeys, bulkLoader);
+        Map<K, V> putMap = new LinkedHashMap<>();
+        for (K key : missKeys) {
+            V value = loaded.get(key);
+            // 没有加载到的key在允许缓存NULL值时缓存NULL值，防止缓存穿透
+            if (value != null || isAllowNullValues()) {
+                putMap.put(key, value);
+                result.put(key, value);
+            }
+        }
+        putAll(putMap);
+        return result;
+    }
+
+    /**
+     * 批量获取缓存，命中的值不反序列化，不加载未命中的key
+     * <p>
+     * 用于从其它节点预热一级缓存，不是业务请求，不计入缓存统计
+     * </p>
+     *
+     * @param keys 缓存key
+     * @param <K>  key的类型
+     * @return 命中的key和 {@link LazyValue}，缓存的NULL值是 {@link com.github.zomin.support.NullValue}
+     */
+    public <K> Map<K, Object> getAllLazy(Collection<K> keys) {
+        Map<K, Object> result = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+        if (CollectionUtils.isEmpty(keys)) {
+            return result;
+        }
+        List<K> keyList = new ArrayList<>(keys);
+        byte[][] rawKeys = new byte[keyList.size()][];
+        for (int i = 0; i < keyList.size(); i++) {
+            rawKeys[i] = getRedisCacheKey(keyList.get(i)).getRawKey();
+        }
+        List<byte[]> values = valueRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys));
+        for (int i = 0; values != null && i < keyList.size(); i++) {
+            Object value = toLazyValue(values.get(i));
+            if (value != null) {
+                result.put(keyList.get(i), value);
+            }
+        }
+        return result;
+    }
+
     @Override
     public void put(Object key, Object value) {
         RedisCacheKey redisCacheKey = getRedisCacheKey(key);
@@ -168,6 +462,38 @@ public class RedisCache extends AbstractValueAdaptingCache {
         putValue(redisCacheKey, value);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<?, ?> map) {
+        if (CollectionUtils.isEmpty(map)) {
+            return;
+        }
+        if(log.isDebugEnabled()) {
+            log.debug("redis缓存 keys= {} 批量put缓存", JSON.toJSONString(map.keySet()));
+        }
+        RedisSerializer<Object> valueSerializer = getValueSerializer();
+        // 使用pipeline一次往返写入所有缓存，每个key使用各自的有效时间
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                byte[] rawKey = getRedisCacheKey(entry.getKey()).getRawKey();
+                Object result = toStoreValue(entry.getValue());
+                // redis 缓存不允许直接存NULL，不允许缓存NULL值时也需要删除缓存
+                if (result == null || (!isAllowNullValues() && result instanceof org.springframework.cache.support.NullValue)) {
+                    connection.del(rawKey);
+                    continue;
+                }
+                long expirationTime = getExpirationTime(result);
+                byte[] rawValue = valueSerializer.serialize(result);
+                if (expirationTime <= 0) {
+                    connection.set(rawKey, rawValue);
+                } else {
+                    connection.pSetEx(rawKey, expirationTime, rawValue);
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public Object putIfAbsent(Object key, Object value) {
         if(log.isDebugEnabled()) {
@@ -184,8 +510,22 @@ public class RedisCache extends AbstractValueAdaptingCache {
     @Override
     public void evict(Object key) {
         RedisCacheKey redisCacheKey = getRedisCacheKey(key);
-        log.info("清除redis缓存 key= {} ", redisCacheKey.getKey());
-        redisTemplate.delete(redisCacheKey.getKey());
+        log.info("清除redis缓存 key= {} ", redisCacheKey);
+        byte[] rawKey = redisCacheKey.getRawKey();
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.del(rawKey));
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if (CollectionUtils.isEmpty(keys)) {
+            return;
+        }
+        List<String> redisKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            redisKeys.add(getRedisCacheKey(key).getKey());
+        }
+        log.info("批量清除redis缓存 keys= {} ", redisKeys);
+        redisTemplate.delete(redisKeys);
     }
 
     @Override
@@ -202,6 +542,22 @@ public class RedisCache extends AbstractValueAdaptingCache {
     }
 
 
+    /**
+     * 复制redis客户端，值序列化器包装成{@link CompressRedisSerializer}，连接工厂和key序列化器不变
+     */
+    @SuppressWarnings("unchecked")
+    private static RedisTemplate<String, Object> compressRedisTemplate(RedisTemplate<String, Object> redisTemplate, int compressThreshold) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(redisTemplate.getConnectionFactory());
+        template.setKeySerializer(redisTemplate.getKeySerializer());
+        template.setHashKeySerializer(redisTemplate.getHashKeySerializer());
+        template.setStringSerializer(redisTemplate.getStringSerializer());
+        template.setValueSerializer(new CompressRedisSerializer((RedisSerializer<Object>) redisTemplate.getValueSerializer(), compressThreshold));
+        template.setHashValueSerializer(redisTemplate.getHashValueSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+
     /**
      * 获取 RedisCacheKey
      *
@@ -209,20 +565,68 @@ public class RedisCache extends AbstractValueAdaptingCache {
      * @return RedisCacheKey
      */
     public RedisCacheKey getRedisCacheKey(Object key) {
-        return new RedisCacheKey(key, redisTemplate.getKeySerializer())
-            .cacheName(getName()).usePrefix(usePrefix);
+        return new RedisCacheKey(key, redisTemplate.getKeySerializer(), keyPrefix, keyPrefixBytes)
+            .usePrefix(usePrefix);
     }
 
     /**
-     * 同一个线程循环5次查询缓存，每次等待20毫秒，如果还是没有数据直接去执行被缓存的方法
+     * 本机同一个key只放一个线程去加载数据，其它线程等待该线程的加载结果
      */
+    @SuppressWarnings("unchecked")
     private <T> T executeCacheMethod(RedisCacheKey redisCacheKey, Callable<T> valueLoader) {
+        String key = redisCacheKey.getKey();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loadingFuture = loadingFutures.putIfAbsent(key, future);
+        if (loadingFuture != null) {
+            if(log.isDebugEnabled()) {
+                log.debug("redis缓存 key= {} 本机已有线程在加载数据，等待加载结果", key);
+            }
+            return (T) awaitLoading(key, loadingFuture);
+        }
+
+        try {
+            T t = lockAndExecuteCacheMethod(redisCacheKey, valueLoader);
+            future.complete(t);
+            return t;
+        } catch (Throwable e) {
+            // Error也要通知等待线程，否则等待线程会一直等到超时
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingFutures.remove(key, future);
+        }
+    }
+
+    /**
+     * 等待本机其它线程的加载结果，最多等待{@link #LOADING_TIMEOUT}秒
+     */
+    private Object awaitLoading(String key, CompletableFuture<Object> loadingFuture) {
+        lockWaitCount.increment();
+        try {
+            return loadingFuture.get(LOADING_TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new LoaderCacheValueException(key, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LoaderCacheValueException(key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new LoaderCacheValueException(key, e.getCause());
+        }
+    }
+
+    /**
+     * 同一个线程循环4次查询缓存，每次最多等待100毫秒（收到加载完成消息会提前唤醒），如果还是没有数据直接去执行被缓存的方法
+     */
+    private <T> T lockAndExecuteCacheMethod(RedisCacheKey redisCacheKey, Callable<T> valueLoader) {
         Lock redisLock = new Lock(redisTemplate, redisCacheKey.getKey() + "_sync_lock");
-        // 同一个线程循环20次查询缓存，每次等待20毫秒，如果还是没有数据直接去执行被缓存的方法
+        // 同一个线程循环4次查询缓存，每次最多等待100毫秒，如果还是没有数据直接去执行被缓存的方法
         for (int i = 0; i < RETRY_COUNT; i++) {
             try {
                 // 先取缓存，如果有直接返回，没有再去做拿锁操作
-                Object result = redisTemplate.opsForValue().get(redisCacheKey.getKey());
+                Object result = valueRedisTemplate.opsForValue().get(redisCacheKey.getKey());
                 if (result != null) {
                     if(log.isDebugEnabled()) {
                         log.debug("redis缓存 key= {} 获取到锁后查询查询缓存命中，不需要执行被缓存的方法", redisCacheKey.getKey());
@@ -238,12 +642,14 @@ public class RedisCache extends AbstractValueAdaptingCache {
                     }
                     // 唤醒线程
                     container.signalAll(redisCacheKey.getKey());
+                    publishLoaded(redisCacheKey.getKey());
                     return t;
                 }
                 // 线程等待
                 if(log.isDebugEnabled()) {
                     log.debug("redis缓存 key= {} 从数据库获取数据未获取到锁，进入等待状态，等待{}毫秒", redisCacheKey.getKey(), WAIT_TIME);
                 }
+                lockWaitCount.increment();
                 container.await(redisCacheKey.getKey(), WAIT_TIME);
             } catch (Exception e) {
                 container.signalAll(redisCacheKey.getKey());
@@ -260,11 +666,39 @@ public class RedisCache extends AbstractValueAdaptingCache {
         return loaderAndPutValue(redisCacheKey, valueLoader, true);
     }
 
+    /**
+     * 发布缓存加载完成的消息，唤醒其它节点等待该key的线程
+     */
+    private void publishLoaded(String key) {
+        try {
+            RedisPubSubMessage message = new RedisPubSubMessage();
+            message.setCacheName(getName());
+            message.setKey(key);
+            message.setMessageType(RedisPubSubMessageType.LOADED);
+            RedisPublisher.publisher(redisTemplate, new ChannelTopic(getName()), message, pubSubLegacyFormat);
+        } catch (Exception e) {
+            // 消息发布失败时其它节点依靠轮询兜底
+            log.warn("redis缓存 key={} 发布加载完成消息失败", key, e);
+        }
+    }
+
+    /**
+     * 唤醒本机等待该key加载完成的线程
+     *
+     * @param key redis缓存key
+     */
+    public void signalLoaded(String key) {
+        if (key != null) {
+            container.signalAll(key);
+        }
+    }
+
     /**
      * 加载并将数据放到redis缓存
      */
     private <T> T loaderAndPutValue(RedisCacheKey key, Callable<T> valueLoader, boolean isLoad) {
         long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         if (isLoad && isStats()) {
             getCacheStats().addCachedMethodRequestCount(1);
         }
@@ -277,6 +711,7 @@ public class RedisCache extends AbstractValueAdaptingCache {
             }
             if (isLoad && isStats()) {
                 getCacheStats().addCachedMethodRequestTime(System.currentTimeMillis() - start);
+                getCacheStats().recordLoadLatency(System.nanoTime() - startNanos);
             }
             return (T) fromStoreValue(result);
         } catch (Exception e) {
@@ -286,45 +721,191 @@ public class RedisCache extends AbstractValueAdaptingCache {
 
     private Object putValue(RedisCacheKey key, Object value) {
         Object result = toStoreValue(value);
+        byte[] rawKey = key.getRawKey();
         // redis 缓存不允许直接存NULL，如果结果返回NULL需要删除缓存
         if (result == null) {
-            redisTemplate.delete(key.getKey());
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.del(rawKey));
             return result;
         }
         // 不允许缓存NULL值，删除缓存
         if (!isAllowNullValues() && result instanceof org.springframework.cache.support.NullValue) {
-            redisTemplate.delete(key.getKey());
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.del(rawKey));
             return result;
         }
 
         // 允许缓存NULL值
-        long expirationTime = this.expiration;
+        long expirationTime = getExpirationTime(result);
 
         // 将数据放到缓存
+        byte[] rawValue = getValueSerializer().serialize(result);
         if(expirationTime<=0) {
-            redisTemplate.opsForValue().set(key.getKey(), result);
+            valueRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey, rawValue));
         } else {
-            // 允许缓存NULL值且缓存为值为null时需要重新计算缓存时间
-            if (isAllowNullValues() && result instanceof org.springframework.cache.support.NullValue) {
-                expirationTime = expirationTime / getMagnification();
-            }
-            redisTemplate.opsForValue().set(key.getKey(), result, expirationTime, TimeUnit.MILLISECONDS);
+            valueRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.pSetEx(rawKey, expirationTime, rawValue));
         }
         return result;
     }
 
+    /**
+     * 获取缓存值的有效时间，单位毫秒
+     *
+     * @param result 缓存值
+     * @return 有效时间，小于等于0表示永不过期
+     */
+    private long getExpirationTime(Object result) {
+        long expirationTime = this.expiration;
+        // 允许缓存NULL值且缓存为值为null时需要重新计算缓存时间
+        if (expirationTime > 0 && isAllowNullValues() && result instanceof org.springframework.cache.support.NullValue) {
+            expirationTime = expirationTime / getMagnification();
+        }
+        return expirationTime;
+    }
+
+    /**
+     * 通过lua脚本一次往返获取缓存值和剩余有效时间，直接使用序列化好的key，不经过RedisTemplate的key序列化
+     *
+     * @param rawKey 序列化后的redis key
+     * @param raw    是否返回没有反序列化的字节
+     * @return 第一个元素是剩余有效时间(毫秒)，第二个元素是缓存值（可能不存在）
+     */
+    private List<Object> getWithTtl(byte[] rawKey, boolean raw) {
+        List<Object> values = null;
+        if (isScriptSupported()) {
+            try {
+                values = valueRedisTemplate.execute((RedisCallback<List<Object>>) connection -> evalGetWithTtl(connection, rawKey));
+            } catch (DataAccessException e) {
+                // 运行中切换到不支持EVAL的redis或代理时重新检测，检测通过说明是其它错误，直接抛出
+                if (getErrorReply(e) == null || probeScript()) {
+                    throw e;
+                }
+            }
+        }
+        if (values == null) {
+            values = valueRedisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                Arrays.asList(connection.pTtl(rawKey, TimeUnit.MILLISECONDS), connection.get(rawKey)));
+        }
+        Object ttl = values.get(0);
+        Object result = values.size() > 1 ? values.get(1) : null;
+        if (!raw && result != null) {
+            result = getValueSerializer().deserialize((byte[]) result);
+        }
+        return Arrays.asList(ttl == null ? KEY_NOT_EXISTS : ttl, result);
+    }
+
+    /**
+     * 先用EVALSHA执行脚本，redis还没有缓存脚本（NOSCRIPT）时使用EVAL
+     */
+    private static List<Object> evalGetWithTtl(RedisConnection connection, byte[] rawKey) {
+        try {
+            return connection.evalSha(GET_WITH_TTL_SCRIPT.getSha1(), ReturnType.MULTI, 1, rawKey);
+        } catch (DataAccessException e) {
+            Throwable errorReply = getErrorReply(e);
+            if (errorReply == null || errorReply.getMessage() == null || !errorReply.getMessage().startsWith(NO_SCRIPT_ERROR)) {
+                throw e;
+            }
+            return connection.eval(GET_WITH_TTL_SCRIPT_BYTES, ReturnType.MULTI, 1, rawKey);
+        }
+    }
+
+    /**
+     * 是否使用lua脚本获取缓存，第一次调用时检测，不支持时超过检测间隔后重新检测
+     */
+    private boolean isScriptSupported() {
+        long probeTime = scriptProbeTime;
+        if (probeTime == 0L) {
+            return true;
+        }
+        if (probeTime > 0L && System.currentTimeMillis() < probeTime) {
+            return false;
+        }
+        return probeScript();
+    }
+
+    /**
+     * 在不存在的key上执行一次lua脚本，redis返回错误回复说明不支持EVAL命令（命令不存在、被ACL或代理禁用），
+     * 连接异常等其它异常直接抛出，下次调用时重新检测
+     *
+     * @return 是否支持执行lua脚本
+     */
+    private boolean probeScript() {
+        try {
+            redisTemplate.execute(GET_WITH_TTL_SCRIPT, getValueSerializer(), RAW_SERIALIZER, Collections.singletonList(SCRIPT_PROBE_KEY));
+        } catch (DataAccessException e) {
+            if (getErrorReply(e) == null) {
+                throw e;
+            }
+            scriptProbeTime = System.currentTimeMillis() + SCRIPT_PROBE_INTERVAL;
+            log.warn("redis缓存 {} Redis不支持EVAL命令，{}毫秒内使用降级方式获取缓存：{}", getName(), SCRIPT_PROBE_INTERVAL, e.getMessage());
+            return false;
+        }
+        if (scriptProbeTime > 0L) {
+            log.info("redis缓存 {} Redis恢复支持EVAL命令，使用lua脚本获取缓存", getName());
+        }
+        scriptProbeTime = 0L;
+        return true;
+    }
+
+    /**
+     * 查找redis返回的错误回复对应的客户端异常，按异常类型判断，不解析错误信息
+     *
+     * @return 错误回复对应的异常，不是错误回复引起的异常时返回NULL
+     */
+    private static Throwable getErrorReply(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            for (Class<?> type = cause.getClass(); type != null; type = type.getSuperclass()) {
+                for (String errorReplyException : ERROR_REPLY_EXCEPTIONS) {
+                    if (errorReplyException.equals(type.getName())) {
+                        return cause;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 序列化NULL值，序列化器不支持NULL值（比如没有开启类型信息的JSON序列化器）时返回NULL，延迟反序列化时不再提前识别NULL值
+     */
+    private static byte[] serializeNullValue(RedisSerializer<Object> valueSerializer) {
+        try {
+            return valueSerializer.serialize(com.github.zomin.support.NullValue.INSTANCE);
+        } catch (SerializationException e) {
+            log.warn("redis value 序列化器不支持序列化NULL值: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 把二级缓存读到的字节包装成 {@link LazyValue}，NULL值直接识别出来，不需要反序列化
+     */
+    private Object toLazyValue(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (Arrays.equals(raw, nullValueBytes)) {
+            return com.github.zomin.support.NullValue.INSTANCE;
+        }
+        return new LazyValue(raw, getValueSerializer());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> getValueSerializer() {
+        return (RedisSerializer<Object>) valueRedisTemplate.getValueSerializer();
+    }
+
     /**
      * 刷新缓存数据
+     *
+     * @param ttl 缓存剩余有效时间，单位毫秒
      */
-    private <T> void refreshCache(RedisCacheKey redisCacheKey, Callable<T> valueLoader, Object result) {
-        Long ttl = redisTemplate.getExpire(redisCacheKey.getKey());
-        Long preload = preloadTime;
+    private <T> void refreshCache(RedisCacheKey redisCacheKey, Callable<T> valueLoader, Object result, long ttl) {
+        long preload = preloadTime;
         // 允许缓存NULL值，则自动刷新时间也要除以倍数
         boolean flag = isAllowNullValues() && (result instanceof NullValue || result == null);
         if (flag) {
             preload = preload / getMagnification();
         }
-        if (null != ttl && ttl > 0 && TimeUnit.SECONDS.toMillis(ttl) <= preload) {
+        if (ttl > 0 && ttl <= preload) {
             // 判断是否需要强制刷新在开启刷新线程
             if (!getForceRefresh()) {
                 if(log.isDebugEnabled()) {
@@ -367,7 +948,7 @@ public class RedisCache extends AbstractValueAdaptingCache {
      */
     private <T> void forceRefresh(RedisCacheKey redisCacheKey, Callable<T> valueLoader) {
         // 尽量少的去开启线程，因为线程池是有限的
-        ThreadTaskUtils.run(() -> {
+        Runnable refreshTask = () -> {
             // 加一个分布式锁，只放一个请求去刷新缓存
             Lock redisLock = new Lock(redisTemplate, redisCacheKey.getKey() + "_lock");
             try {
@@ -383,8 +964,22 @@ public class RedisCache extends AbstractValueAdaptingCache {
                 log.error(e.getMessage(), e);
             } finally {
                 redisLock.unlock();
+                if (scheduler != null) {
+                    pendingRefreshCount.decrement();
+                }
             }
-        });
+        };
+        if (scheduler == null) {
+            ThreadTaskUtils.run(refreshTask);
+            return;
+        }
+        pendingRefreshCount.increment();
+        try {
+            scheduler.execute(refreshTask);
+        } catch (RejectedExecutionException e) {
+            pendingRefreshCount.decrement();
+            log.warn("后台任务队列已满，放弃本次强制刷新，key={}", redisCacheKey.getKey());
+        }
     }
 
     /**
@@ -409,4 +1004,45 @@ public class RedisCache extends AbstractValueAdaptingCache {
     public boolean isAllowNullValues() {
         return allowNullValues;
     }
+
+    public void setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setPubSubLegacyFormat(boolean pubSubLegacyFormat) {
+        this.pubSubLegacyFormat = pubSubLegacyFormat;
+    }
+
+    /**
+     * 获取已提交还没执行完的强制刷新任务数
+     *
+     * @return long
+     */
+    public long getPendingRefreshCount() {
+        return pendingRefreshCount.sum();
+    }
+
+    /**
+     * 获取累计等待其它线程或其它节点加载数据的次数
+     *
+     * @return long
+     */
+    public long getLockWaitCount() {
+        return lockWaitCount.sum();
+    }
+
+    /**
+     * 不做任何转换的序列化器
+     */
+    private static class RawRedisSerializer implements RedisSerializer<byte[]> {
+        @Override
+        public byte[] serialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    }
 }
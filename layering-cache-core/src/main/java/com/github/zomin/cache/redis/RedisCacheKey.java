@@ -2,9 +2,10 @@ package com.github.zomin.cache.redis;
 
 import com.github.zomin.redis.serializer.RedisKeySerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.Assert;
-import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -17,7 +18,9 @@ public class RedisCacheKey {
     /**
      * 前缀序列化器
      */
-    private final RedisSerializer prefixSerializer1 = new RedisKeySerializer();
+    private static final RedisSerializer PREFIX_SERIALIZER = new RedisKeySerializer();
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
 
     /**
      * 缓存key
@@ -39,6 +42,26 @@ public class RedisCacheKey {
      */
     private final RedisSerializer serializer;
 
+    /**
+     * 缓存前缀，由{@link RedisCache}预先计算好传入，为null时按缓存名称计算
+     */
+    private String prefix;
+
+    /**
+     * 缓存前缀的byte数组
+     */
+    private byte[] prefixBytes;
+
+    /**
+     * 已经生成的缓存key
+     */
+    private String key;
+
+    /**
+     * 已经生成的发送给redis连接的key
+     */
+    private byte[] rawKey;
+
     /**
      * @param keyElement 缓存key
      * @param serializer RedisSerializer
@@ -51,14 +74,34 @@ public class RedisCacheKey {
         this.serializer = serializer;
     }
 
+    /**
+     * @param keyElement  缓存key
+     * @param serializer  RedisSerializer
+     * @param prefix      预先计算好的缓存前缀
+     * @param prefixBytes 预先计算好的缓存前缀byte数组
+     */
+    RedisCacheKey(Object keyElement, RedisSerializer serializer, String prefix, byte[] prefixBytes) {
+        this(keyElement, serializer);
+        this.prefix = prefix;
+        this.prefixBytes = prefixBytes;
+    }
+
     /**
      * 获取缓存key
      *
      * @return String
      */
     public String getKey() {
-
-        return new String(getKeyBytes());
+        if (key == null) {
+            String element = fastKeyElement();
+            if (element == null) {
+                key = new String(getKeyBytes());
+            } else {
+                // String和数字类型的key直接拼接，不需要序列化后再转回字符串
+                key = usePrefix ? getPrefixString().concat(element) : element;
+            }
+        }
+        return key;
     }
 
     /**
@@ -79,6 +122,64 @@ public class RedisCacheKey {
         return prefixedKey;
     }
 
+    /**
+     * 获取直接发送给redis连接的key，等同于使用key序列化器序列化{@link #getKey()}的结果
+     *
+     * @return byte[]
+     */
+    public byte[] getRawKey() {
+        if (rawKey == null) {
+            rawKey = asciiRawKey();
+            if (rawKey == null) {
+                rawKey = serializer.serialize(getKey());
+            }
+        }
+        return rawKey;
+    }
+
+    /**
+     * key序列化器按UTF-8编码、key只包含ASCII字符时，前缀和key直接写到一个按最终长度分配的byte数组里，
+     * 不生成拼接后的String和中间的byte数组，其它情况返回null
+     */
+    private byte[] asciiRawKey() {
+        if (!isUtf8Serializer()) {
+            return null;
+        }
+        String element = fastKeyElement();
+        if (element == null) {
+            return null;
+        }
+        byte[] prefix = usePrefix ? getPrefix() : EMPTY_BYTES;
+        int length = element.length();
+        byte[] bytes = Arrays.copyOf(prefix, prefix.length + length);
+        for (int i = 0; i < length; i++) {
+            char c = element.charAt(i);
+            if (c >= 0x80) {
+                return null;
+            }
+            bytes[prefix.length + i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    private boolean isUtf8Serializer() {
+        return serializer == StringRedisSerializer.UTF_8 || (serializer instanceof RedisKeySerializer
+            && StandardCharsets.UTF_8.equals(((RedisKeySerializer) serializer).getCharset()));
+    }
+
+    /**
+     * String和数字类型的key在{@link RedisKeySerializer}下就是其字符串形式，直接返回，其它情况返回null
+     */
+    private String fastKeyElement() {
+        if (keyElement instanceof String && (serializer instanceof RedisKeySerializer || serializer instanceof StringRedisSerializer)) {
+            return (String) keyElement;
+        }
+        if (keyElement instanceof Number && serializer instanceof RedisKeySerializer) {
+            return keyElement.toString();
+        }
+        return null;
+    }
+
     private byte[] serializeKeyElement() {
 
         if (serializer == null && keyElement instanceof byte[]) {
@@ -94,7 +195,37 @@ public class RedisCacheKey {
      * @return byte[]
      */
     public byte[] getPrefix() {
-        return prefixSerializer1.serialize((StringUtils.isEmpty(cacheName) ? cacheName.concat(":") : cacheName.concat(":")));
+        if (prefixBytes == null) {
+            prefixBytes = PREFIX_SERIALIZER.serialize(getPrefixString());
+        }
+        return prefixBytes;
+    }
+
+    private String getPrefixString() {
+        if (prefix == null) {
+            prefix = prefix(cacheName);
+        }
+        return prefix;
+    }
+
+    /**
+     * 根据缓存名称生成缓存前缀
+     *
+     * @param cacheName 缓存名称
+     * @return String
+     */
+    static String prefix(String cacheName) {
+        return cacheName.concat(":");
+    }
+
+    /**
+     * 根据缓存名称生成缓存前缀的byte数组
+     *
+     * @param cacheName 缓存名称
+     * @return byte[]
+     */
+    static byte[] prefixBytes(String cacheName) {
+        return PREFIX_SERIALIZER.serialize(prefix(cacheName));
     }
 
     /**
@@ -105,6 +236,10 @@ public class RedisCacheKey {
      */
     public RedisCacheKey cacheName(String cacheName) {
         this.cacheName = cacheName;
+        this.prefix = null;
+        this.prefixBytes = null;
+        this.key = null;
+        this.rawKey = null;
         return this;
     }
 
@@ -116,7 +251,17 @@ public class RedisCacheKey {
      */
     public RedisCacheKey usePrefix(boolean usePrefix) {
         this.usePrefix = usePrefix;
+        this.key = null;
+        this.rawKey = null;
         return this;
     }
 
+    /**
+     * 返回缓存key，日志参数直接传入对象，没有开启对应日志级别时不生成key
+     */
+    @Override
+    public String toString() {
+        return getKey();
+    }
+
 }
@@ -0,0 +1,241 @@
+package com.github.zomin.listener;
+
+import com.github.zomin.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并发布一级缓存删除消息
+ * <p>
+ * 按缓存名称缓冲删除消息，在一个时间窗口内或达到最大数量时去重后合并成一条{@link RedisPubSubMessage}异步发布，
+ * 避免写入高峰时每个key都同步发布一次消息，超过最大数量的key拆成多条消息发布。窗口时间小于等于0时退化为同步逐条发布。
+ * </p>
+ * <p>
+ * 调用方在发布前已经删除了本机所有同名缓存的一级缓存，消息带上本节点ID，本节点收到自己发布的消息时不再删除，
+ * 避免延迟到达的消息删掉本机在这之后重新加载的数据。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class RedisEvictPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(RedisEvictPublisher.class);
+
+    /**
+     * redis 客户端
+     */
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 合并发布的时间窗口，单位毫秒
+     */
+    private final long window;
+
+    /**
+     * 单条消息最多合并的key数量
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 待发布的key，key是缓存名称
+     */
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>(16);
+
+    /**
+     * 发布消息的线程池，由CacheManager管理，和加载数据等后台任务分开，避免删除消息因为后台任务积压而延迟发布
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * 本节点ID
+     */
+    private final String nodeId;
+
+    /**
+     * 是否按升级前的格式发布
+     */
+    private volatile boolean legacyFormat = false;
+
+    /**
+     * @param redisTemplate redis 客户端
+     * @param executor      发布消息的线程池
+     * @param window        合并发布的时间窗口，单位毫秒
+     * @param maxBatchSize  单条消息最多合并的key数量
+     * @param nodeId        本节点ID
+     */
+    public RedisEvictPublisher(RedisTemplate<String, Object> redisTemplate, ScheduledExecutorService executor,
+                               long window, int maxBatchSize, String nodeId) {
+        this.redisTemplate = redisTemplate;
+        this.executor = executor;
+        this.window = window;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * 发布删除一级缓存的消息
+     *
+     * @param cacheName 缓存名称
+     * @param key       缓存key
+     */
+    public void publish(String cacheName, Object key) {
+        publish(cacheName, key, null);
+    }
+
+    /**
+     * 发布删除一级缓存的消息，并把从入队到发布完成的耗时记到统计信息里
+     *
+     * @param cacheName  缓存名称
+     * @param key        缓存key
+     * @param cacheStats 记录发布耗时的统计信息，为NULL时不记录
+     */
+    public void publish(String cacheName, Object key, CacheStats cacheStats) {
+        if (window <= 0) {
+            long start = System.nanoTime();
+            List<Object> keys = new ArrayList<>(1);
+            keys.add(key);
+            send(cacheName, keys);
+            if (cacheStats != null) {
+                cacheStats.recordPublishLatency(System.nanoTime() - start);
+            }
+            return;
+        }
+
+        Batch batch = batches.computeIfAbsent(cacheName, name -> new Batch());
+        boolean full;
+        boolean schedule = false;
+        synchronized (batch) {
+            if (batch.keys.isEmpty()) {
+                batch.startTime = System.nanoTime();
+            }
+            if (cacheStats != null) {
+                batch.cacheStats.add(cacheStats);
+            }
+            batch.keys.add(key);
+            full = batch.keys.size() >= maxBatchSize;
+            if (!full && !batch.scheduled) {
+                batch.scheduled = true;
+                schedule = true;
+            }
+        }
+        if (!full && !schedule) {
+            return;
+        }
+        try {
+            if (full) {
+                executor.execute(() -> flush(cacheName));
+            } else {
+                executor.schedule(() -> flush(cacheName), window, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            // 线程池已满或已关闭，由调用线程直接发布
+            flush(cacheName);
+        }
+    }
+
+    /**
+     * 立即发布指定缓存名称下所有待发布的key
+     *
+     * @param cacheName 缓存名称
+     */
+    public void flush(String cacheName) {
+        Batch batch = batches.get(cacheName);
+        if (batch == null) {
+            return;
+        }
+        List<Object> keys;
+        List<CacheStats> cacheStats;
+        long startTime;
+        synchronized (batch) {
+            batch.scheduled = false;
+            if (batch.keys.isEmpty()) {
+                return;
+            }
+            keys = new ArrayList<>(batch.keys);
+            batch.keys.clear();
+            cacheStats = new ArrayList<>(batch.cacheStats);
+            batch.cacheStats.clear();
+            startTime = batch.startTime;
+        }
+        try {
+            // 窗口内入队的key可能超过单条消息的最大数量，拆成多条发布
+            for (int from = 0; from < keys.size(); from += maxBatchSize) {
+                send(cacheName, keys.subList(from, Math.min(keys.size(), from + maxBatchSize)));
+            }
+            long time = System.nanoTime() - startTime;
+            for (CacheStats stats : cacheStats) {
+                stats.recordPublishLatency(time);
+            }
+        } catch (Exception e) {
+            logger.error("合并发布删除一级缓存消息失败，缓存名称:{}，key数量:{}", cacheName, keys.size(), e);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setLegacyFormat(boolean legacyFormat) {
+        this.legacyFormat = legacyFormat;
+    }
+
+    /**
+     * 发布所有待发布的消息，线程池由CacheManager关闭
+     */
+    public void shutdown() {
+        for (String cacheName : batches.keySet()) {
+            flush(cacheName);
+        }
+    }
+
+    private void send(String cacheName, List<Object> keys) {
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName(cacheName);
+        message.setMessageType(RedisPubSubMessageType.EVICT);
+        message.setNodeId(nodeId);
+        if (keys.size() == 1) {
+            message.setKey(keys.get(0));
+        } else {
+            message.setKeys(new ArrayList<>(keys));
+        }
+        RedisPublisher.publisher(redisTemplate, new ChannelTopic(cacheName), message, legacyFormat);
+    }
+
+    /**
+     * 一个缓存名称下待发布的key
+     */
+    private static class Batch {
+        /**
+         * 去重后的key
+         */
+        private final Set<Object> keys = new LinkedHashSet<>();
+
+        /**
+         * 需要记录发布耗时的统计信息，同一个缓存名称下可能有多个缓存
+         */
+        private final Set<CacheStats> cacheStats = Collections.newSetFromMap(new IdentityHashMap<>(4));
+
+        /**
+         * 第一个key入队的时间，纳秒
+         */
+        private long startTime;
+
+        /**
+         * 是否已经安排了发布任务
+         */
+        private boolean scheduled;
+    }
+}
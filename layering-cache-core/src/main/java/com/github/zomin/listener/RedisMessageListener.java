@@ -3,11 +3,14 @@ package com.github.zomin.listener;
 import com.alibaba.fastjson.JSON;
 import com.github.zomin.cache.Cache;
 import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.redis.RedisCache;
 import com.github.zomin.manager.AbstractCacheManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
 
@@ -25,12 +28,27 @@ public class RedisMessageListener extends MessageListenerAdapter {
     private AbstractCacheManager cacheManager;
 
     @Override
+    @SuppressWarnings("unchecked")
     public void onMessage(Message message, byte[] pattern) {
-        super.onMessage(message, pattern);
         // 解析订阅发布的信息，获取缓存的名称和缓存的key
-        RedisPubSubMessage redisPubSubMessage = (RedisPubSubMessage) cacheManager.getRedisTemplate()
-                .getValueSerializer().deserialize(message.getBody());
-        log.debug("redis消息订阅者接收到频道【{}】发布的消息。消息内容：{}", new String(message.getChannel()), JSON.toJSONString(redisPubSubMessage));
+        RedisPubSubMessage redisPubSubMessage = RedisPubSubMessageCodec.decode(message.getBody(),
+                (RedisSerializer<Object>) cacheManager.getRedisTemplate().getValueSerializer());
+        if (log.isDebugEnabled()) {
+            log.debug("redis消息订阅者接收到频道【{}】发布的消息。消息内容：{}", new String(message.getChannel()), JSON.toJSONString(redisPubSubMessage));
+        }
+
+        // 预热消息按缓存名称处理，不区分同名的多个缓存
+        if (RedisPubSubMessageType.WARM_UP_REQUEST.equals(redisPubSubMessage.getMessageType())
+            || RedisPubSubMessageType.WARM_UP_RESPONSE.equals(redisPubSubMessage.getMessageType())) {
+            cacheManager.getFirstCacheWarmer().onMessage(redisPubSubMessage);
+            return;
+        }
+
+        // 本节点合并发布删除消息前已经删除了本机一级缓存，收到自己发布的删除消息时跳过
+        if (RedisPubSubMessageType.EVICT.equals(redisPubSubMessage.getMessageType())
+            && cacheManager.getNodeId().equals(redisPubSubMessage.getNodeId())) {
+            return;
+        }
 
         // 根据缓存名称获取多级缓存，可能有多个
         Collection<Cache> caches = cacheManager.getCache(redisPubSubMessage.getCacheName());
@@ -40,21 +58,39 @@ public class RedisMessageListener extends MessageListenerAdapter {
                 switch (redisPubSubMessage.getMessageType()) {
                     case EVICT:
                         // 获取一级缓存，并删除一级缓存数据
+                        if (!CollectionUtils.isEmpty(redisPubSubMessage.getKeys())) {
+                            ((LayeringCache) cache).getFirstCache().evictAll(redisPubSubMessage.getKeys());
+                            ((LayeringCache) cache).evictAllHotKeys(redisPubSubMessage.getKeys());
+                            log.info("批量删除一级缓存{}数据,key数量={}", redisPubSubMessage.getCacheName(), redisPubSubMessage.getKeys().size());
+                            break;
+                        }
                         ((LayeringCache) cache).getFirstCache().evict(redisPubSubMessage.getKey());
+                        ((LayeringCache) cache).evictHotKey(redisPubSubMessage.getKey());
                         log.info("删除一级缓存{}数据,key={}", redisPubSubMessage.getCacheName(), redisPubSubMessage.getKey());
                         break;
 
                     case CLEAR:
                         // 获取一级缓存，并删除一级缓存数据
                         ((LayeringCache) cache).getFirstCache().clear();
+                        ((LayeringCache) cache).clearHotKeys();
                         log.info("清除一级缓存{}数据", redisPubSubMessage.getCacheName());
                         break;
                     case UPDATE:
                         //如果要同步刷新所有机器本地缓存，将会造成短时间内Redis大量请求，不建议如此操作，更新本地缓存操作可以依赖于请求读取和主动获取。更新操作只删除本地缓存
-                        Object cacheValue = ((LayeringCache) cache).getSecondCache().get(redisPubSubMessage.getKey());
+                        // 开启延迟反序列化时放入原始字节，下一次读取时才反序列化
+                        Object cacheValue = ((LayeringCache) cache).isLazyDeserialize()
+                            ? ((RedisCache) ((LayeringCache) cache).getSecondCache()).getLazy(redisPubSubMessage.getKey())
+                            : ((LayeringCache) cache).getSecondCache().get(redisPubSubMessage.getKey());
                         ((LayeringCache) cache).getFirstCache().put(redisPubSubMessage.getKey(),cacheValue);
+                        ((LayeringCache) cache).evictHotKey(redisPubSubMessage.getKey());
                         log.info("更新一级缓存{}数据", redisPubSubMessage.getCacheName());
                         break;
+                    case LOADED:
+                        // 唤醒本机等待该key加载完成的线程
+                        if (((LayeringCache) cache).getSecondCache() instanceof RedisCache) {
+                            ((RedisCache) ((LayeringCache) cache).getSecondCache()).signalLoaded((String) redisPubSubMessage.getKey());
+                        }
+                        break;
                     default:
                         log.error("接收到没有定义的订阅消息频道数据");
                         break;
@@ -1,6 +1,9 @@
 package com.github.zomin.listener;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.io.Serializable;
+import java.util.Collection;
 
 /**
  * redis pub/sub 消息
@@ -18,11 +21,23 @@ public class RedisPubSubMessage implements Serializable {
      */
     private Object key;
 
+    /**
+     * 批量缓存key，合并发布删除消息时使用，不为空时忽略{@link #key}
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Collection<Object> keys;
+
     /**
      * 消息类型
      */
     private RedisPubSubMessageType messageType;
 
+    /**
+     * 节点ID，删除消息和预热请求里是发布消息的节点，预热回复里是请求预热的节点
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nodeId;
+
     public String getCacheName() {
         return cacheName;
     }
@@ -39,6 +54,14 @@ public class RedisPubSubMessage implements Serializable {
         this.key = key;
     }
 
+    public Collection<Object> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(Collection<Object> keys) {
+        this.keys = keys;
+    }
+
     public RedisPubSubMessageType getMessageType() {
         return messageType;
     }
@@ -46,4 +69,12 @@ public class RedisPubSubMessage implements Serializable {
     public void setMessageType(RedisPubSubMessageType messageType) {
         this.messageType = messageType;
     }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
 }
@@ -0,0 +1,212 @@
+package com.github.zomin.listener;
+
+import com.github.zomin.support.SerializationException;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link RedisPubSubMessage} 的紧凑二进制编解码
+ * <p>
+ * 格式：[版本号 1byte][消息类型 1byte][varint 缓存名称长度][缓存名称 UTF-8][varint key数量][key...]，
+ * 每个key由 [类型 1byte][内容] 组成，String/Integer/Long 直接编码，其它类型使用value序列化器序列化后按
+ * [varint 长度][内容] 写入，保证接收方得到的key和一级缓存中的key类型一致。
+ * 消息带有节点ID时在最后追加 [varint 节点ID长度][节点ID UTF-8]，旧版本解码时会忽略多出来的内容。
+ * </p>
+ * <p>
+ * 版本号的最高位为1，不会和JSON或JDK序列化的首字节冲突，解码时如果版本号不匹配则交给value序列化器，
+ * 兼容滚动升级过程中旧节点发布的消息。旧节点不能解析这个格式，滚动升级期间需要通过
+ * {@link com.github.zomin.manager.AbstractCacheManager#setPubSubLegacyFormat(boolean)} 继续按旧格式发布，所有节点升级完成后再关闭。
+ * 消息类型按 {@link RedisPubSubMessageType} 的序号编码，新的类型只能追加在末尾。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public final class RedisPubSubMessageCodec {
+
+    /**
+     * 当前编码版本
+     */
+    static final byte VERSION_1 = (byte) 0x81;
+
+    private static final byte KEY_STRING = 0;
+    private static final byte KEY_INTEGER = 1;
+    private static final byte KEY_LONG = 2;
+    private static final byte KEY_SERIALIZED = 3;
+
+    private static final RedisPubSubMessageType[] MESSAGE_TYPES = RedisPubSubMessageType.values();
+
+    private RedisPubSubMessageCodec() {
+    }
+
+    /**
+     * 编码消息
+     *
+     * @param message         消息
+     * @param valueSerializer 非基本类型key使用的序列化器
+     * @return byte[]
+     */
+    public static byte[] encode(RedisPubSubMessage message, RedisSerializer<Object> valueSerializer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(VERSION_1);
+        out.write(message.getMessageType().ordinal());
+        writeBytes(out, message.getCacheName().getBytes(StandardCharsets.UTF_8));
+
+        Collection<Object> keys = message.getKeys();
+        if (keys == null || keys.isEmpty()) {
+            keys = message.getKey() == null ? Collections.emptyList() : Collections.singletonList(message.getKey());
+        }
+        writeVarint(out, keys.size());
+        for (Object key : keys) {
+            writeKey(out, key, valueSerializer);
+        }
+        if (message.getNodeId() != null) {
+            writeBytes(out, message.getNodeId().getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码消息，非当前编码格式的消息交给value序列化器反序列化
+     *
+     * @param bytes           消息内容
+     * @param valueSerializer value序列化器
+     * @return {@link RedisPubSubMessage}
+     */
+    public static RedisPubSubMessage decode(byte[] bytes, RedisSerializer<Object> valueSerializer) {
+        if (bytes == null || bytes.length == 0 || bytes[0] != VERSION_1) {
+            return (RedisPubSubMessage) valueSerializer.deserialize(bytes);
+        }
+
+        try {
+            Reader reader = new Reader(bytes, 1);
+            RedisPubSubMessage message = new RedisPubSubMessage();
+            message.setMessageType(MESSAGE_TYPES[reader.readByte()]);
+            message.setCacheName(new String(reader.readBytes(), StandardCharsets.UTF_8));
+
+            int size = reader.readVarint();
+            if (size == 1) {
+                message.setKey(readKey(reader, valueSerializer));
+            } else if (size > 1) {
+                List<Object> keys = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    keys.add(readKey(reader, valueSerializer));
+                }
+                message.setKeys(keys);
+            }
+            if (reader.hasRemaining()) {
+                message.setNodeId(new String(reader.readBytes(), StandardCharsets.UTF_8));
+            }
+            return message;
+        } catch (RuntimeException e) {
+            throw new SerializationException("解析redis pub/sub消息失败", e);
+        }
+    }
+
+    private static void writeKey(ByteArrayOutputStream out, Object key, RedisSerializer<Object> valueSerializer) {
+        if (key instanceof String) {
+            out.write(KEY_STRING);
+            writeBytes(out, ((String) key).getBytes(StandardCharsets.UTF_8));
+        } else if (key instanceof Integer) {
+            out.write(KEY_INTEGER);
+            writeVarlong(out, zigZag((Integer) key));
+        } else if (key instanceof Long) {
+            out.write(KEY_LONG);
+            writeVarlong(out, zigZag((Long) key));
+        } else {
+            out.write(KEY_SERIALIZED);
+            writeBytes(out, valueSerializer.serialize(key));
+        }
+    }
+
+    private static Object readKey(Reader reader, RedisSerializer<Object> valueSerializer) {
+        byte type = reader.readByte();
+        switch (type) {
+            case KEY_STRING:
+                return new String(reader.readBytes(), StandardCharsets.UTF_8);
+            case KEY_INTEGER:
+                return (int) unZigZag(reader.readVarlong());
+            case KEY_LONG:
+                return unZigZag(reader.readVarlong());
+            case KEY_SERIALIZED:
+                return valueSerializer.deserialize(reader.readBytes());
+            default:
+                throw new IllegalArgumentException("未知的key类型：" + type);
+        }
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarlong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 顺序读取消息内容
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private boolean hasRemaining() {
+            return position < bytes.length;
+        }
+
+        private byte readByte() {
+            return bytes[position++];
+        }
+
+        private int readVarint() {
+            return (int) readVarlong();
+        }
+
+        private long readVarlong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("varint格式错误");
+        }
+
+        private byte[] readBytes() {
+            int length = readVarint();
+            byte[] result = new byte[length];
+            System.arraycopy(bytes, position, result, 0, length);
+            position += length;
+            return result;
+        }
+    }
+}
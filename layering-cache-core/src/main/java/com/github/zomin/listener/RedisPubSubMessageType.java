@@ -2,6 +2,10 @@ package com.github.zomin.listener;
 
 /**
  * 消息类型
+ * <p>
+ * {@link RedisPubSubMessageCodec} 按序号编码消息类型，新的类型只能追加在末尾，不能删除或调整已有类型的顺序，
+ * 否则新旧节点之间的消息类型会错位。
+ * </p>
  *
  * @author kalend.zhang
  */
@@ -19,7 +23,22 @@ public enum RedisPubSubMessageType {
     /**
      * 更新缓存
      */
-    UPDATE("更新缓存");
+    UPDATE("更新缓存"),
+
+    /**
+     * 二级缓存加载完成，唤醒各节点等待该key的线程
+     */
+    LOADED("缓存加载完成"),
+
+    /**
+     * 新启动的节点请求其它节点发送一级缓存里最热的key
+     */
+    WARM_UP_REQUEST("请求预热"),
+
+    /**
+     * 回复预热请求，消息里是最热的key
+     */
+    WARM_UP_RESPONSE("回复预热");
 
     private String label;
 
@@ -2,8 +2,17 @@ package com.github.zomin.listener;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.CollectionUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * redis消息的发布者
@@ -13,6 +22,12 @@ import org.springframework.data.redis.listener.ChannelTopic;
 public class RedisPublisher {
     private static final Logger logger = LoggerFactory.getLogger(RedisPublisher.class);
 
+    /**
+     * 升级前的节点能处理的消息类型
+     */
+    private static final Set<RedisPubSubMessageType> LEGACY_MESSAGE_TYPES = EnumSet.of(RedisPubSubMessageType.EVICT,
+            RedisPubSubMessageType.CLEAR, RedisPubSubMessageType.UPDATE);
+
     private RedisPublisher() {
     }
 
@@ -24,10 +39,56 @@ public class RedisPublisher {
      * @param message       消息内容
      */
     public static void publisher(RedisTemplate<String, Object> redisTemplate, ChannelTopic channelTopic, Object message) {
-        redisTemplate.convertAndSend(channelTopic.toString(), message);
+        publisher(redisTemplate, channelTopic, message, false);
+    }
+
+    /**
+     * 发布消息到频道（Channel）
+     *
+     * @param redisTemplate redis客户端
+     * @param channelTopic  发布预订阅的频道
+     * @param message       消息内容
+     * @param legacyFormat  是否按升级前的格式发布缓存消息，取自发布方所属CacheManager的配置
+     */
+    @SuppressWarnings("unchecked")
+    public static void publisher(RedisTemplate<String, Object> redisTemplate, ChannelTopic channelTopic, Object message,
+                                 boolean legacyFormat) {
+        if (message instanceof RedisPubSubMessage && legacyFormat) {
+            publishLegacy(redisTemplate, channelTopic, (RedisPubSubMessage) message);
+        } else if (message instanceof RedisPubSubMessage) {
+            // 缓存消息使用紧凑的二进制格式，不走通用的value序列化器
+            byte[] channel = channelTopic.getTopic().getBytes(StandardCharsets.UTF_8);
+            byte[] body = RedisPubSubMessageCodec.encode((RedisPubSubMessage) message,
+                    (RedisSerializer<Object>) redisTemplate.getValueSerializer());
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, body));
+        } else {
+            redisTemplate.convertAndSend(channelTopic.toString(), message);
+        }
         if(logger.isDebugEnabled()){
             logger.debug("redis消息发布者向频道【{}】发布了【{}】消息", channelTopic.toString(), message.toString());
         }
 
     }
+
+    /**
+     * 按升级前的格式发布缓存消息：使用value序列化器序列化，每条消息只带一个key，不带节点ID，
+     * 升级前的节点不认识的消息类型不发布，这期间等待加载的线程依靠轮询兜底
+     */
+    private static void publishLegacy(RedisTemplate<String, Object> redisTemplate, ChannelTopic channelTopic, RedisPubSubMessage message) {
+        if (!LEGACY_MESSAGE_TYPES.contains(message.getMessageType())) {
+            if(logger.isDebugEnabled()){
+                logger.debug("按旧格式发布消息，旧节点不支持{}消息，不发布", message.getMessageType());
+            }
+            return;
+        }
+        Collection<Object> keys = !CollectionUtils.isEmpty(message.getKeys()) ? message.getKeys()
+                : Collections.singletonList(message.getKey());
+        for (Object key : keys) {
+            RedisPubSubMessage legacyMessage = new RedisPubSubMessage();
+            legacyMessage.setCacheName(message.getCacheName());
+            legacyMessage.setKey(key);
+            legacyMessage.setMessageType(message.getMessageType());
+            redisTemplate.convertAndSend(channelTopic.toString(), legacyMessage);
+        }
+    }
 }
@@ -1,12 +1,20 @@
 package com.github.zomin.manager;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.github.zomin.cache.Cache;
+import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.caffeine.EstimatedSizeWeigher;
+import com.github.zomin.listener.RedisEvictPublisher;
 import com.github.zomin.listener.RedisMessageListener;
 import com.github.zomin.setting.LayeringCacheSetting;
 import com.github.zomin.stats.CacheStatsInfo;
+import com.github.zomin.stats.HotKeyTracker;
 import com.github.zomin.stats.StatsService;
+import com.github.zomin.support.LayeringCacheScheduler;
 import com.github.zomin.sync.SyncSevice;
 import com.github.zomin.util.BeanFactory;
+import com.github.zomin.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
@@ -18,13 +26,22 @@ import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.util.CollectionUtils;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * 公共的抽象 {@link CacheManager} 的实现.
@@ -44,6 +61,11 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
      */
     private final RedisMessageListener messageListener = new RedisMessageListener();
 
+    /**
+     * 本节点ID，用来识别本节点自己发布的消息
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
     /**
      * 缓存容器
      * 外层key是cache_name
@@ -96,6 +118,151 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
      */
     private List<String> syncCacheNames;
 
+    /**
+     * 合并发布删除一级缓存消息的时间窗口，单位毫秒，小于等于0表示逐条同步发布
+     */
+    private long evictBatchWindow = 5;
+
+    /**
+     * 合并发布删除一级缓存消息时单条消息最多包含的key数量
+     */
+    private int evictBatchMaxSize = 500;
+
+    /**
+     * 合并发布删除一级缓存消息
+     */
+    private volatile RedisEvictPublisher evictPublisher;
+
+    /**
+     * 是否按升级前的格式发布pub/sub消息，滚动升级期间还有旧节点时开启
+     */
+    private volatile boolean pubSubLegacyFormat = false;
+
+    /**
+     * 是否开启热点key探测
+     */
+    private boolean hotKey = false;
+
+    /**
+     * 每个缓存保留的热点key数量
+     */
+    private int hotKeyTopK = 10;
+
+    /**
+     * 热点key探测的采样率，每多少次请求采样一次
+     */
+    private int hotKeySampleRate = 10;
+
+    /**
+     * 估算的请求次数达到该值的热点key提升到热点key缓存，小于等于0表示不提升
+     */
+    private long hotKeyPromoteThreshold = 1000;
+
+    /**
+     * 每个缓存的热点key缓存最多保存的key数量
+     */
+    private int hotKeyCacheMaximumSize = 1000;
+
+    /**
+     * 热点key缓存的有效时间，单位秒
+     */
+    private long hotKeyCacheExpireTime = 60;
+
+    /**
+     * 按权重淘汰的一级缓存使用的权重计算，默认按估算的内存占用（字节）
+     */
+    private Weigher<Object, Object> firstCacheWeigher = new EstimatedSizeWeigher();
+
+    /**
+     * 所有按权重淘汰的一级缓存共用的最大权重（内存预算），小于等于0表示不限制，只使用各个缓存自己的maximumWeight
+     */
+    private long firstCacheMaximumWeight = 0;
+
+    /**
+     * 按命中情况重新分配一级缓存内存预算的间隔时间，单位秒，需要开启统计
+     */
+    private long firstCacheResizeDelay = 60;
+
+    /**
+     * 一级缓存的全局内存预算，配置了firstCacheMaximumWeight时才创建
+     */
+    private volatile FirstCacheBudget firstCacheBudget;
+
+    /**
+     * 一级缓存快照文件路径，为空表示不保存快照
+     */
+    private String firstCacheSnapshotFile;
+
+    /**
+     * 保存一级缓存快照的间隔时间，单位秒
+     */
+    private long firstCacheSnapshotDelay = 300;
+
+    /**
+     * 每个一级缓存保存到快照的最大条目数，按访问频率取最热的
+     */
+    private int firstCacheSnapshotSize = 1000;
+
+    /**
+     * 一级缓存快照，配置了firstCacheSnapshotFile时才创建
+     */
+    private volatile FirstCacheSnapshot firstCacheSnapshot;
+
+    /**
+     * 是否已经开始恢复一级缓存快照，只在第一次启动时恢复
+     */
+    private final AtomicBoolean firstCacheSnapshotRestored = new AtomicBoolean();
+
+    /**
+     * 新建缓存后是否从其它节点预热一级缓存
+     */
+    private boolean firstCacheWarmUp = false;
+
+    /**
+     * 每个缓存最多从其它节点预热的key数量
+     */
+    private int firstCacheWarmUpSize = 1000;
+
+    /**
+     * 从其它节点预热一级缓存，开启firstCacheWarmUp时才创建
+     */
+    private volatile FirstCacheWarmer firstCacheWarmer;
+
+    /**
+     * 是否已经开始预热，只在第一次启动时注册
+     */
+    private final AtomicBoolean firstCacheWarmUpStarted = new AtomicBoolean();
+
+    /**
+     * 后台任务线程数
+     */
+    private int schedulerPoolSize = 8;
+
+    /**
+     * 后台一次性任务等待队列的最大长度
+     */
+    private int schedulerQueueCapacity = 1000;
+
+    /**
+     * 统计、同步、强制刷新等后台任务共用的线程池
+     */
+    private volatile LayeringCacheScheduler scheduler;
+
+    /**
+     * 合并发布删除一级缓存消息专用的单线程线程池，删除消息不和加载数据、快照等耗时任务排队
+     */
+    private volatile LayeringCacheScheduler evictPublishScheduler;
+
+    /**
+     * 已启动的定时任务，停止时取消
+     */
+    private final List<ScheduledFuture<?>> scheduledJobs = new ArrayList<>();
+
+    /**
+     * 新建Cache后的回调，如注册监控指标
+     */
+    private final List<Consumer<Cache>> cacheCreateListeners = new CopyOnWriteArrayList<>();
+
     /**
      * redis 客户端
      */
@@ -160,6 +327,10 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
                 if (cacheMap.size() > 1) {
                     logger.warn("缓存名称为 {} 的缓存,存在两个不同的过期时间配置，请一定注意保证缓存的key唯一性，否则会出现缓存过期时间错乱的情况", name);
                 }
+                resizeFirstCaches(cache);
+                for (Consumer<Cache> listener : cacheCreateListeners) {
+                    listener.accept(cache);
+                }
             }
 
             return cache;
@@ -209,6 +380,15 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
         return cacheContainer;
     }
 
+    /**
+     * 添加新建Cache后的回调，只对之后新建的Cache生效
+     *
+     * @param listener 回调
+     */
+    public void addCacheCreateListener(Consumer<Cache> listener) {
+        cacheCreateListeners.add(listener);
+    }
+
     /**
      * 添加消息监听
      *
@@ -228,20 +408,83 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
 
         if (getStats()) {
             BeanFactory.getBean(StatsService.class).setCacheManager(this);
-            // 采集缓存命中率数据
-            BeanFactory.getBean(StatsService.class).syncCacheStats(initialDelay,delay);
         }
         if (isSync()) {
             BeanFactory.getBean(SyncSevice.class).setCacheManager(this);
-            BeanFactory.getBean(SyncSevice.class).syncCache(syncCacheNames,syncInitialDelay, syncDelay);
         }
     }
 
+    /**
+     * 启动统计和同步定时任务
+     */
+    private synchronized void startScheduledJobs() {
+        if (!scheduledJobs.isEmpty()) {
+            return;
+        }
+        if (getStats()) {
+            // 采集缓存命中率数据
+            scheduledJobs.add(BeanFactory.getBean(StatsService.class).syncCacheStats(getScheduler(), initialDelay, delay));
+        }
+        if (isSync()) {
+            scheduledJobs.add(BeanFactory.getBean(SyncSevice.class).syncCache(getScheduler(), syncCacheNames, syncInitialDelay, syncDelay));
+        }
+        if (firstCacheMaximumWeight > 0 && firstCacheResizeDelay > 0 && !getStats()) {
+            logger.warn("没有开启统计，一级缓存内存预算只在新建缓存时平均分配，不按命中情况重新分配");
+        } else if (firstCacheMaximumWeight > 0 && firstCacheResizeDelay > 0) {
+            // 按命中情况重新分配一级缓存内存预算
+            scheduledJobs.add(getScheduler().scheduleWithFixedDelay(() -> {
+                try {
+                    rebalanceFirstCaches();
+                } catch (Exception e) {
+                    logger.error("重新分配一级缓存内存预算异常：{}", e.getMessage(), e);
+                }
+            }, firstCacheResizeDelay, firstCacheResizeDelay, TimeUnit.SECONDS));
+        }
+        if (getFirstCacheSnapshot() != null && firstCacheSnapshotDelay > 0) {
+            // 定期保存一级缓存快照
+            scheduledJobs.add(getScheduler().scheduleWithFixedDelay(this::saveFirstCacheSnapshot,
+                                                                    firstCacheSnapshotDelay, firstCacheSnapshotDelay, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * 取消统计和同步定时任务
+     */
+    private synchronized void stopScheduledJobs() {
+        for (ScheduledFuture<?> job : scheduledJobs) {
+            job.cancel(false);
+        }
+        scheduledJobs.clear();
+    }
+
     @Override
     public List<CacheStatsInfo> listCacheStats(String cacheName) {
         return BeanFactory.getBean(StatsService.class).listCacheStats(cacheName);
     }
 
+    @Override
+    public List<CacheStatsInfo> listHotKeys(String cacheName) {
+        List<CacheStatsInfo> hotKeys = new ArrayList<>();
+        for (String name : cacheNames) {
+            if (StringUtils.isNotBlank(cacheName) && !name.startsWith(cacheName)) {
+                continue;
+            }
+            for (Cache cache : getCache(name)) {
+                if (!(cache instanceof LayeringCache) || ((LayeringCache) cache).getHotKeyTracker() == null) {
+                    continue;
+                }
+                LayeringCache layeringCache = (LayeringCache) cache;
+                CacheStatsInfo cacheStatsInfo = new CacheStatsInfo();
+                cacheStatsInfo.setCacheName(name);
+                cacheStatsInfo.setInternalKey(layeringCache.getLayeringCacheSetting().getInternalKey());
+                cacheStatsInfo.setDepict(layeringCache.getLayeringCacheSetting().getDepict());
+                cacheStatsInfo.setHotKeys(layeringCache.getHotKeyTracker().getHotKeys());
+                hotKeys.add(cacheStatsInfo);
+            }
+        }
+        return hotKeys;
+    }
+
     @Override
     public void resetCacheStat() {
         BeanFactory.getBean(StatsService.class).resetCacheStat();
@@ -254,8 +497,17 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
 
     @Override
     public void destroy() throws Exception {
+        stopScheduledJobs();
+        if (evictPublisher != null) {
+            evictPublisher.shutdown();
+        }
         container.destroy();
-        BeanFactory.getBean(StatsService.class).shutdownExecutor();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (evictPublishScheduler != null) {
+            evictPublishScheduler.shutdown();
+        }
     }
 
     @Override
@@ -265,16 +517,23 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
 
     @Override
     public void stop(Runnable callback) {
+        stopScheduledJobs();
+        saveFirstCacheSnapshot();
         container.stop(callback);
     }
 
     @Override
     public void start() {
         container.start();
+        startScheduledJobs();
+        restoreFirstCacheSnapshot();
+        startFirstCacheWarmUp();
     }
 
     @Override
     public void stop() {
+        stopScheduledJobs();
+        saveFirstCacheSnapshot();
         container.stop();
     }
 
@@ -354,6 +613,428 @@ public abstract class AbstractCacheManager implements CacheManager, Initializing
         return super.hashCode();
     }
 
+    public long getEvictBatchWindow() {
+        return evictBatchWindow;
+    }
+
+    public void setEvictBatchWindow(long evictBatchWindow) {
+        this.evictBatchWindow = evictBatchWindow;
+    }
+
+    public int getEvictBatchMaxSize() {
+        return evictBatchMaxSize;
+    }
+
+    public void setEvictBatchMaxSize(int evictBatchMaxSize) {
+        this.evictBatchMaxSize = evictBatchMaxSize;
+    }
+
+    public boolean isPubSubLegacyFormat() {
+        return pubSubLegacyFormat;
+    }
+
+    /**
+     * 设置是否按升级前的格式发布pub/sub消息，只影响当前CacheManager，已经创建的缓存同时生效
+     *
+     * @param pubSubLegacyFormat 是否按升级前的格式发布
+     */
+    public void setPubSubLegacyFormat(boolean pubSubLegacyFormat) {
+        this.pubSubLegacyFormat = pubSubLegacyFormat;
+        RedisEvictPublisher publisher = evictPublisher;
+        if (publisher != null) {
+            publisher.setLegacyFormat(pubSubLegacyFormat);
+        }
+        for (ConcurrentMap<String, Cache> cacheMap : cacheContainer.values()) {
+            for (Cache cache : cacheMap.values()) {
+                if (cache instanceof LayeringCache) {
+                    ((LayeringCache) cache).setPubSubLegacyFormat(pubSubLegacyFormat);
+                }
+            }
+        }
+    }
+
+    public boolean isHotKey() {
+        return hotKey;
+    }
+
+    public void setHotKey(boolean hotKey) {
+        this.hotKey = hotKey;
+    }
+
+    public int getHotKeyTopK() {
+        return hotKeyTopK;
+    }
+
+    public void setHotKeyTopK(int hotKeyTopK) {
+        this.hotKeyTopK = hotKeyTopK;
+    }
+
+    public int getHotKeySampleRate() {
+        return hotKeySampleRate;
+    }
+
+    public void setHotKeySampleRate(int hotKeySampleRate) {
+        this.hotKeySampleRate = hotKeySampleRate;
+    }
+
+    public long getHotKeyPromoteThreshold() {
+        return hotKeyPromoteThreshold;
+    }
+
+    public void setHotKeyPromoteThreshold(long hotKeyPromoteThreshold) {
+        this.hotKeyPromoteThreshold = hotKeyPromoteThreshold;
+    }
+
+    public int getHotKeyCacheMaximumSize() {
+        return hotKeyCacheMaximumSize;
+    }
+
+    public void setHotKeyCacheMaximumSize(int hotKeyCacheMaximumSize) {
+        this.hotKeyCacheMaximumSize = hotKeyCacheMaximumSize;
+    }
+
+    public long getHotKeyCacheExpireTime() {
+        return hotKeyCacheExpireTime;
+    }
+
+    public void setHotKeyCacheExpireTime(long hotKeyCacheExpireTime) {
+        this.hotKeyCacheExpireTime = hotKeyCacheExpireTime;
+    }
+
+    public Weigher<Object, Object> getFirstCacheWeigher() {
+        return firstCacheWeigher;
+    }
+
+    public void setFirstCacheWeigher(Weigher<Object, Object> firstCacheWeigher) {
+        this.firstCacheWeigher = firstCacheWeigher;
+    }
+
+    public long getFirstCacheMaximumWeight() {
+        return firstCacheMaximumWeight;
+    }
+
+    public void setFirstCacheMaximumWeight(long firstCacheMaximumWeight) {
+        this.firstCacheMaximumWeight = firstCacheMaximumWeight;
+    }
+
+    public long getFirstCacheResizeDelay() {
+        return firstCacheResizeDelay;
+    }
+
+    public void setFirstCacheResizeDelay(long firstCacheResizeDelay) {
+        this.firstCacheResizeDelay = firstCacheResizeDelay;
+    }
+
+    /**
+     * 新建缓存后从全局内存预算里给它分配平均份额，其它一级缓存按比例让出容量
+     *
+     * @param cache 新建的缓存
+     */
+    protected void resizeFirstCaches(Cache cache) {
+        FirstCacheBudget budget = getFirstCacheBudget();
+        if (budget != null && cache instanceof LayeringCache) {
+            budget.allocate(getWeightedCaches(), (LayeringCache) cache);
+        }
+    }
+
+    /**
+     * 根据上个周期各个一级缓存的命中情况重新分配全局内存预算
+     */
+    public void rebalanceFirstCaches() {
+        FirstCacheBudget budget = getFirstCacheBudget();
+        if (budget != null) {
+            budget.rebalance(getWeightedCaches());
+        }
+    }
+
+    private FirstCacheBudget getFirstCacheBudget() {
+        if (firstCacheMaximumWeight <= 0) {
+            return null;
+        }
+        if (firstCacheBudget == null || firstCacheBudget.getMaximumWeight() != firstCacheMaximumWeight) {
+            synchronized (this) {
+                if (firstCacheBudget == null || firstCacheBudget.getMaximumWeight() != firstCacheMaximumWeight) {
+                    firstCacheBudget = new FirstCacheBudget(firstCacheMaximumWeight);
+                }
+            }
+        }
+        return firstCacheBudget;
+    }
+
+    private List<LayeringCache> getWeightedCaches() {
+        List<LayeringCache> weightedCaches = new ArrayList<>();
+        for (ConcurrentMap<String, Cache> cacheMap : cacheContainer.values()) {
+            for (Cache cache : cacheMap.values()) {
+                if (cache instanceof LayeringCache && FirstCacheBudget.evictionOf((LayeringCache) cache).isPresent()) {
+                    weightedCaches.add((LayeringCache) cache);
+                }
+            }
+        }
+        return weightedCaches;
+    }
+
+    public String getFirstCacheSnapshotFile() {
+        return firstCacheSnapshotFile;
+    }
+
+    public void setFirstCacheSnapshotFile(String firstCacheSnapshotFile) {
+        this.firstCacheSnapshotFile = firstCacheSnapshotFile;
+    }
+
+    public long getFirstCacheSnapshotDelay() {
+        return firstCacheSnapshotDelay;
+    }
+
+    public void setFirstCacheSnapshotDelay(long firstCacheSnapshotDelay) {
+        this.firstCacheSnapshotDelay = firstCacheSnapshotDelay;
+    }
+
+    public int getFirstCacheSnapshotSize() {
+        return firstCacheSnapshotSize;
+    }
+
+    public void setFirstCacheSnapshotSize(int firstCacheSnapshotSize) {
+        this.firstCacheSnapshotSize = firstCacheSnapshotSize;
+    }
+
+    /**
+     * 把所有一级缓存里最热的条目保存到快照文件
+     */
+    public void saveFirstCacheSnapshot() {
+        FirstCacheSnapshot snapshot = getFirstCacheSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        List<LayeringCache> caches = new ArrayList<>();
+        for (ConcurrentMap<String, Cache> cacheMap : cacheContainer.values()) {
+            for (Cache cache : cacheMap.values()) {
+                if (cache instanceof LayeringCache) {
+                    caches.add((LayeringCache) cache);
+                }
+            }
+        }
+        try {
+            snapshot.save(caches);
+        } catch (Exception e) {
+            logger.error("保存一级缓存快照异常：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在后台线程中读取快照文件，恢复已经创建的缓存，之后新建的缓存在创建时恢复
+     */
+    protected void restoreFirstCacheSnapshot() {
+        FirstCacheSnapshot snapshot = getFirstCacheSnapshot();
+        if (snapshot == null || !firstCacheSnapshotRestored.compareAndSet(false, true)) {
+            return;
+        }
+        addCacheCreateListener(cache -> {
+            if (cache instanceof LayeringCache) {
+                restoreFirstCacheSnapshot(snapshot, (LayeringCache) cache);
+            }
+        });
+        getScheduler().execute(() -> {
+            try {
+                if (snapshot.load() == 0) {
+                    return;
+                }
+            } catch (Exception e) {
+                logger.warn("读取一级缓存快照异常，不恢复一级缓存：{}", e.getMessage(), e);
+                return;
+            }
+            for (ConcurrentMap<String, Cache> cacheMap : cacheContainer.values()) {
+                for (Cache cache : cacheMap.values()) {
+                    if (cache instanceof LayeringCache) {
+                        restoreFirstCacheSnapshot(snapshot, (LayeringCache) cache);
+                    }
+                }
+            }
+        });
+    }
+
+    private void restoreFirstCacheSnapshot(FirstCacheSnapshot snapshot, LayeringCache cache) {
+        try {
+            getScheduler().execute(() -> {
+                try {
+                    snapshot.restore(cache);
+                } catch (Exception e) {
+                    logger.warn("恢复一级缓存快照异常，cacheName={}：{}", cache.getName(), e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("后台任务队列已满，不恢复一级缓存快照，cacheName={}", cache.getName());
+        }
+    }
+
+    /**
+     * 开启预热时，之后新建的缓存都向其它节点请求热点key
+     */
+    protected void startFirstCacheWarmUp() {
+        if (!firstCacheWarmUp || !firstCacheWarmUpStarted.compareAndSet(false, true)) {
+            return;
+        }
+        FirstCacheWarmer warmer = getFirstCacheWarmer();
+        addCacheCreateListener(cache -> {
+            if (!(cache instanceof LayeringCache)) {
+                return;
+            }
+            try {
+                getScheduler().execute(() -> warmer.request((LayeringCache) cache));
+            } catch (RejectedExecutionException e) {
+                logger.warn("后台任务队列已满，不预热一级缓存，cacheName={}", cache.getName());
+            }
+        });
+    }
+
+    /**
+     * 获取从其它节点预热一级缓存的处理器，没有开启预热时返回NULL
+     * <p>
+     * 没有开启预热的节点不发送请求，但是仍然回复其它节点的预热请求
+     * </p>
+     *
+     * @return {@link FirstCacheWarmer}
+     */
+    public FirstCacheWarmer getFirstCacheWarmer() {
+        if (firstCacheWarmer == null) {
+            synchronized (this) {
+                if (firstCacheWarmer == null) {
+                    firstCacheWarmer = new FirstCacheWarmer(this, firstCacheWarmUpSize);
+                }
+            }
+        }
+        return firstCacheWarmer;
+    }
+
+    public boolean isFirstCacheWarmUp() {
+        return firstCacheWarmUp;
+    }
+
+    public void setFirstCacheWarmUp(boolean firstCacheWarmUp) {
+        this.firstCacheWarmUp = firstCacheWarmUp;
+    }
+
+    public int getFirstCacheWarmUpSize() {
+        return firstCacheWarmUpSize;
+    }
+
+    public void setFirstCacheWarmUpSize(int firstCacheWarmUpSize) {
+        this.firstCacheWarmUpSize = firstCacheWarmUpSize;
+    }
+
+    private FirstCacheSnapshot getFirstCacheSnapshot() {
+        if (StringUtils.isBlank(firstCacheSnapshotFile)) {
+            return null;
+        }
+        if (firstCacheSnapshot == null) {
+            synchronized (this) {
+                if (firstCacheSnapshot == null) {
+                    firstCacheSnapshot = new FirstCacheSnapshot(new File(firstCacheSnapshotFile), redisTemplate, firstCacheSnapshotSize,
+                                                                getScheduler());
+                }
+            }
+        }
+        return firstCacheSnapshot;
+    }
+
+    /**
+     * 开启热点key探测且提升阈值大于0时为新建的缓存创建热点key缓存
+     *
+     * @return 热点key缓存，未开启时返回NULL
+     */
+    protected com.github.benmanes.caffeine.cache.Cache<Object, Object> newHotKeyCache() {
+        if (!hotKey || hotKeyPromoteThreshold <= 0) {
+            return null;
+        }
+        return Caffeine.newBuilder()
+            .maximumSize(hotKeyCacheMaximumSize)
+            .expireAfterWrite(hotKeyCacheExpireTime, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * 开启热点key探测时为新建的缓存创建探测器
+     *
+     * @return {@link HotKeyTracker}，未开启时返回NULL
+     */
+    protected HotKeyTracker newHotKeyTracker() {
+        return hotKey ? new HotKeyTracker(hotKeyTopK, hotKeySampleRate) : null;
+    }
+
+    /**
+     * 获取合并发布删除一级缓存消息的发布者，第一次获取时创建
+     *
+     * @return {@link RedisEvictPublisher}
+     */
+    public RedisEvictPublisher getEvictPublisher() {
+        if (evictPublisher == null) {
+            synchronized (this) {
+                if (evictPublisher == null) {
+                    RedisEvictPublisher publisher = new RedisEvictPublisher(redisTemplate, getEvictPublishScheduler(), evictBatchWindow, evictBatchMaxSize, nodeId);
+                    publisher.setLegacyFormat(pubSubLegacyFormat);
+                    evictPublisher = publisher;
+                }
+            }
+        }
+        return evictPublisher;
+    }
+
+    /**
+     * 获取本节点ID
+     *
+     * @return String
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public int getSchedulerPoolSize() {
+        return schedulerPoolSize;
+    }
+
+    public void setSchedulerPoolSize(int schedulerPoolSize) {
+        this.schedulerPoolSize = schedulerPoolSize;
+    }
+
+    public int getSchedulerQueueCapacity() {
+        return schedulerQueueCapacity;
+    }
+
+    public void setSchedulerQueueCapacity(int schedulerQueueCapacity) {
+        this.schedulerQueueCapacity = schedulerQueueCapacity;
+    }
+
+    /**
+     * 获取后台任务共用的线程池，第一次获取时创建，CacheManager销毁时关闭
+     *
+     * @return {@link LayeringCacheScheduler}
+     */
+    public LayeringCacheScheduler getScheduler() {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = new LayeringCacheScheduler(schedulerPoolSize, schedulerQueueCapacity);
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * 获取合并发布删除一级缓存消息专用的线程池，第一次获取时创建，CacheManager销毁时关闭
+     *
+     * @return {@link LayeringCacheScheduler}
+     */
+    public LayeringCacheScheduler getEvictPublishScheduler() {
+        if (evictPublishScheduler == null) {
+            synchronized (this) {
+                if (evictPublishScheduler == null) {
+                    evictPublishScheduler = new LayeringCacheScheduler("layering-cache-evict-publisher", 1, schedulerQueueCapacity);
+                }
+            }
+        }
+        return evictPublishScheduler;
+    }
+
     public RedisTemplate<String, Object> getRedisTemplate() {
         return redisTemplate;
     }
@@ -46,6 +46,14 @@ public interface CacheManager {
      */
     List<CacheStatsInfo> listCacheStats(String cacheName);
 
+    /**
+     * 获取本节点实时探测到的热点key，需要开启热点key探测
+     *
+     * @param cacheName 缓存名称，为Blank则查询全部
+     * @return List&lt;CacheStatsInfo&gt;，只有缓存名称、内部key、描述和热点key
+     */
+    List<CacheStatsInfo> listHotKeys(String cacheName);
+
     /**
      * 重置缓存统计数据
      */
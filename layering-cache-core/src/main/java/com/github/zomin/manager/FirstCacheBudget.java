@@ -0,0 +1,196 @@
+package com.github.zomin.manager;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 所有一级缓存共用的内存预算，通过Caffeine的{@link Policy.Eviction#setMaximum(long)}在运行时调整每个缓存的最大权重
+ * <p>
+ * 新建缓存时给新缓存分配平均份额，已有缓存按原来的比例缩小，保留之前按命中情况调整的结果；
+ * 之后定期根据上个周期的Caffeine统计重新分配：
+ * 没有发生淘汰的缓存说明容量够用，收缩到已用权重的1.25倍；发生了淘汰的缓存按未命中次数的比例分剩下的预算，
+ * 容量不足时未命中越多，增加容量带来的命中收益越大。每个缓存至少保留平均份额的10%，
+ * 所有目标值之和超过总预算时按比例缩小，每次只向目标值调整一半，避免容量来回振荡。
+ * Caffeine统计需要开启统计（stats）才有数据，没有开启统计的缓存不参与重新分配，保持新建时分到的份额。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class FirstCacheBudget {
+    private static final Logger logger = LoggerFactory.getLogger(FirstCacheBudget.class);
+
+    /**
+     * 总预算
+     */
+    private final long maximumWeight;
+
+    /**
+     * 上个周期结束时各个一级缓存的Caffeine统计
+     */
+    private final Map<LayeringCache, CacheStats> lastStats = new IdentityHashMap<>();
+
+    /**
+     * @param maximumWeight 所有一级缓存共用的最大权重
+     */
+    public FirstCacheBudget(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * 给新建的缓存分配平均份额，其它缓存的最大权重之和超过剩下的预算时按比例缩小
+     *
+     * @param caches   按权重淘汰的缓存，包括新建的缓存
+     * @param newCache 新建的缓存
+     */
+    public synchronized void allocate(List<LayeringCache> caches, LayeringCache newCache) {
+        Optional<Policy.Eviction<Object, Object>> newEviction = evictionOf(newCache);
+        if (!newEviction.isPresent()) {
+            return;
+        }
+        long share = Math.min(capOf(newCache), maximumWeight / caches.size());
+        newEviction.get().setMaximum(share);
+
+        long remaining = maximumWeight - share;
+        long allocated = 0;
+        for (LayeringCache cache : caches) {
+            if (cache != newCache) {
+                allocated += evictionOf(cache).map(Policy.Eviction::getMaximum).orElse(0L);
+            }
+        }
+        if (allocated <= remaining) {
+            return;
+        }
+        double scale = remaining / (double) allocated;
+        for (LayeringCache cache : caches) {
+            if (cache != newCache) {
+                evictionOf(cache).ifPresent(eviction -> eviction.setMaximum((long) (eviction.getMaximum() * scale)));
+            }
+        }
+    }
+
+    /**
+     * 按各个缓存自己的上限平均分配预算，上限比平均值小的缓存用不完的部分留给其它缓存
+     *
+     * @param caches 按权重淘汰的缓存
+     */
+    public synchronized void allocateEvenly(List<LayeringCache> caches) {
+        List<LayeringCache> sorted = new ArrayList<>(caches);
+        sorted.sort(Comparator.comparingLong(this::capOf));
+        long remaining = maximumWeight;
+        for (int i = 0; i < sorted.size(); i++) {
+            LayeringCache cache = sorted.get(i);
+            long maximum = Math.min(capOf(cache), remaining / (sorted.size() - i));
+            evictionOf(cache).ifPresent(eviction -> eviction.setMaximum(maximum));
+            remaining -= maximum;
+        }
+    }
+
+    /**
+     * 根据上个周期的命中情况重新分配预算
+     *
+     * @param caches 按权重淘汰的缓存
+     */
+    public synchronized void rebalance(List<LayeringCache> caches) {
+        if (caches.isEmpty()) {
+            return;
+        }
+        long floor = maximumWeight / (caches.size() * 10L);
+        List<LayeringCache> constrained = new ArrayList<>();
+        Map<LayeringCache, Long> utilities = new IdentityHashMap<>();
+        Map<LayeringCache, Long> targets = new IdentityHashMap<>();
+        long remaining = maximumWeight;
+        for (LayeringCache cache : caches) {
+            Optional<Policy.Eviction<Object, Object>> eviction = evictionOf(cache);
+            if (!eviction.isPresent()) {
+                continue;
+            }
+            if (!nativeCache(cache).policy().isRecordingStats()) {
+                // 没有统计数据时无法判断是否发生淘汰，保持原来的份额
+                remaining -= eviction.get().getMaximum();
+                continue;
+            }
+            CacheStats current = nativeCache(cache).stats();
+            CacheStats last = lastStats.put(cache, current);
+            CacheStats delta = last == null ? current : current.minus(last);
+            long cap = capOf(cache);
+            if (delta.evictionCount() == 0) {
+                // 容量够用，收缩到已用权重再留25%余量
+                long used = eviction.get().weightedSize().orElse(0L);
+                long target = Math.min(cap, Math.max(Math.min(floor, cap), used + used / 4));
+                targets.put(cache, target);
+                remaining -= target;
+            } else {
+                constrained.add(cache);
+                utilities.put(cache, delta.missCount() + 1);
+            }
+        }
+
+        // 按未命中次数加权分配剩余预算，先分配上限相对权重最小的，超过上限的部分留给后面的缓存
+        constrained.sort(Comparator.comparingDouble(cache -> capOf(cache) / (double) utilities.get(cache)));
+        long totalUtility = constrained.stream().mapToLong(utilities::get).sum();
+        for (LayeringCache cache : constrained) {
+            long utility = utilities.get(cache);
+            long share = (long) (Math.max(0, remaining) * (utility / (double) totalUtility));
+            long cap = capOf(cache);
+            long target = Math.min(cap, Math.max(Math.min(floor, cap), share));
+            targets.put(cache, target);
+            remaining -= target;
+            totalUtility -= utility;
+        }
+
+        // 没有淘汰的缓存按已用权重计算的目标值不受剩余预算限制，目标值之和超过总预算时按比例缩小
+        long budget = maximumWeight - caches.stream().filter(cache -> !targets.containsKey(cache))
+            .mapToLong(cache -> evictionOf(cache).map(Policy.Eviction::getMaximum).orElse(0L)).sum();
+        long total = targets.values().stream().mapToLong(Long::longValue).sum();
+        double scale = total > budget ? Math.max(0, budget) / (double) total : 1;
+        for (Map.Entry<LayeringCache, Long> entry : targets.entrySet()) {
+            Policy.Eviction<Object, Object> eviction = evictionOf(entry.getKey()).get();
+            long maximum = (eviction.getMaximum() + (long) (entry.getValue() * scale)) / 2;
+            if(logger.isDebugEnabled()) {
+                logger.debug("调整一级缓存最大权重，cacheName={},internalKey={},{} -> {}", entry.getKey().getName(),
+                             entry.getKey().getLayeringCacheSetting().getInternalKey(), eviction.getMaximum(), maximum);
+            }
+            eviction.setMaximum(maximum);
+        }
+    }
+
+    /**
+     * 缓存自己配置的最大权重，没有配置时只受总预算限制
+     */
+    private long capOf(LayeringCache cache) {
+        long maximumWeight = cache.getLayeringCacheSetting().getFirstCacheSetting().getMaximumWeight();
+        return maximumWeight > 0 ? Math.min(maximumWeight, this.maximumWeight) : this.maximumWeight;
+    }
+
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache(LayeringCache cache) {
+        return ((CaffeineCache) cache.getFirstCache()).getNativeCache();
+    }
+
+    /**
+     * 获取一级缓存按权重淘汰的策略
+     *
+     * @param cache 缓存
+     * @return 一级缓存是Caffeine并且按权重淘汰时返回{@link Policy.Eviction}
+     */
+    static Optional<Policy.Eviction<Object, Object>> evictionOf(LayeringCache cache) {
+        if (!(cache.getFirstCache() instanceof CaffeineCache)) {
+            return Optional.empty();
+        }
+        return nativeCache(cache).policy().eviction().filter(Policy.Eviction::isWeighted);
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+}
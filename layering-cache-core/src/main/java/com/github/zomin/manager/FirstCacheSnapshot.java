@@ -0,0 +1,428 @@
+package com.github.zomin.manager;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.LazyValue;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.redis.RedisCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一级缓存快照，把各个一级缓存里最热的条目保存到本地文件，重启后恢复，避免所有节点同时启动时大量请求redis
+ * <p>
+ * 每个条目保存序列化后的key、value，一级缓存剩余的有效时间和对应redis key的过期时间点（相当于版本号，
+ * 二级缓存被重新写入后过期时间点就会变化）。恢复时丢弃一级缓存已经过期的条目，再用一次pipeline批量查询redis key的剩余时间，
+ * 只有redis key还在并且过期时间点和保存时一致（误差{@value #DEADLINE_TOLERANCE}毫秒内）的条目才放回一级缓存。
+ * redis key没有设置过期时间时无法判断是否被重新写入过，这样的条目不保存。
+ * 缓存是在第一次使用时才创建的，文件读取后先暂存，对应的缓存创建后再恢复。
+ * </p>
+ * <p>
+ * 放回一级缓存的条目会重新开始计算有效时间，一级缓存按写入时间过期时，在保存时剩余的有效时间到期后（按秒合并）由后台任务删除，
+ * 条目已经被重新写入时不删除。
+ * </p>
+ * <p>
+ * 只处理Caffeine实现的一级缓存，文件通过内存映射读写，先写临时文件再替换，保存过程中进程退出不会损坏已有的快照。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class FirstCacheSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(FirstCacheSnapshot.class);
+
+    private static final int MAGIC = 0x4C435346;
+
+    private static final int VERSION = 1;
+
+    /**
+     * 比对redis key过期时间点允许的误差，单位毫秒
+     */
+    private static final long DEADLINE_TOLERANCE = 1000;
+
+    /**
+     * redis key没有设置过期时间
+     */
+    private static final long NO_EXPIRE = -1;
+
+    /**
+     * 快照文件
+     */
+    private final File file;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 每个缓存最多保存的条目数
+     */
+    private final int maximumSize;
+
+    /**
+     * 从快照文件读取、对应缓存还没有创建的条目，key是缓存名称 + 内部缓存名
+     */
+    private final Map<String, List<SnapshotEntry>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 恢复的条目在原来的过期时间点删除，为NULL时恢复的条目按一级缓存完整的有效时间过期
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param file          快照文件
+     * @param redisTemplate redisTemplate，序列化使用它的value序列化器
+     * @param maximumSize   每个缓存最多保存的条目数
+     */
+    public FirstCacheSnapshot(File file, RedisTemplate<String, Object> redisTemplate, int maximumSize) {
+        this(file, redisTemplate, maximumSize, null);
+    }
+
+    /**
+     * @param file          快照文件
+     * @param redisTemplate redisTemplate，序列化使用它的value序列化器
+     * @param maximumSize   每个缓存最多保存的条目数
+     * @param scheduler     在原来的过期时间点删除恢复的条目
+     */
+    public FirstCacheSnapshot(File file, RedisTemplate<String, Object> redisTemplate, int maximumSize, ScheduledExecutorService scheduler) {
+        this.file = file;
+        this.redisTemplate = redisTemplate;
+        this.maximumSize = maximumSize;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 保存快照
+     *
+     * @param caches 所有缓存
+     * @return 保存的条目数
+     * @throws IOException 写文件异常
+     */
+    public synchronized int save(Collection<LayeringCache> caches) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<LayeringCache, List<SnapshotEntry>> sections = new LinkedHashMap<>();
+        int count = 0;
+        for (LayeringCache cache : caches) {
+            if (cache.getFirstCache() instanceof CaffeineCache && cache.getSecondCache() instanceof RedisCache) {
+                List<SnapshotEntry> entries = snapshot(cache, now);
+                sections.put(cache, entries);
+                count += entries.size();
+            }
+        }
+
+        byte[][] names = new byte[sections.size()][];
+        byte[][] internalKeys = new byte[sections.size()][];
+        long size = 4 + 4 + 8 + 4;
+        int index = 0;
+        for (Map.Entry<LayeringCache, List<SnapshotEntry>> section : sections.entrySet()) {
+            names[index] = section.getKey().getName().getBytes(StandardCharsets.UTF_8);
+            internalKeys[index] = section.getKey().getLayeringCacheSetting().getInternalKey().getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[index].length + 4 + internalKeys[index].length + 4;
+            for (SnapshotEntry entry : section.getValue()) {
+                size += 4 + entry.key.length + 4 + entry.value.length + 8 + 8;
+            }
+            index++;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("一级缓存快照超过2GB，请调小每个缓存保存的条目数");
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("创建一级缓存快照目录失败：" + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(now).putInt(sections.size());
+            index = 0;
+            for (List<SnapshotEntry> entries : sections.values()) {
+                putBytes(buffer, names[index]);
+                putBytes(buffer, internalKeys[index]);
+                buffer.putInt(entries.size());
+                for (SnapshotEntry entry : entries) {
+                    putBytes(buffer, entry.key);
+                    putBytes(buffer, entry.value);
+                    buffer.putLong(entry.firstCacheDeadline).putLong(entry.redisDeadline);
+                }
+                index++;
+            }
+            buffer.force();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if(logger.isDebugEnabled()) {
+            logger.debug("保存一级缓存快照，file={},缓存数={},条目数={}", file, sections.size(), count);
+        }
+        return count;
+    }
+
+    /**
+     * 读取快照文件，一级缓存已经过期的条目直接丢弃，其它的暂存起来等待恢复
+     *
+     * @return 暂存的条目数
+     * @throws IOException 读文件异常或者文件格式不对
+     */
+    public int load() throws IOException {
+        if (!file.isFile()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int count = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("不是一级缓存快照文件或者版本不一致：" + file);
+            }
+            buffer.getLong();
+            int cacheCount = buffer.getInt();
+            for (int i = 0; i < cacheCount; i++) {
+                String name = new String(getBytes(buffer), StandardCharsets.UTF_8);
+                String internalKey = new String(getBytes(buffer), StandardCharsets.UTF_8);
+                int entryCount = buffer.getInt();
+                List<SnapshotEntry> entries = new ArrayList<>();
+                for (int j = 0; j < entryCount; j++) {
+                    SnapshotEntry entry = new SnapshotEntry(getBytes(buffer), getBytes(buffer), buffer.getLong(), buffer.getLong());
+                    if (entry.firstCacheDeadline > now) {
+                        entries.add(entry);
+                    }
+                }
+                if (!entries.isEmpty()) {
+                    pending.put(name + internalKey, entries);
+                    count += entries.size();
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("一级缓存快照文件已损坏：" + file, e);
+        }
+        if(logger.isDebugEnabled()) {
+            logger.debug("读取一级缓存快照，file={},条目数={}", file, count);
+        }
+        return count;
+    }
+
+    /**
+     * 把暂存的条目恢复到缓存，已经失效或者二级缓存已经变化的条目丢弃，一级缓存里已有的key不覆盖
+     *
+     * @param cache 缓存
+     * @return 恢复的条目数
+     */
+    @SuppressWarnings("unchecked")
+    public int restore(LayeringCache cache) {
+        List<SnapshotEntry> entries = pending.remove(cache.getName() + cache.getLayeringCacheSetting().getInternalKey());
+        if (entries == null || !(cache.getSecondCache() instanceof RedisCache)) {
+            return 0;
+        }
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        RedisCache redisCache = (RedisCache) cache.getSecondCache();
+        List<Object> keys = new ArrayList<>(entries.size());
+        List<byte[]> rawKeys = new ArrayList<>(entries.size());
+        for (SnapshotEntry entry : entries) {
+            Object key = serializer.deserialize(entry.key);
+            keys.add(key);
+            rawKeys.add(redisCache.getRedisCacheKey(key).getRawKey());
+        }
+
+        long now = System.currentTimeMillis();
+        List<Object> ttls = pTtl(rawKeys);
+        // 按过期时间点（秒）分组，到期后删除
+        TreeMap<Long, Map<Object, Object>> expirations = new TreeMap<>();
+        int count = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            SnapshotEntry entry = entries.get(i);
+            long ttl = ttls.get(i) instanceof Long ? (Long) ttls.get(i) : -2;
+            if (entry.firstCacheDeadline <= now || !isSameVersion(entry.redisDeadline, ttl, now)) {
+                continue;
+            }
+            try {
+                Object value = serializer.deserialize(entry.value);
+                if (cache.getFirstCache().putIfAbsent(keys.get(i), value) == value && entry.firstCacheDeadline != Long.MAX_VALUE) {
+                    expirations.computeIfAbsent(TimeUnit.MILLISECONDS.toSeconds(entry.firstCacheDeadline - now) + 1, k -> new LinkedHashMap<>())
+                        .put(keys.get(i), value);
+                }
+                count++;
+            } catch (Exception e) {
+                logger.warn("恢复一级缓存快照反序列化异常，cacheName={},key={}：{}", cache.getName(), keys.get(i), e.getMessage());
+            }
+        }
+        scheduleExpiration(cache, expirations);
+        logger.info("恢复一级缓存快照，cacheName={},internalKey={},快照条目数={},恢复条目数={}", cache.getName(),
+                    cache.getLayeringCacheSetting().getInternalKey(), entries.size(), count);
+        return count;
+    }
+
+    /**
+     * 一级缓存按写入时间过期时，在保存时剩余的有效时间到期后删除恢复的条目，条目已经被重新写入时不删除
+     *
+     * @param cache       缓存
+     * @param expirations key是多少秒后过期，value是这一秒过期的条目
+     */
+    private void scheduleExpiration(LayeringCache cache, TreeMap<Long, Map<Object, Object>> expirations) {
+        if (scheduler == null || expirations.isEmpty() || !(cache.getFirstCache() instanceof CaffeineCache)) {
+            return;
+        }
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache.getFirstCache()).getNativeCache();
+        if (!nativeCache.policy().expireAfterWrite().isPresent()) {
+            return;
+        }
+        long expiresAfter = nativeCache.policy().expireAfterWrite().get().getExpiresAfter(TimeUnit.SECONDS);
+        try {
+            for (Map.Entry<Long, Map<Object, Object>> expiration : expirations.headMap(expiresAfter).entrySet()) {
+                scheduler.schedule(() -> expiration.getValue().forEach(nativeCache.asMap()::remove),
+                                   expiration.getKey(), TimeUnit.SECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.warn("后台任务队列已满，恢复的一级缓存条目按完整的有效时间过期，cacheName={}", cache.getName());
+        }
+    }
+
+    /**
+     * 取一个缓存里最热的条目
+     */
+    @SuppressWarnings("unchecked")
+    private List<SnapshotEntry> snapshot(LayeringCache cache, long now) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache.getFirstCache()).getNativeCache();
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        RedisCache redisCache = (RedisCache) cache.getSecondCache();
+        Map<Object, Object> hottest = nativeCache.policy().eviction()
+            .map(eviction -> eviction.hottest(maximumSize))
+            .orElse(Collections.emptyMap());
+
+        List<SnapshotEntry> entries = new ArrayList<>(hottest.size());
+        List<byte[]> rawKeys = new ArrayList<>(hottest.size());
+        for (Map.Entry<Object, Object> entry : hottest.entrySet()) {
+            long remaining = remainingTime(nativeCache, entry.getKey());
+            if (entry.getValue() instanceof NullValue || remaining <= 0) {
+                continue;
+            }
+            try {
+                entries.add(new SnapshotEntry(serializer.serialize(entry.getKey()), serializer.serialize(LazyValue.unwrap(entry.getValue())),
+                                              remaining == Long.MAX_VALUE ? Long.MAX_VALUE : now + remaining, 0));
+                rawKeys.add(redisCache.getRedisCacheKey(entry.getKey()).getRawKey());
+            } catch (Exception e) {
+                logger.warn("保存一级缓存快照序列化异常，cacheName={},key={}：{}", cache.getName(), entry.getKey(), e.getMessage());
+            }
+        }
+
+        // 记录redis key的过期时间点，redis里已经没有的key和没有设置过期时间的key不保存
+        List<Object> ttls = pTtl(rawKeys);
+        List<SnapshotEntry> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            long ttl = ttls.get(i) instanceof Long ? (Long) ttls.get(i) : -2;
+            if (ttl >= 0) {
+                SnapshotEntry entry = entries.get(i);
+                result.add(new SnapshotEntry(entry.key, entry.value, entry.firstCacheDeadline, now + ttl));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量查询redis key的剩余时间（毫秒），key不存在时是-2，没有设置过期时间时是-1
+     */
+    private List<Object> pTtl(List<byte[]> rawKeys) {
+        if (rawKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] rawKey : rawKeys) {
+                connection.pTtl(rawKey);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 旧的快照文件里可能有没有设置过期时间的条目，无法判断是否被重新写入过，不恢复
+     */
+    private static boolean isSameVersion(long redisDeadline, long ttl, long now) {
+        if (redisDeadline == NO_EXPIRE) {
+            return false;
+        }
+        return ttl >= 0 && Math.abs(now + ttl - redisDeadline) <= DEADLINE_TOLERANCE;
+    }
+
+    /**
+     * 一级缓存条目剩余的有效时间，单位毫秒，没有设置有效时间时返回{@link Long#MAX_VALUE}
+     */
+    private static long remainingTime(com.github.benmanes.caffeine.cache.Cache<Object, Object> cache, Object key) {
+        Optional<Policy.Expiration<Object, Object>> expiration = cache.policy().expireAfterWrite();
+        if (!expiration.isPresent()) {
+            expiration = cache.policy().expireAfterAccess();
+        }
+        if (!expiration.isPresent()) {
+            return Long.MAX_VALUE;
+        }
+        OptionalLong age = expiration.get().ageOf(key, TimeUnit.MILLISECONDS);
+        return age.isPresent() ? expiration.get().getExpiresAfter(TimeUnit.MILLISECONDS) - age.getAsLong() : 0;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 快照条目
+     */
+    private static class SnapshotEntry {
+        private final byte[] key;
+
+        private final byte[] value;
+
+        /**
+         * 一级缓存过期的时间点
+         */
+        private final long firstCacheDeadline;
+
+        /**
+         * redis key过期的时间点，旧的快照文件里没有设置过期时间时是-1
+         */
+        private final long redisDeadline;
+
+        SnapshotEntry(byte[] key, byte[] value, long firstCacheDeadline, long redisDeadline) {
+            this.key = key;
+            this.value = value;
+            this.firstCacheDeadline = firstCacheDeadline;
+            this.redisDeadline = redisDeadline;
+        }
+    }
+}
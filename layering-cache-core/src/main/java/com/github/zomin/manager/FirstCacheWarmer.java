@@ -0,0 +1,231 @@
+package com.github.zomin.manager;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.zomin.cache.Cache;
+import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.LazyValue;
+import com.github.zomin.cache.redis.RedisCache;
+import com.github.zomin.listener.RedisPubSubMessage;
+import com.github.zomin.listener.RedisPubSubMessageType;
+import com.github.zomin.listener.RedisPublisher;
+import com.github.zomin.support.NullValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从其它节点预热一级缓存
+ * <p>
+ * 新建缓存后在该缓存的频道上发布预热请求，已经运行的节点收到后回复自己一级缓存里访问频率最高的key，
+ * 请求方收到第一个回复后按批次用MGET从redis读取这些key放到一级缓存，后面的回复忽略。
+ * 为了避免所有节点同时回复，每个节点随机等待一小段时间，看到其它节点已经回复过就不再回复。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class FirstCacheWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(FirstCacheWarmer.class);
+
+    /**
+     * 每次MGET的key数量
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 回复前随机等待的最长时间，单位毫秒
+     */
+    private static final int MAX_RESPONSE_DELAY = 200;
+
+    /**
+     * 等待回复的时间，超时后不再处理回复，单位秒
+     */
+    private static final long RESPONSE_TIMEOUT = 60;
+
+    private final AbstractCacheManager cacheManager;
+
+    /**
+     * 每个缓存最多预热的key数量
+     */
+    private final int size;
+
+    /**
+     * 本节点ID，区分请求方
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 已经发出请求、还没有收到回复的缓存
+     */
+    private final Set<LayeringCache> waiting = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * 已经有节点回复过的请求，key是请求方节点ID + 缓存名称
+     */
+    private final com.github.benmanes.caffeine.cache.Cache<String, Boolean> answered = Caffeine.newBuilder()
+        .maximumSize(10000)
+        .expireAfterWrite(RESPONSE_TIMEOUT, TimeUnit.SECONDS)
+        .build();
+
+    /**
+     * @param cacheManager 缓存管理器
+     * @param size         每个缓存最多预热的key数量
+     */
+    public FirstCacheWarmer(AbstractCacheManager cacheManager, int size) {
+        this.cacheManager = cacheManager;
+        this.size = size;
+    }
+
+    /**
+     * 请求其它节点发送热点key
+     *
+     * @param cache 新建的缓存
+     */
+    public void request(LayeringCache cache) {
+        waiting.add(cache);
+        try {
+            cacheManager.getScheduler().schedule(() -> waiting.remove(cache), RESPONSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // 没有超时清理时只是多保留一个缓存引用，迟到的回复仍然可以用来预热
+            if(logger.isDebugEnabled()) {
+                logger.debug("后台任务队列已满，预热请求不设置超时，cacheName={}", cache.getName());
+            }
+        }
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName(cache.getName());
+        message.setMessageType(RedisPubSubMessageType.WARM_UP_REQUEST);
+        message.setNodeId(nodeId);
+        RedisPublisher.publisher(cacheManager.getRedisTemplate(), new ChannelTopic(cache.getName()), message, cacheManager.isPubSubLegacyFormat());
+    }
+
+    /**
+     * 处理预热消息
+     *
+     * @param message 预热请求或回复
+     */
+    public void onMessage(RedisPubSubMessage message) {
+        if (message.getNodeId() == null) {
+            return;
+        }
+        String answeredKey = message.getNodeId() + message.getCacheName();
+        if (RedisPubSubMessageType.WARM_UP_REQUEST.equals(message.getMessageType())) {
+            if (nodeId.equals(message.getNodeId())) {
+                return;
+            }
+            try {
+                cacheManager.getScheduler().schedule(() -> respond(message.getCacheName(), message.getNodeId(), answeredKey),
+                                                     ThreadLocalRandom.current().nextInt(MAX_RESPONSE_DELAY), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.warn("后台任务队列已满，不回复预热请求，cacheName={}", message.getCacheName());
+            }
+            return;
+        }
+
+        answered.put(answeredKey, Boolean.TRUE);
+        if (!nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        List<Object> keys = message.getKeys() != null ? new ArrayList<>(message.getKeys())
+            : message.getKey() != null ? Collections.singletonList(message.getKey()) : Collections.emptyList();
+        for (Cache cache : cacheManager.getCache(message.getCacheName())) {
+            if (cache instanceof LayeringCache && waiting.remove(cache)) {
+                try {
+                    cacheManager.getScheduler().execute(() -> load((LayeringCache) cache, keys));
+                } catch (RejectedExecutionException e) {
+                    logger.warn("后台任务队列已满，不预热一级缓存，cacheName={}", cache.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * 回复本节点一级缓存里访问频率最高的key，已经有其它节点回复过时不回复
+     */
+    private void respond(String cacheName, String requestNodeId, String answeredKey) {
+        if (answered.getIfPresent(answeredKey) != null) {
+            return;
+        }
+        Set<Object> keys = new LinkedHashSet<>();
+        for (Cache cache : cacheManager.getCache(cacheName)) {
+            if (cache instanceof LayeringCache) {
+                keys.addAll(hottestKeys((LayeringCache) cache));
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        answered.put(answeredKey, Boolean.TRUE);
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName(cacheName);
+        message.setMessageType(RedisPubSubMessageType.WARM_UP_RESPONSE);
+        message.setNodeId(requestNodeId);
+        message.setKeys(new ArrayList<>(keys).subList(0, Math.min(size, keys.size())));
+        RedisPublisher.publisher(cacheManager.getRedisTemplate(), new ChannelTopic(cacheName), message, cacheManager.isPubSubLegacyFormat());
+        if(logger.isDebugEnabled()) {
+            logger.debug("回复预热请求，cacheName={},nodeId={},key数量={}", cacheName, requestNodeId, message.getKeys().size());
+        }
+    }
+
+    /**
+     * 一级缓存里访问频率最高的key
+     */
+    @SuppressWarnings("unchecked")
+    private Collection<Object> hottestKeys(LayeringCache cache) {
+        Object nativeCache = cache.getFirstCache().getNativeCache();
+        if (!(nativeCache instanceof com.github.benmanes.caffeine.cache.Cache)) {
+            return Collections.emptyList();
+        }
+        return ((com.github.benmanes.caffeine.cache.Cache<Object, ?>) nativeCache).policy().eviction()
+            .map(eviction -> (Collection<Object>) eviction.hottest(size).keySet())
+            .orElse(Collections.emptyList());
+    }
+
+    /**
+     * 按批次从二级缓存读取并放到一级缓存，一级缓存里已有的key不覆盖，预热读取不计入缓存统计
+     *
+     * @param cache 缓存
+     * @param keys  需要预热的key
+     * @return 预热的key数量
+     */
+    int load(LayeringCache cache, List<Object> keys) {
+        if (!(cache.getSecondCache() instanceof RedisCache)) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+                List<Object> batch = keys.subList(from, Math.min(keys.size(), from + BATCH_SIZE));
+                Map<Object, Object> values = ((RedisCache) cache.getSecondCache()).getAllLazy(batch);
+                for (Map.Entry<Object, Object> entry : values.entrySet()) {
+                    if (entry.getValue() != null && !(entry.getValue() instanceof NullValue)) {
+                        // 一级缓存存放原始字节时不反序列化，读取时才反序列化
+                        cache.getFirstCache().putIfAbsent(entry.getKey(), cache.isLazyDeserialize() ? entry.getValue()
+                            : LazyValue.unwrap(entry.getValue()));
+                        count++;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("预热一级缓存异常，cacheName={}：{}", cache.getName(), e.getMessage(), e);
+        }
+        logger.info("从其它节点预热一级缓存，cacheName={},internalKey={},key数量={},预热数量={}", cache.getName(),
+                    cache.getLayeringCacheSetting().getInternalKey(), keys.size(), count);
+        return count;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -1,11 +1,17 @@
 package com.github.zomin.manager;
 
+import com.github.zomin.cache.AbstractValueAdaptingCache;
 import com.github.zomin.cache.Cache;
 import com.github.zomin.cache.LayeringCache;
 import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.offheap.OffHeapCache;
 import com.github.zomin.cache.redis.RedisCache;
+import com.github.zomin.setting.FirstCacheSetting;
 import com.github.zomin.setting.LayeringCacheSetting;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.function.Function;
 
 /**
  * @author kalend.zhang
@@ -18,11 +24,55 @@ public class LayeringCacheManager extends AbstractCacheManager {
 
     @Override
     protected Cache getMissingCache(String name, LayeringCacheSetting layeringCacheSetting) {
-        // 创建一级缓存
-        CaffeineCache caffeineCache = new CaffeineCache(name, layeringCacheSetting.getFirstCacheSetting(), getStats());
         // 创建二级缓存
         RedisCache redisCache = new RedisCache(name, redisTemplate, layeringCacheSetting.getSecondaryCacheSetting(), getStats());
-        return new LayeringCache(redisTemplate, caffeineCache, redisCache, super.getStats(), layeringCacheSetting);
+        redisCache.setScheduler(getScheduler());
+        LayeringCache layeringCache = new LayeringCache(redisTemplate, newFirstCache(name, layeringCacheSetting.getFirstCacheSetting(), redisCache),
+                                                        redisCache, super.getStats(), layeringCacheSetting);
+        layeringCache.setEvictPublisher(getEvictPublisher());
+        layeringCache.setCacheManager(this);
+        layeringCache.setPubSubLegacyFormat(isPubSubLegacyFormat());
+        layeringCache.setHotKeyTracker(newHotKeyTracker());
+        layeringCache.setHotKeyCache(newHotKeyCache(), getHotKeyPromoteThreshold());
+        return layeringCache;
+    }
+
+    /**
+     * 创建一级缓存，堆外缓存使用和二级缓存相同的序列化器；Caffeine缓存配置了刷新时间时在后台线程池中从二级缓存刷新
+     *
+     * @param name              缓存名称
+     * @param firstCacheSetting 一级缓存配置
+     * @param redisCache        二级缓存
+     * @return 一级缓存
+     */
+    @SuppressWarnings("unchecked")
+    private AbstractValueAdaptingCache newFirstCache(String name, FirstCacheSetting firstCacheSetting, RedisCache redisCache) {
+        if (firstCacheSetting.isOffHeap()) {
+            return new OffHeapCache(name, firstCacheSetting, getStats(), (RedisSerializer<Object>) redisTemplate.getValueSerializer());
+        }
+        // 开启延迟反序列化时后台刷新的值在下一次读取时才反序列化
+        Function<Object, Object> refreshLoader = firstCacheSetting.isLazyDeserialize() ? redisCache::getLazy : redisCache::get;
+        return new CaffeineCache(name, getBudgetedFirstCacheSetting(firstCacheSetting), getStats(),
+                                 refreshLoader, getScheduler(), getFirstCacheWeigher());
+    }
+
+    /**
+     * 配置了全局内存预算时，没有配置maximumWeight的一级缓存也按权重淘汰，由预算统一分配容量
+     *
+     * @param firstCacheSetting 一级缓存配置
+     * @return 创建一级缓存使用的配置
+     */
+    private FirstCacheSetting getBudgetedFirstCacheSetting(FirstCacheSetting firstCacheSetting) {
+        if (getFirstCacheMaximumWeight() <= 0 || firstCacheSetting.getMaximumWeight() > 0) {
+            return firstCacheSetting;
+        }
+        FirstCacheSetting budgeted = new FirstCacheSetting(firstCacheSetting.getInitialCapacity(), firstCacheSetting.getMaximumSize(),
+                                                           firstCacheSetting.getExpireTime(), firstCacheSetting.getTimeUnit(),
+                                                           firstCacheSetting.getExpireMode());
+        budgeted.setRefreshTime(firstCacheSetting.getRefreshTime());
+        budgeted.setLazyDeserialize(firstCacheSetting.isLazyDeserialize());
+        budgeted.setMaximumWeight(getFirstCacheMaximumWeight());
+        return budgeted;
     }
 
     @Override
@@ -0,0 +1,122 @@
+package com.github.zomin.redis.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩redis value的序列化器，包装实际的序列化器
+ *
+ * <p>
+ * 序列化后不小于阈值的数据用Deflate（最快压缩级别）压缩，格式为 [1字节头0x00][4字节原始长度][压缩数据]，
+ * 压缩后没有变小的数据和小于阈值的数据原样写入。反序列化时首字节是0x00才解压，否则交给实际的序列化器，
+ * 所以能读取开启压缩之前写入的数据。Jackson、protostuff和JDK序列化的结果都不会以0x00开头。
+ * 每个线程复用一个 {@link Deflater} 和 {@link Inflater}。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class CompressRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 压缩数据的头
+     */
+    private static final byte COMPRESSED = 0x00;
+
+    /**
+     * 头和原始长度的字节数
+     */
+    private static final int HEADER_LENGTH = 5;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final RedisSerializer<Object> delegate;
+
+    /**
+     * 压缩阈值，单位字节
+     */
+    private final int threshold;
+
+    /**
+     * @param delegate  实际的序列化器
+     * @param threshold 压缩阈值，序列化后不小于该字节数才压缩
+     */
+    public CompressRedisSerializer(RedisSerializer<Object> delegate, int threshold) {
+        Assert.notNull(delegate, "RedisSerializer 不能为NULL");
+        Assert.isTrue(threshold > 0, "压缩阈值必须大于0");
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        byte[] bytes = delegate.serialize(object);
+        if (bytes == null || bytes.length < threshold) {
+            return bytes;
+        }
+        Deflater deflater = DEFLATER.get();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            out.write(COMPRESSED);
+            out.write(ByteBuffer.allocate(4).putInt(bytes.length).array(), 0, 4);
+            byte[] buffer = new byte[Math.min(bytes.length, 8192)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= bytes.length) {
+                    // 压缩后没有变小，不压缩
+                    return bytes;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length <= HEADER_LENGTH || bytes[0] != COMPRESSED) {
+            return delegate.deserialize(bytes);
+        }
+        int length = ByteBuffer.wrap(bytes, 1, 4).getInt();
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int count = inflater.inflate(result, offset, length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset != length) {
+                throw new SerializationException("Could not decompress value: expected " + length + " bytes, got " + offset);
+            }
+            return delegate.deserialize(result);
+        } catch (DataFormatException e) {
+            throw new SerializationException("Could not decompress value: " + e.getMessage(), e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    public RedisSerializer<Object> getDelegate() {
+        return delegate;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+}
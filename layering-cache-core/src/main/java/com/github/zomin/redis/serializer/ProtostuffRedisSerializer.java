@@ -0,0 +1,82 @@
+package com.github.zomin.redis.serializer;
+
+import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 使用protostuff将redis value序列化为二进制
+ *
+ * <p>
+ * 值统一包装在 {@link Wrapper} 里序列化，这样集合、Map和基本类型的包装类也能作为顶层对象，
+ * 反序列化时按写入的类名还原具体类型。每个类的 {@link Schema} 由 {@link RuntimeSchema} 第一次使用时生成并缓存，
+ * 序列化用的 {@link LinkedBuffer} 每个线程复用一个。
+ * 和Jackson相比体积更小、速度更快，但数据不可读，字段按声明顺序编号，类增删字段只能在末尾追加，
+ * 切换序列化方式前需要清空redis里已有的缓存。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class ProtostuffRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private static final Schema<Wrapper> WRAPPER_SCHEMA = RuntimeSchema.getSchema(Wrapper.class);
+
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+
+    /**
+     * 序列化
+     *
+     * @param object 缓存值
+     * @return byte[] null值返回空数组
+     */
+    @Override
+    public byte[] serialize(Object object) {
+        if (object == null) {
+            return EMPTY_ARRAY;
+        }
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            return ProtostuffIOUtil.toByteArray(new Wrapper(object), WRAPPER_SCHEMA, buffer);
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not write protostuff: " + e.getMessage(), e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 反序列化
+     *
+     * @param bytes 数据
+     * @return 缓存值，空数组返回null
+     */
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            Wrapper wrapper = WRAPPER_SCHEMA.newMessage();
+            ProtostuffIOUtil.mergeFrom(bytes, wrapper, WRAPPER_SCHEMA);
+            return wrapper.data;
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not read protostuff: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 顶层对象的包装类
+     */
+    private static class Wrapper {
+        private Object data;
+
+        Wrapper(Object data) {
+            this.data = data;
+        }
+    }
+}
@@ -67,4 +67,8 @@ public class RedisKeySerializer implements RedisSerializer<Object> {
 		return key.getBytes(this.charset);
 	}
 
+	public Charset getCharset() {
+		return charset;
+	}
+
 }
@@ -21,6 +21,11 @@ public class FirstCacheSetting implements Serializable {
      */
     private int maximumSize = 5000;
 
+    /**
+     * 缓存最大权重，默认按估算的内存占用（字节）计算，大于0时按权重淘汰并忽略maximumSize
+     */
+    private long maximumWeight = 0;
+
     /**
      * 缓存有效时间
      */
@@ -36,6 +41,25 @@ public class FirstCacheSetting implements Serializable {
      */
     private ExpireMode expireMode = ExpireMode.WRITE;
 
+    /**
+     * 缓存刷新时间，时间单位同有效时间，写入超过该时间后的读取返回旧值并异步从二级缓存刷新，小于等于0表示不刷新
+     */
+    private long refreshTime = 0;
+
+    /**
+     * 是否把缓存值序列化后存放在堆外内存，开启后maximumWeight按堆外内存字节数计算，建议同时配置maximumWeight限制堆外内存占用，不支持刷新（refreshTime）
+     */
+    private boolean offHeap = false;
+
+    /**
+     * 是否在一级缓存里存放二级缓存读到的原始字节，第一次读取时才反序列化，适合读多写少的不可变数据。
+     * 业务请求读穿透到二级缓存时马上要用到返回值，仍然会反序列化一次，节省的是预热、快照恢复、后台刷新（refreshTime）
+     * 和UPDATE消息提升到一级缓存但一直没有被读取的条目。
+     * 开启maximumWeight时没有读取过的条目按原始字节数计算权重，第一次读取后按反序列化的对象重新计算，
+     * 从其它节点预热的条目因此会在第一次读取时重新开始计算按写入时间的有效时间
+     */
+    private boolean lazyDeserialize = false;
+
     public FirstCacheSetting() {
     }
 
@@ -71,6 +95,14 @@ public class FirstCacheSetting implements Serializable {
         this.maximumSize = maximumSize;
     }
 
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
     public long getExpireTime() {
         return expireTime;
     }
@@ -95,6 +127,30 @@ public class FirstCacheSetting implements Serializable {
         this.expireMode = expireMode;
     }
 
+    public long getRefreshTime() {
+        return refreshTime;
+    }
+
+    public void setRefreshTime(long refreshTime) {
+        this.refreshTime = refreshTime;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public boolean isLazyDeserialize() {
+        return lazyDeserialize;
+    }
+
+    public void setLazyDeserialize(boolean lazyDeserialize) {
+        this.lazyDeserialize = lazyDeserialize;
+    }
+
     public boolean isAllowNullValues() {
         return false;
     }
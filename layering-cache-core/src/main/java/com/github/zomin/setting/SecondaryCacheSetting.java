@@ -48,6 +48,11 @@ public class SecondaryCacheSetting implements Serializable {
      */
     int magnification = 1;
 
+    /**
+     * 压缩阈值，序列化后不小于该字节数的缓存值压缩后再放到redis，0表示不压缩
+     */
+    private int compressThreshold = 0;
+
     public SecondaryCacheSetting() {
     }
 
@@ -129,4 +134,12 @@ public class SecondaryCacheSetting implements Serializable {
     public void setMagnification(int magnification) {
         this.magnification = magnification;
     }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
 }
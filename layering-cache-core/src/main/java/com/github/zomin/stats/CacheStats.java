@@ -1,6 +1,7 @@
 package com.github.zomin.stats;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
 
 /**
@@ -9,6 +10,10 @@ import java.util.concurrent.atomic.LongAdder;
  * @author kalend.zhang
  */
 public final class CacheStats implements Serializable {
+    private static final int REQUEST_LATENCY = 0;
+    private static final int LOAD_LATENCY = 1;
+    private static final int PUBLISH_LATENCY = 2;
+
     /**
      * 请求缓存总数
      */
@@ -24,6 +29,26 @@ public final class CacheStats implements Serializable {
      */
     private LongAdder cachedMethodRequestTime;
 
+    /**
+     * 累计请求缓存总数，统计数据同步时不清零，供监控指标使用
+     */
+    private final LongAdder totalCacheRequestCount = new LongAdder();
+
+    /**
+     * 累计请求被缓存方法总数，统计数据同步时不清零，供监控指标使用
+     */
+    private final LongAdder totalCachedMethodRequestCount = new LongAdder();
+
+    /**
+     * 累计请求被缓存方法总耗时(毫秒)，统计数据同步时不清零，供监控指标使用
+     */
+    private final LongAdder totalCachedMethodRequestTime = new LongAdder();
+
+    /**
+     * 请求缓存、执行被缓存方法、发布删除一级缓存消息的耗时直方图，第一次记录时创建
+     */
+    private final AtomicReferenceArray<LatencyHistogram> latencies = new AtomicReferenceArray<>(3);
+
     public CacheStats() {
         this.cacheRequestCount = new LongAdder();
         this.cachedMethodRequestCount = new LongAdder();
@@ -37,6 +62,7 @@ public final class CacheStats implements Serializable {
      */
     public void addCacheRequestCount(long add) {
         cacheRequestCount.add(add);
+        totalCacheRequestCount.add(add);
     }
 
     /**
@@ -46,6 +72,7 @@ public final class CacheStats implements Serializable {
      */
     public void addCachedMethodRequestCount(long add) {
         cachedMethodRequestCount.add(add);
+        totalCachedMethodRequestCount.add(add);
     }
 
     /**
@@ -55,6 +82,34 @@ public final class CacheStats implements Serializable {
      */
     public void addCachedMethodRequestTime(long time) {
         cachedMethodRequestTime.add(time);
+        totalCachedMethodRequestTime.add(time);
+    }
+
+    /**
+     * 记录一次请求缓存的耗时
+     *
+     * @param nanos 耗时，纳秒
+     */
+    public void recordRequestLatency(long nanos) {
+        recordLatency(REQUEST_LATENCY, nanos);
+    }
+
+    /**
+     * 记录一次执行被缓存方法的耗时
+     *
+     * @param nanos 耗时，纳秒
+     */
+    public void recordLoadLatency(long nanos) {
+        recordLatency(LOAD_LATENCY, nanos);
+    }
+
+    /**
+     * 记录一次发布删除一级缓存消息的耗时
+     *
+     * @param nanos 耗时，纳秒
+     */
+    public void recordPublishLatency(long nanos) {
+        recordLatency(PUBLISH_LATENCY, nanos);
     }
 
     public LongAdder getCacheRequestCount() {
@@ -81,23 +136,102 @@ public final class CacheStats implements Serializable {
         this.cachedMethodRequestTime = cachedMethodRequestTime;
     }
 
+    public long getTotalCacheRequestCount() {
+        return totalCacheRequestCount.sum();
+    }
+
+    public long getTotalCachedMethodRequestCount() {
+        return totalCachedMethodRequestCount.sum();
+    }
+
+    public long getTotalCachedMethodRequestTime() {
+        return totalCachedMethodRequestTime.sum();
+    }
 
     public long getAndResetCacheRequestCount() {
-        long lodValue = cacheRequestCount.longValue();
-        cacheRequestCount.reset();
-        return lodValue;
+        return cacheRequestCount.sumThenReset();
     }
 
     public long getAndResetCachedMethodRequestCount() {
-        long lodValue = cachedMethodRequestCount.longValue();
-        cachedMethodRequestCount.reset();
-        return lodValue;
+        return cachedMethodRequestCount.sumThenReset();
     }
 
     public long getAndResetCachedMethodRequestTime() {
-        long lodValue = cachedMethodRequestTime.longValue();
-        cachedMethodRequestTime.reset();
-        return lodValue;
+        return cachedMethodRequestTime.sumThenReset();
+    }
+
+    /**
+     * 获取请求缓存耗时直方图各个桶的计数并清零
+     *
+     * @return 各个桶的计数，没有记录过时返回NULL
+     */
+    public long[] getAndResetRequestLatency() {
+        return getAndResetLatency(REQUEST_LATENCY);
+    }
+
+    /**
+     * 获取执行被缓存方法耗时直方图各个桶的计数并清零
+     *
+     * @return 各个桶的计数，没有记录过时返回NULL
+     */
+    public long[] getAndResetLoadLatency() {
+        return getAndResetLatency(LOAD_LATENCY);
+    }
+
+    /**
+     * 获取发布删除一级缓存消息耗时直方图各个桶的计数并清零
+     *
+     * @return 各个桶的计数，没有记录过时返回NULL
+     */
+    public long[] getAndResetPublishLatency() {
+        return getAndResetLatency(PUBLISH_LATENCY);
     }
 
+    /**
+     * 把本周期取出的计数加回去，同步统计数据失败时使用，累计计数在取出时没有清零，不需要加回
+     *
+     * @param requestCount       请求缓存总数
+     * @param methodRequestCount 请求被缓存方法总数
+     * @param methodRequestTime  请求被缓存方法总耗时(毫秒)
+     */
+    public void restoreCount(long requestCount, long methodRequestCount, long methodRequestTime) {
+        cacheRequestCount.add(requestCount);
+        cachedMethodRequestCount.add(methodRequestCount);
+        cachedMethodRequestTime.add(methodRequestTime);
+    }
+
+    /**
+     * 把本周期取出的耗时直方图计数加回去，同步统计数据失败时使用
+     *
+     * @param requestLatency 请求缓存耗时直方图计数，可以为NULL
+     * @param loadLatency    执行被缓存方法耗时直方图计数，可以为NULL
+     * @param publishLatency 发布删除一级缓存消息耗时直方图计数，可以为NULL
+     */
+    public void restoreLatency(long[] requestLatency, long[] loadLatency, long[] publishLatency) {
+        restoreLatency(REQUEST_LATENCY, requestLatency);
+        restoreLatency(LOAD_LATENCY, loadLatency);
+        restoreLatency(PUBLISH_LATENCY, publishLatency);
+    }
+
+    private void recordLatency(int type, long nanos) {
+        LatencyHistogram histogram = latencies.get(type);
+        if (histogram == null) {
+            latencies.compareAndSet(type, null, new LatencyHistogram());
+            histogram = latencies.get(type);
+        }
+        histogram.record(nanos);
+    }
+
+    private long[] getAndResetLatency(int type) {
+        LatencyHistogram histogram = latencies.get(type);
+        return histogram == null ? null : histogram.getAndReset();
+    }
+
+    private void restoreLatency(int type, long[] snapshot) {
+        // 取出时直方图已经创建，不会为NULL
+        LatencyHistogram histogram = latencies.get(type);
+        if (snapshot != null && histogram != null) {
+            histogram.add(snapshot);
+        }
+    }
 }
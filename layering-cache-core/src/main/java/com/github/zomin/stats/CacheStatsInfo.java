@@ -3,6 +3,7 @@ package com.github.zomin.stats;
 import com.github.zomin.setting.LayeringCacheSetting;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * 缓存命中率统计实体类
@@ -66,6 +67,31 @@ public class CacheStatsInfo implements Serializable {
      */
     private long totalLoadTime;
 
+    /**
+     * 一级缓存查询耗时分位值
+     */
+    private LatencyPercentiles firstCacheLatency;
+
+    /**
+     * 二级缓存查询耗时分位值
+     */
+    private LatencyPercentiles secondCacheLatency;
+
+    /**
+     * 执行被缓存方法耗时分位值
+     */
+    private LatencyPercentiles loadLatency;
+
+    /**
+     * 发布删除一级缓存消息耗时分位值
+     */
+    private LatencyPercentiles publishLatency;
+
+    /**
+     * 热点key，按估算的请求次数倒序，开启热点key探测时才有
+     */
+    private List<HotKey> hotKeys;
+
     /**
      * 缓存配置
      */
@@ -168,6 +194,46 @@ public class CacheStatsInfo implements Serializable {
         this.hitRate = hitRate;
     }
 
+    public LatencyPercentiles getFirstCacheLatency() {
+        return firstCacheLatency;
+    }
+
+    public void setFirstCacheLatency(LatencyPercentiles firstCacheLatency) {
+        this.firstCacheLatency = firstCacheLatency;
+    }
+
+    public LatencyPercentiles getSecondCacheLatency() {
+        return secondCacheLatency;
+    }
+
+    public void setSecondCacheLatency(LatencyPercentiles secondCacheLatency) {
+        this.secondCacheLatency = secondCacheLatency;
+    }
+
+    public LatencyPercentiles getLoadLatency() {
+        return loadLatency;
+    }
+
+    public void setLoadLatency(LatencyPercentiles loadLatency) {
+        this.loadLatency = loadLatency;
+    }
+
+    public LatencyPercentiles getPublishLatency() {
+        return publishLatency;
+    }
+
+    public void setPublishLatency(LatencyPercentiles publishLatency) {
+        this.publishLatency = publishLatency;
+    }
+
+    public List<HotKey> getHotKeys() {
+        return hotKeys;
+    }
+
+    public void setHotKeys(List<HotKey> hotKeys) {
+        this.hotKeys = hotKeys;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -206,5 +272,11 @@ public class CacheStatsInfo implements Serializable {
 
         this.setSecondCacheRequestCount(0);
         this.setSecondCacheMissCount(0);
+
+        this.setFirstCacheLatency(null);
+        this.setSecondCacheLatency(null);
+        this.setLoadLatency(null);
+        this.setPublishLatency(null);
+        this.setHotKeys(null);
     }
 }
@@ -0,0 +1,45 @@
+package com.github.zomin.stats;
+
+import java.io.Serializable;
+
+/**
+ * 热点key
+ *
+ * @author kalend.zhang
+ */
+public class HotKey implements Serializable {
+
+    /**
+     * 缓存key
+     */
+    private String key;
+
+    /**
+     * 估算的请求次数
+     */
+    private long count;
+
+    public HotKey() {
+    }
+
+    public HotKey(String key, long count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.zomin.stats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 热点key探测器，固定内存
+ * <p>
+ * 按采样率抽样记录请求的key，用Count-Min Sketch（4行 x 1024列，约16KB）估算每个key的请求次数，
+ * 只保留估算次数最大的topK个key。采样数达到阈值后所有计数减半，让统计结果反映最近一段时间的热点，
+ * 而不是启动以来的累计值。未采中的请求只有一次随机数判断的开销。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class HotKeyTracker {
+
+    /**
+     * Count-Min Sketch 行数，即hash函数个数
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * Count-Min Sketch 列数，必须是2的幂
+     */
+    private static final int WIDTH = 1024;
+
+    /**
+     * 采样数达到该值后所有计数减半
+     */
+    private static final int RESET_SAMPLE_SIZE = WIDTH * 10;
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * 保留的热点key数量
+     */
+    private final int topK;
+
+    /**
+     * 采样率，每多少次请求采样一次
+     */
+    private final int sampleRate;
+
+    private final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+
+    /**
+     * 上次计数减半之后的采样数
+     */
+    private final AtomicInteger sampleCount = new AtomicInteger();
+
+    /**
+     * 当前的热点key和估算的采样次数
+     */
+    private final Map<Object, Long> topKeys = new ConcurrentHashMap<>(16);
+
+    /**
+     * topKeys满了之后其中最小的采样次数，小于等于它的key不用加锁就可以直接丢弃
+     */
+    private volatile long threshold;
+
+    /**
+     * @param topK       保留的热点key数量
+     * @param sampleRate 采样率，每多少次请求采样一次，小于等于1时每次都记录
+     */
+    public HotKeyTracker(int topK, int sampleRate) {
+        this.topK = Math.max(1, topK);
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * 记录一次请求
+     *
+     * @param key 缓存key
+     */
+    public void record(Object key) {
+        if (key == null || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return;
+        }
+        int hash = spread(key.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.incrementAndGet(i * WIDTH + indexOf(hash, i)));
+        }
+        offer(key, estimate);
+        if (sampleCount.incrementAndGet() >= RESET_SAMPLE_SIZE) {
+            reset();
+        }
+    }
+
+    /**
+     * 获取当前的热点key，按估算的请求次数倒序
+     *
+     * @return List&lt;HotKey&gt;
+     */
+    public List<HotKey> getHotKeys() {
+        List<HotKey> hotKeys = new ArrayList<>(topKeys.size());
+        for (Map.Entry<Object, Long> entry : topKeys.entrySet()) {
+            hotKeys.add(new HotKey(String.valueOf(entry.getKey()), entry.getValue() * sampleRate));
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+        return hotKeys;
+    }
+
+    /**
+     * 获取key估算的请求次数
+     *
+     * @param key 缓存key
+     * @return long
+     */
+    public long estimate(Object key) {
+        int hash = spread(key.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.get(i * WIDTH + indexOf(hash, i)));
+        }
+        return (long) estimate * sampleRate;
+    }
+
+    private void offer(Object key, long estimate) {
+        if (estimate <= threshold && topKeys.size() >= topK && !topKeys.containsKey(key)) {
+            return;
+        }
+        synchronized (this) {
+            if (topKeys.containsKey(key) || topKeys.size() < topK) {
+                topKeys.put(key, estimate);
+            } else {
+                Map.Entry<Object, Long> min = minEntry();
+                if (min != null && estimate > min.getValue()) {
+                    topKeys.remove(min.getKey());
+                    topKeys.put(key, estimate);
+                }
+            }
+            updateThreshold();
+        }
+    }
+
+    /**
+     * 所有计数减半
+     */
+    private synchronized void reset() {
+        if (sampleCount.get() < RESET_SAMPLE_SIZE) {
+            return;
+        }
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.getAndUpdate(i, count -> count >>> 1);
+        }
+        topKeys.replaceAll((key, count) -> count >>> 1);
+        topKeys.values().removeIf(count -> count == 0);
+        sampleCount.set(0);
+        updateThreshold();
+    }
+
+    private Map.Entry<Object, Long> minEntry() {
+        Map.Entry<Object, Long> min = null;
+        for (Map.Entry<Object, Long> entry : topKeys.entrySet()) {
+            if (min == null || entry.getValue() < min.getValue()) {
+                min = entry;
+            }
+        }
+        return min;
+    }
+
+    private void updateThreshold() {
+        Map.Entry<Object, Long> min = topKeys.size() >= topK ? minEntry() : null;
+        threshold = min == null ? 0 : min.getValue();
+    }
+
+    private static int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & (WIDTH - 1);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.zomin.stats;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁、固定内存的耗时直方图
+ * <p>
+ * 参考HdrHistogram的对数分桶：小于32纳秒的值每纳秒一个桶，之后每个2的幂区间再均分成16个桶，
+ * 相对误差不超过6.25%。最大记录约68秒，超过的值记在最后一个桶里。
+ * 写入只有一次{@link AtomicLongArray#incrementAndGet(int)}，统计周期结束时整体取出并清零。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class LatencyHistogram implements Serializable {
+
+    /**
+     * 每个2的幂区间均分的桶数，2^SUB_BUCKET_BITS
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 能记录的最大值的二进制位数，2^36纳秒约68秒
+     */
+    private static final int MAX_VALUE_BITS = 36;
+
+    /**
+     * 能记录的最大值，纳秒
+     */
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    /**
+     * 桶数量
+     */
+    public static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    /**
+     * 各个桶的计数
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，纳秒
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketIndex(Math.min(Math.max(nanos, 0), MAX_VALUE)));
+    }
+
+    /**
+     * 获取各个桶的计数并清零
+     *
+     * @return 各个桶的计数，下标是桶序号
+     */
+    public long[] getAndReset() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.getAndSet(i, 0);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 把各个桶的计数加回直方图，同步统计数据失败时使用
+     *
+     * @param snapshot {@link #getAndReset()} 取出的计数
+     */
+    public void add(long[] snapshot) {
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] != 0) {
+                counts.addAndGet(i, snapshot[i]);
+            }
+        }
+    }
+
+    /**
+     * 计算值所在的桶序号
+     *
+     * @param value 值，纳秒
+     * @return 桶序号
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT << 1) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * 桶代表的值，取桶区间的中间值
+     *
+     * @param index 桶序号
+     * @return 值，纳秒
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_BUCKET_COUNT << 1) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return subBucket * width + width / 2;
+    }
+
+    /**
+     * 根据各个桶的计数计算分位值
+     *
+     * @param counts 各个桶的计数
+     * @return {@link LatencyPercentiles}，没有数据时返回NULL
+     */
+    public static LatencyPercentiles percentiles(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return null;
+        }
+        LatencyPercentiles percentiles = new LatencyPercentiles();
+        percentiles.setCount(total);
+        percentiles.setP50(toMicros(valueAt(counts, total, 0.5)));
+        percentiles.setP90(toMicros(valueAt(counts, total, 0.9)));
+        percentiles.setP99(toMicros(valueAt(counts, total, 0.99)));
+        percentiles.setP999(toMicros(valueAt(counts, total, 0.999)));
+        return percentiles;
+    }
+
+    private static long valueAt(long[] counts, long total, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketValue(i);
+            }
+        }
+        return bucketValue(counts.length - 1);
+    }
+
+    private static double toMicros(long nanos) {
+        return Math.round(nanos / (double) TimeUnit.MICROSECONDS.toNanos(1) * 10) / 10.0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.zomin.stats;
+
+import java.io.Serializable;
+
+/**
+ * 耗时分位值，单位微秒
+ *
+ * @author kalend.zhang
+ */
+public class LatencyPercentiles implements Serializable {
+
+    /**
+     * 样本数量
+     */
+    private long count;
+
+    /**
+     * 50分位耗时
+     */
+    private double p50;
+
+    /**
+     * 90分位耗时
+     */
+    private double p90;
+
+    /**
+     * 99分位耗时
+     */
+    private double p99;
+
+    /**
+     * 99.9分位耗时
+     */
+    private double p999;
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public void setP50(double p50) {
+        this.p50 = p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public void setP90(double p90) {
+        this.p90 = p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public void setP99(double p99) {
+        this.p99 = p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public void setP999(double p999) {
+        this.p999 = p999;
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.zomin.stats;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.zomin.cache.Cache;
+import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.offheap.OffHeapCache;
+import com.github.zomin.cache.redis.RedisCache;
+import com.github.zomin.manager.AbstractCacheManager;
+import com.github.zomin.support.LayeringCacheScheduler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把缓存的运行指标注册到Micrometer，可以通过Micrometer的JMX、Prometheus等Registry对外暴露
+ * <p>
+ * 指标直接读取内存中的{@link CacheStats}累计值和Caffeine自带的统计，不依赖Redis里的统计数据，
+ * 也不受统计数据同步时清零的影响。每个缓存按 cache、internalKey、level 三个标签区分，
+ * 一级缓存的命中、淘汰数据和热点key缓存（level=hotKey）的命中次数需要开启统计（stats=true）才会记录。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class LayeringCacheMetrics implements MeterBinder {
+
+    private static final String LEVEL_FIRST = "first";
+    private static final String LEVEL_SECOND = "second";
+    private static final String LEVEL_HOT_KEY = "hotKey";
+
+    private final AbstractCacheManager cacheManager;
+
+    private final Iterable<Tag> tags;
+
+    public LayeringCacheMetrics(AbstractCacheManager cacheManager) {
+        this(cacheManager, Tags.empty());
+    }
+
+    /**
+     * @param cacheManager {@link AbstractCacheManager}
+     * @param tags         所有指标都加上的公共标签
+     */
+    public LayeringCacheMetrics(AbstractCacheManager cacheManager, Iterable<Tag> tags) {
+        this.cacheManager = cacheManager;
+        this.tags = tags;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // 先注册回调再遍历已有缓存，避免漏掉中间新建的缓存，重复注册的指标Micrometer会直接返回已有的
+        cacheManager.addCacheCreateListener(cache -> bindCache(registry, cache));
+        for (Map<String, Cache> cacheMap : cacheManager.getCacheContainer().values()) {
+            for (Cache cache : cacheMap.values()) {
+                bindCache(registry, cache);
+            }
+        }
+        bindScheduler(registry, "layering.cache.scheduler", cacheManager.getScheduler());
+        bindScheduler(registry, "layering.cache.evict.publisher", cacheManager.getEvictPublishScheduler());
+    }
+
+    private void bindCache(MeterRegistry registry, Cache cache) {
+        if (!(cache instanceof LayeringCache)) {
+            return;
+        }
+        LayeringCache layeringCache = (LayeringCache) cache;
+        Tags cacheTags = Tags.concat(tags, "cache", cache.getName(),
+                                     "internalKey", layeringCache.getLayeringCacheSetting().getInternalKey());
+        if (layeringCache.getFirstCache() instanceof CaffeineCache) {
+            bindFirstCache(registry, ((CaffeineCache) layeringCache.getFirstCache()).getNativeCache(), cacheTags.and("level", LEVEL_FIRST));
+        }
+        if (layeringCache.getFirstCache() instanceof OffHeapCache) {
+            OffHeapCache offHeapCache = (OffHeapCache) layeringCache.getFirstCache();
+            bindFirstCache(registry, offHeapCache.getNativeCache(), cacheTags.and("level", LEVEL_FIRST));
+            Gauge.builder("layering.cache.offheap.used", offHeapCache, OffHeapCache::getUsedBytes)
+                .tags(cacheTags).tag("level", LEVEL_FIRST)
+                .description("缓存条目占用的堆外内存字节数")
+                .register(registry);
+            Gauge.builder("layering.cache.offheap.allocated", offHeapCache, OffHeapCache::getAllocatedBytes)
+                .tags(cacheTags).tag("level", LEVEL_FIRST)
+                .description("已申请的堆外内存字节数")
+                .register(registry);
+        }
+        if (layeringCache.getHotKeyCache() != null) {
+            FunctionCounter.builder("layering.cache.gets", layeringCache, LayeringCache::getHotKeyHitCount)
+                .tags(cacheTags).tag("level", LEVEL_HOT_KEY).tag("result", "hit")
+                .description("热点key缓存命中次数")
+                .register(registry);
+        }
+        if (layeringCache.getSecondCache() instanceof RedisCache) {
+            bindSecondCache(registry, (RedisCache) layeringCache.getSecondCache(), cacheTags.and("level", LEVEL_SECOND));
+        }
+    }
+
+    private void bindFirstCache(MeterRegistry registry, com.github.benmanes.caffeine.cache.Cache<Object, ?> nativeCache, Tags tags) {
+        FunctionCounter.builder("layering.cache.gets", nativeCache, c -> c.stats().hitCount())
+            .tags(tags).tag("result", "hit")
+            .description("缓存命中次数")
+            .register(registry);
+        FunctionCounter.builder("layering.cache.gets", nativeCache, c -> c.stats().missCount())
+            .tags(tags).tag("result", "miss")
+            .description("缓存未命中次数")
+            .register(registry);
+        FunctionTimer.builder("layering.cache.loads", nativeCache,
+                              c -> c.stats().loadCount(), c -> c.stats().totalLoadTime(), TimeUnit.NANOSECONDS)
+            .tags(tags)
+            .description("未命中时加载数据的次数和耗时")
+            .register(registry);
+        FunctionCounter.builder("layering.cache.evictions", nativeCache, c -> c.stats().evictionCount())
+            .tags(tags)
+            .description("缓存淘汰次数")
+            .register(registry);
+        Gauge.builder("layering.cache.size", nativeCache, com.github.benmanes.caffeine.cache.Cache::estimatedSize)
+            .tags(tags)
+            .description("缓存条数估计值")
+            .register(registry);
+        Gauge.builder("layering.cache.weight", nativeCache, LayeringCacheMetrics::weightedSize)
+            .tags(tags)
+            .description("缓存权重估计值")
+            .register(registry);
+    }
+
+    private void bindSecondCache(MeterRegistry registry, RedisCache secondCache, Tags tags) {
+        CacheStats cacheStats = secondCache.getCacheStats();
+
+        FunctionCounter.builder("layering.cache.gets", cacheStats,
+                                s -> Math.max(0, s.getTotalCacheRequestCount() - s.getTotalCachedMethodRequestCount()))
+            .tags(tags).tag("result", "hit")
+            .description("缓存命中次数")
+            .register(registry);
+        FunctionCounter.builder("layering.cache.gets", cacheStats, CacheStats::getTotalCachedMethodRequestCount)
+            .tags(tags).tag("result", "miss")
+            .description("缓存未命中次数")
+            .register(registry);
+        FunctionTimer.builder("layering.cache.loads", cacheStats, CacheStats::getTotalCachedMethodRequestCount,
+                              CacheStats::getTotalCachedMethodRequestTime, TimeUnit.MILLISECONDS)
+            .tags(tags)
+            .description("未命中时加载数据的次数和耗时")
+            .register(registry);
+        Gauge.builder("layering.cache.refresh.pending", secondCache, RedisCache::getPendingRefreshCount)
+            .tags(tags)
+            .description("已提交还没执行完的强制刷新任务数")
+            .register(registry);
+        FunctionCounter.builder("layering.cache.lock.waits", secondCache, RedisCache::getLockWaitCount)
+            .tags(tags)
+            .description("等待其它线程或其它节点加载数据的次数")
+            .register(registry);
+    }
+
+    private void bindScheduler(MeterRegistry registry, String name, LayeringCacheScheduler scheduler) {
+        Gauge.builder(name + ".queue.size", scheduler, LayeringCacheScheduler::getQueueSize)
+            .tags(tags)
+            .description("后台任务队列中等待执行的任务数")
+            .register(registry);
+        Gauge.builder(name + ".active", scheduler, LayeringCacheScheduler::getActiveCount)
+            .tags(tags)
+            .description("正在执行的后台任务数")
+            .register(registry);
+        FunctionCounter.builder(name + ".rejected", scheduler, LayeringCacheScheduler::getRejectedCount)
+            .tags(tags)
+            .description("因队列已满被拒绝的后台任务数")
+            .register(registry);
+        FunctionTimer.builder(name + ".tasks", scheduler, LayeringCacheScheduler::getExecutedCount,
+                              LayeringCacheScheduler::getTotalExecuteTime, TimeUnit.MILLISECONDS)
+            .tags(tags)
+            .description("后台任务的执行次数和耗时")
+            .register(registry);
+    }
+
+    /**
+     * 按权重淘汰时返回当前权重，否则返回NaN
+     */
+    private static double weightedSize(com.github.benmanes.caffeine.cache.Cache<Object, ?> cache) {
+        Optional<? extends Policy.Eviction<Object, ?>> eviction = cache.policy().eviction();
+        if (eviction.isPresent() && eviction.get().weightedSize().isPresent()) {
+            return eviction.get().weightedSize().getAsLong();
+        }
+        return Double.NaN;
+    }
+}
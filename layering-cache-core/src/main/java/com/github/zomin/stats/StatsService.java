@@ -6,30 +6,40 @@ import com.github.zomin.cache.LayeringCache;
 import com.github.zomin.manager.AbstractCacheManager;
 import com.github.zomin.manager.CacheManager;
 import com.github.zomin.setting.LayeringCacheSetting;
-import com.github.zomin.support.Lock;
 import com.github.zomin.util.RedisHelper;
 import com.github.zomin.util.StringUtils;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.CollectionUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 统计服务
+ * <p>
+ * 每个缓存的统计数据保存在一个hash里，计数字段通过HINCRBY在redis服务端累加，多个节点同时写入不需要加锁，
+ * 每个统计周期所有缓存的增量放在一个pipeline里一次往返写入。
+ * 旧版本把统计数据整体序列化成字符串保存，滚动升级期间旧节点还会继续写字符串，所以hash格式使用新的key前缀，
+ * 避免对同一个key执行hash命令时返回WRONGTYPE。
+ * </p>
  *
  * @author kalend.zhang
  */
@@ -37,24 +47,42 @@ public class StatsService {
     private static Logger logger = LoggerFactory.getLogger(StatsService.class);
 
     /**
-     * 缓存统计数据前缀
+     * 缓存统计数据前缀，hash格式
      */
-    public static final String CACHE_STATS_KEY_PREFIX = "layering:cache:cache_stats_info:";
+    public static final String CACHE_STATS_KEY_PREFIX = "layering:cache:cache_stats_hash:";
 
     /**
-     * 定时任务线程池
-     * getExecutor
-     * @return java.util.concurrent.ScheduledThreadPoolExecutor
-     **/
-    public static ScheduledThreadPoolExecutor getExecutor() {
-        ThreadFactory threadFactory =
-            new ThreadFactoryBuilder().setNameFormat("Scheduled-pool-%d").build();
-        return new ScheduledThreadPoolExecutor(50,
-                                               threadFactory,
-                                               new ThreadPoolExecutor.AbortPolicy());
-    }
+     * 缓存统计数据有效时间，单位秒
+     */
+    private static final long CACHE_STATS_EXPIRE_TIME = TimeUnit.HOURS.toSeconds(24);
+
+    private static final String CACHE_NAME = "cacheName";
+    private static final String INTERNAL_KEY = "internalKey";
+    private static final String DEPICT = "depict";
+    private static final String LAYERING_CACHE_SETTING = "layeringCacheSetting";
+    private static final String REQUEST_COUNT = "requestCount";
+    private static final String MISS_COUNT = "missCount";
+    private static final String TOTAL_LOAD_TIME = "totalLoadTime";
+    private static final String FIRST_CACHE_REQUEST_COUNT = "firstCacheRequestCount";
+    private static final String FIRST_CACHE_MISS_COUNT = "firstCacheMissCount";
+    private static final String SECOND_CACHE_REQUEST_COUNT = "secondCacheRequestCount";
+    private static final String SECOND_CACHE_MISS_COUNT = "secondCacheMissCount";
+    private static final String FIRST_CACHE_LATENCY = "firstCacheLatency";
+    private static final String SECOND_CACHE_LATENCY = "secondCacheLatency";
+    private static final String LOAD_LATENCY = "loadLatency";
+    private static final String PUBLISH_LATENCY = "publishLatency";
+    private static final String HOT_KEYS = "hotKeys";
 
+    /**
+     * 耗时直方图字段名和桶序号之间的分隔符，字段名如 loadLatency:213
+     */
+    private static final String LATENCY_BUCKET_SEPARATOR = ":";
 
+    /**
+     * 累加的计数字段
+     */
+    private static final String[] COUNTER_FIELDS = {REQUEST_COUNT, MISS_COUNT, TOTAL_LOAD_TIME,
+        FIRST_CACHE_REQUEST_COUNT, FIRST_CACHE_MISS_COUNT, SECOND_CACHE_REQUEST_COUNT, SECOND_CACHE_MISS_COUNT};
 
     /**
      * {@link AbstractCacheManager }
@@ -67,25 +95,46 @@ public class StatsService {
      * @param cacheNameParam 缓存名称
      * @return List&lt;CacheStatsInfo&gt;
      */
+    @SuppressWarnings("unchecked")
     public List<CacheStatsInfo> listCacheStats(String cacheNameParam) {
         if(logger.isDebugEnabled()) {
             logger.debug("获取缓存统计数据");
         }
 
-        Set<String> layeringCacheKeys = RedisHelper.scan(cacheManager.getRedisTemplate(), CACHE_STATS_KEY_PREFIX + "*");
+        RedisTemplate<String, Object> redisTemplate = cacheManager.getRedisTemplate();
+        Set<String> layeringCacheKeys = RedisHelper.scan(redisTemplate, CACHE_STATS_KEY_PREFIX + "*");
         if (CollectionUtils.isEmpty(layeringCacheKeys)) {
             return Collections.emptyList();
         }
-        // 遍历找出对应统计数据
-        List<CacheStatsInfo> statsList = new ArrayList<>();
+        // 找出对应统计数据的key
+        List<String> keys = new ArrayList<>();
         for (String key : layeringCacheKeys) {
             if (StringUtils.isNotBlank(cacheNameParam) && !key.startsWith(CACHE_STATS_KEY_PREFIX + cacheNameParam)) {
                 continue;
             }
+            keys.add(key);
+        }
+
+        // 使用pipeline一次往返读取所有统计数据
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for (String key : keys) {
+                connection.hGetAll(keySerializer.serialize(key));
+            }
+            try {
+                return connection.closePipeline();
+            } catch (RedisPipelineException e) {
+                // 个别key读取失败时跳过，失败的命令在结果里是异常对象
+                logger.warn("读取缓存统计数据部分失败：{}", e.getMessage());
+                return e.getPipelineResult();
+            }
+        });
 
-            CacheStatsInfo cacheStats = (CacheStatsInfo) cacheManager.getRedisTemplate().opsForValue().get(key);
-            if (!Objects.isNull(cacheStats)) {
-                statsList.add(cacheStats);
+        List<CacheStatsInfo> statsList = new ArrayList<>();
+        for (Object result : results) {
+            if (result instanceof Map && !((Map) result).isEmpty()) {
+                statsList.add(toCacheStatsInfo((Map<byte[], byte[]>) result));
             }
         }
 
@@ -95,89 +144,120 @@ public class StatsService {
     /**
      * 同步缓存统计list
      *
+     * @param scheduler 执行定时任务的线程池
      * @param initialDelay 执行延时时间
      * @param delay 执行间隔
+     * @return 定时任务，停止时取消
      **/
-    public void syncCacheStats(long initialDelay, long delay) {
-        RedisTemplate<String, Object> redisTemplate = cacheManager.getRedisTemplate();
+    public ScheduledFuture<?> syncCacheStats(ScheduledExecutorService scheduler, long initialDelay, long delay) {
         // 清空统计数据
         resetCacheStat();
-        getExecutor().scheduleWithFixedDelay(() -> {
+        return scheduler.scheduleWithFixedDelay(() -> {
             if(logger.isDebugEnabled()) {
                 logger.debug("执行缓存统计数据采集定时任务");
             }
-            Set<AbstractCacheManager> cacheManagers = AbstractCacheManager.getCacheManager();
-            for (AbstractCacheManager abstractCacheManager : cacheManagers) {
-                // 获取CacheManager
-                CacheManager cacheManager = abstractCacheManager;
-                Collection<String> cacheNames = cacheManager.getCacheNames();
-                for (String cacheName : cacheNames) {
-                    // 获取Cache
-                    Collection<Cache> caches = cacheManager.getCache(cacheName);
-                    for (Cache cache : caches) {
-                        LayeringCache layeringCache = (LayeringCache) cache;
-                        LayeringCacheSetting layeringCacheSetting = layeringCache.getLayeringCacheSetting();
-                        // 加锁并增量缓存统计数据，缓存key=固定前缀 +缓存名称加 + 内部缓存名
-                        String redisKey = CACHE_STATS_KEY_PREFIX + cacheName + layeringCacheSetting.getInternalKey();
-                        Lock lock = new Lock(redisTemplate, redisKey, 60, 5000);
-                        try {
-                            if (lock.tryLock()) {
-
-                                CacheStatsInfo cacheStats = (CacheStatsInfo) redisTemplate.opsForValue().get(redisKey);
-
-                                if (Objects.isNull(cacheStats)) {
-                                    cacheStats = new CacheStatsInfo();
-                                }
-
-                                // 设置缓存唯一标示
-                                cacheStats.setCacheName(cacheName);
-                                cacheStats.setInternalKey(layeringCacheSetting.getInternalKey());
-
-                                cacheStats.setDepict(layeringCacheSetting.getDepict());
-                                // 设置缓存配置信息
-                                cacheStats.setLayeringCacheSetting(layeringCacheSetting);
-
-                                // 设置缓存统计数据
-                                CacheStats layeringCacheStats = layeringCache.getCacheStats();
-                                CacheStats firstCacheStats = layeringCache.getFirstCache().getCacheStats();
-                                CacheStats secondCacheStats = layeringCache.getSecondCache().getCacheStats();
-
-                                // 清空加载缓存时间
-                                firstCacheStats.getAndResetCachedMethodRequestTime();
-                                secondCacheStats.getAndResetCachedMethodRequestTime();
-
-                                cacheStats.setRequestCount(cacheStats.getRequestCount() + layeringCacheStats.getAndResetCacheRequestCount());
-                                cacheStats.setMissCount(cacheStats.getMissCount() + layeringCacheStats.getAndResetCachedMethodRequestCount());
-                                cacheStats.setTotalLoadTime(cacheStats.getTotalLoadTime() + layeringCacheStats.getAndResetCachedMethodRequestTime());
-                                cacheStats.setHitRate((cacheStats.getRequestCount() - cacheStats.getMissCount()) / (double) cacheStats.getRequestCount() * 100);
-
-                                cacheStats.setFirstCacheRequestCount(cacheStats.getFirstCacheRequestCount() + firstCacheStats.getAndResetCacheRequestCount());
-                                cacheStats.setFirstCacheMissCount(cacheStats.getFirstCacheMissCount() + firstCacheStats.getAndResetCachedMethodRequestCount());
-
-                                cacheStats.setSecondCacheRequestCount(cacheStats.getSecondCacheRequestCount() + secondCacheStats.getAndResetCacheRequestCount());
-                                cacheStats.setSecondCacheMissCount(cacheStats.getSecondCacheMissCount() + secondCacheStats.getAndResetCachedMethodRequestCount());
-
-                                // 将缓存统计数据写到redis
-                                redisTemplate.opsForValue().set(redisKey, cacheStats, 24, TimeUnit.HOURS);
-
-                                logger.info("Layering Cache 统计信息：{}", JSON.toJSONString(cacheStats));
-                            }
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
-                        } finally {
-                            lock.unlock();
-                        }
-                    }
-                }
+            try {
+                flushCacheStats();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
             }
         }, initialDelay, delay, TimeUnit.MINUTES);
     }
 
     /**
-     * 关闭线程池
+     * 将所有缓存本周期的统计增量写到redis
+     * <p>
+     * 先取出所有缓存的增量再执行pipeline，写入失败时把增量加回计数器，下个周期重新写入，不会丢掉一个周期的统计数据。
+     * 部分命令已经执行成功时，这部分增量会在下个周期重复累加。
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    public void flushCacheStats() {
+        List<CacheStatsDelta> deltas = snapshotCacheStats();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        RedisTemplate<String, Object> redisTemplate = cacheManager.getRedisTemplate();
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (CacheStatsDelta delta : deltas) {
+                    writeCacheStats(connection, keySerializer, delta);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("同步缓存统计数据失败，统计增量留到下个周期写入：{}", e.getMessage());
+            for (CacheStatsDelta delta : deltas) {
+                delta.restore();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 取出所有缓存本周期的统计增量并清零
+     */
+    private List<CacheStatsDelta> snapshotCacheStats() {
+        List<CacheStatsDelta> deltas = new ArrayList<>();
+        Set<AbstractCacheManager> cacheManagers = AbstractCacheManager.getCacheManager();
+        for (AbstractCacheManager abstractCacheManager : cacheManagers) {
+            // 获取CacheManager
+            CacheManager cacheManager = abstractCacheManager;
+            Collection<String> cacheNames = cacheManager.getCacheNames();
+            for (String cacheName : cacheNames) {
+                // 获取Cache
+                Collection<Cache> caches = cacheManager.getCache(cacheName);
+                for (Cache cache : caches) {
+                    deltas.add(new CacheStatsDelta(cacheName, (LayeringCache) cache));
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * 在pipeline里写入一个缓存的统计增量
      */
-    public void shutdownExecutor() {
-        getExecutor().shutdown();
+    private static void writeCacheStats(RedisConnection connection, RedisSerializer<String> keySerializer, CacheStatsDelta delta) {
+        LayeringCache layeringCache = delta.layeringCache;
+        LayeringCacheSetting layeringCacheSetting = layeringCache.getLayeringCacheSetting();
+        // 缓存key=固定前缀 +缓存名称加 + 内部缓存名
+        byte[] rawKey = keySerializer.serialize(CACHE_STATS_KEY_PREFIX + delta.cacheName + layeringCacheSetting.getInternalKey());
+
+        // 设置缓存唯一标示和缓存配置信息，每个节点写的都一样
+        Map<byte[], byte[]> info = new HashMap<>(8);
+        info.put(bytes(CACHE_NAME), bytes(delta.cacheName));
+        info.put(bytes(INTERNAL_KEY), bytes(layeringCacheSetting.getInternalKey()));
+        if (layeringCacheSetting.getDepict() != null) {
+            info.put(bytes(DEPICT), bytes(layeringCacheSetting.getDepict()));
+        }
+        info.put(bytes(LAYERING_CACHE_SETTING), bytes(JSON.toJSONString(layeringCacheSetting)));
+        // 热点key是本节点的快照，多个节点以最后写入的为准
+        if (layeringCache.getHotKeyTracker() != null) {
+            info.put(bytes(HOT_KEYS), bytes(JSON.toJSONString(layeringCache.getHotKeyTracker().getHotKeys())));
+        }
+        connection.hMSet(rawKey, info);
+
+        // 累加缓存统计数据
+        hIncrBy(connection, rawKey, REQUEST_COUNT, delta.requestCount);
+        hIncrBy(connection, rawKey, MISS_COUNT, delta.missCount);
+        hIncrBy(connection, rawKey, TOTAL_LOAD_TIME, delta.totalLoadTime);
+
+        hIncrBy(connection, rawKey, FIRST_CACHE_REQUEST_COUNT, delta.firstCacheRequestCount);
+        hIncrBy(connection, rawKey, FIRST_CACHE_MISS_COUNT, delta.firstCacheMissCount);
+
+        hIncrBy(connection, rawKey, SECOND_CACHE_REQUEST_COUNT, delta.secondCacheRequestCount);
+        hIncrBy(connection, rawKey, SECOND_CACHE_MISS_COUNT, delta.secondCacheMissCount);
+
+        // 累加耗时直方图，每个非空的桶一个字段
+        hIncrBy(connection, rawKey, FIRST_CACHE_LATENCY, delta.firstCacheLatency);
+        hIncrBy(connection, rawKey, SECOND_CACHE_LATENCY, delta.secondCacheLatency);
+        hIncrBy(connection, rawKey, LOAD_LATENCY, delta.firstLoadLatency);
+        hIncrBy(connection, rawKey, LOAD_LATENCY, delta.secondLoadLatency);
+        hIncrBy(connection, rawKey, PUBLISH_LATENCY, delta.publishLatency);
+
+        connection.expire(rawKey, CACHE_STATS_EXPIRE_TIME);
     }
 
     /**
@@ -199,18 +279,185 @@ public class StatsService {
      *
      * @param redisKey redisKey
      */
+    @SuppressWarnings("unchecked")
     public void resetCacheStat(String redisKey) {
         RedisTemplate<String, Object> redisTemplate = cacheManager.getRedisTemplate();
-        CacheStatsInfo cacheStats = (CacheStatsInfo)redisTemplate.opsForValue().get(redisKey);
-
-        if (Objects.nonNull(cacheStats)) {
-            cacheStats.clearStatsInfo();
-            // 将缓存统计数据写到redis
-            redisTemplate.opsForValue().set(redisKey, cacheStats, 24, TimeUnit.HOURS);
-        }
+        byte[] rawKey = ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(redisKey);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            DataType type = connection.type(rawKey);
+            if (type == DataType.HASH) {
+                Map<byte[], byte[]> counters = new HashMap<>(16);
+                for (String field : COUNTER_FIELDS) {
+                    counters.put(bytes(field), bytes("0"));
+                }
+                connection.hMSet(rawKey, counters);
+                // 删除耗时直方图的桶和热点key
+                List<byte[]> buckets = new ArrayList<>();
+                for (byte[] field : connection.hGetAll(rawKey).keySet()) {
+                    if (string(field).contains(LATENCY_BUCKET_SEPARATOR) || HOT_KEYS.equals(string(field))) {
+                        buckets.add(field);
+                    }
+                }
+                if (!buckets.isEmpty()) {
+                    connection.hDel(rawKey, buckets.toArray(new byte[0][]));
+                }
+            } else if (type != null && type != DataType.NONE) {
+                // 旧版本整体序列化保存的统计数据，直接删除，下个统计周期重新生成
+                connection.del(rawKey);
+            }
+            return null;
+        });
     }
 
     public void setCacheManager(AbstractCacheManager cacheManager) {
         this.cacheManager = cacheManager;
     }
+
+    /**
+     * 累加计数字段，增量为0时不发送命令
+     */
+    private static void hIncrBy(RedisConnection connection, byte[] rawKey, String field, long delta) {
+        if (delta != 0) {
+            connection.hIncrBy(rawKey, bytes(field), delta);
+        }
+    }
+
+    /**
+     * 累加耗时直方图各个桶的计数，字段名为 直方图名称:桶序号
+     */
+    private static void hIncrBy(RedisConnection connection, byte[] rawKey, String name, long[] counts) {
+        if (counts == null) {
+            return;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            hIncrBy(connection, rawKey, name + LATENCY_BUCKET_SEPARATOR + i, counts[i]);
+        }
+    }
+
+    /**
+     * 将统计数据hash转换成{@link CacheStatsInfo}
+     *
+     * @param hash 统计数据hash
+     * @return CacheStatsInfo
+     */
+    private static CacheStatsInfo toCacheStatsInfo(Map<byte[], byte[]> hash) {
+        Map<String, String> fields = new HashMap<>(16);
+        Map<String, long[]> latencies = new HashMap<>(8);
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+            String field = string(entry.getKey());
+            int separator = field.indexOf(LATENCY_BUCKET_SEPARATOR);
+            if (separator < 0) {
+                fields.put(field, string(entry.getValue()));
+                continue;
+            }
+            int bucket = Integer.parseInt(field.substring(separator + 1));
+            if (bucket < LatencyHistogram.BUCKET_COUNT) {
+                latencies.computeIfAbsent(field.substring(0, separator), k -> new long[LatencyHistogram.BUCKET_COUNT])[bucket]
+                    += toLong(string(entry.getValue()));
+            }
+        }
+
+        CacheStatsInfo cacheStats = new CacheStatsInfo();
+        cacheStats.setCacheName(fields.get(CACHE_NAME));
+        cacheStats.setInternalKey(fields.get(INTERNAL_KEY));
+        cacheStats.setDepict(fields.get(DEPICT));
+        String setting = fields.get(LAYERING_CACHE_SETTING);
+        if (StringUtils.isNotBlank(setting)) {
+            cacheStats.setLayeringCacheSetting(JSON.parseObject(setting, LayeringCacheSetting.class));
+        }
+
+        cacheStats.setRequestCount(toLong(fields.get(REQUEST_COUNT)));
+        cacheStats.setMissCount(toLong(fields.get(MISS_COUNT)));
+        cacheStats.setTotalLoadTime(toLong(fields.get(TOTAL_LOAD_TIME)));
+        cacheStats.setFirstCacheRequestCount(toLong(fields.get(FIRST_CACHE_REQUEST_COUNT)));
+        cacheStats.setFirstCacheMissCount(toLong(fields.get(FIRST_CACHE_MISS_COUNT)));
+        cacheStats.setSecondCacheRequestCount(toLong(fields.get(SECOND_CACHE_REQUEST_COUNT)));
+        cacheStats.setSecondCacheMissCount(toLong(fields.get(SECOND_CACHE_MISS_COUNT)));
+        cacheStats.setFirstCacheLatency(toPercentiles(latencies.get(FIRST_CACHE_LATENCY)));
+        cacheStats.setSecondCacheLatency(toPercentiles(latencies.get(SECOND_CACHE_LATENCY)));
+        cacheStats.setLoadLatency(toPercentiles(latencies.get(LOAD_LATENCY)));
+        cacheStats.setPublishLatency(toPercentiles(latencies.get(PUBLISH_LATENCY)));
+        String hotKeys = fields.get(HOT_KEYS);
+        if (StringUtils.isNotBlank(hotKeys)) {
+            cacheStats.setHotKeys(JSON.parseArray(hotKeys, HotKey.class));
+        }
+        if (cacheStats.getRequestCount() > 0) {
+            cacheStats.setHitRate((cacheStats.getRequestCount() - cacheStats.getMissCount()) / (double) cacheStats.getRequestCount() * 100);
+        }
+        return cacheStats;
+    }
+
+    private static LatencyPercentiles toPercentiles(long[] counts) {
+        return counts == null ? null : LatencyHistogram.percentiles(counts);
+    }
+
+    private static long toLong(String value) {
+        return StringUtils.isBlank(value) ? 0 : Long.parseLong(value);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一个缓存本周期的统计增量
+     */
+    private static class CacheStatsDelta {
+        private final String cacheName;
+        private final LayeringCache layeringCache;
+        private final long requestCount;
+        private final long missCount;
+        private final long totalLoadTime;
+        private final long firstCacheRequestCount;
+        private final long firstCacheMissCount;
+        private final long secondCacheRequestCount;
+        private final long secondCacheMissCount;
+        private final long[] firstCacheLatency;
+        private final long[] secondCacheLatency;
+        private final long[] firstLoadLatency;
+        private final long[] secondLoadLatency;
+        private final long[] publishLatency;
+
+        CacheStatsDelta(String cacheName, LayeringCache layeringCache) {
+            this.cacheName = cacheName;
+            this.layeringCache = layeringCache;
+            CacheStats layeringCacheStats = layeringCache.getCacheStats();
+            CacheStats firstCacheStats = layeringCache.getFirstCache().getCacheStats();
+            CacheStats secondCacheStats = layeringCache.getSecondCache().getCacheStats();
+
+            // 清空加载缓存时间
+            firstCacheStats.getAndResetCachedMethodRequestTime();
+            secondCacheStats.getAndResetCachedMethodRequestTime();
+
+            this.requestCount = layeringCacheStats.getAndResetCacheRequestCount();
+            this.missCount = layeringCacheStats.getAndResetCachedMethodRequestCount();
+            this.totalLoadTime = layeringCacheStats.getAndResetCachedMethodRequestTime();
+            this.firstCacheRequestCount = firstCacheStats.getAndResetCacheRequestCount();
+            this.firstCacheMissCount = firstCacheStats.getAndResetCachedMethodRequestCount();
+            this.secondCacheRequestCount = secondCacheStats.getAndResetCacheRequestCount();
+            this.secondCacheMissCount = secondCacheStats.getAndResetCachedMethodRequestCount();
+            this.firstCacheLatency = firstCacheStats.getAndResetRequestLatency();
+            this.secondCacheLatency = secondCacheStats.getAndResetRequestLatency();
+            this.firstLoadLatency = firstCacheStats.getAndResetLoadLatency();
+            this.secondLoadLatency = secondCacheStats.getAndResetLoadLatency();
+            this.publishLatency = firstCacheStats.getAndResetPublishLatency();
+        }
+
+        /**
+         * 把增量加回各个缓存的计数器
+         */
+        void restore() {
+            layeringCache.getCacheStats().restoreCount(requestCount, missCount, totalLoadTime);
+            CacheStats firstCacheStats = layeringCache.getFirstCache().getCacheStats();
+            firstCacheStats.restoreCount(firstCacheRequestCount, firstCacheMissCount, 0);
+            firstCacheStats.restoreLatency(firstCacheLatency, firstLoadLatency, publishLatency);
+            CacheStats secondCacheStats = layeringCache.getSecondCache().getCacheStats();
+            secondCacheStats.restoreCount(secondCacheRequestCount, secondCacheMissCount, 0);
+            secondCacheStats.restoreLatency(secondCacheLatency, secondLoadLatency, null);
+        }
+    }
 }
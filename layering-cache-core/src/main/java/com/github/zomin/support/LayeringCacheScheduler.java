@@ -0,0 +1,197 @@
+package com.github.zomin.support;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存后台任务共用的定时线程池，由{@link com.github.zomin.manager.AbstractCacheManager}创建和关闭
+ * <p>
+ * 统计数据同步、一级缓存同步（{@link com.github.zomin.sync.SyncSevice}）、一级缓存按refreshTime异步刷新、二级缓存强制刷新
+ * 都在这个线程池里执行。合并发布删除消息使用单独的单线程实例，不会排在加载数据等耗时任务后面。
+ * 一次性任务的等待队列有上限，超过上限直接拒绝并计数；周期任务不受限制。
+ * 同时记录队列深度、任务执行次数和执行耗时，方便观察后台任务是否积压。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class LayeringCacheScheduler extends ScheduledThreadPoolExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(LayeringCacheScheduler.class);
+
+    /**
+     * 一次性任务等待队列的最大长度
+     */
+    private final int queueCapacity;
+
+    /**
+     * 任务开始执行的时间，纳秒
+     */
+    private final ThreadLocal<Long> startTime = new ThreadLocal<>();
+
+    /**
+     * 已执行的任务次数，周期任务每执行一次算一次
+     */
+    private final LongAdder executedCount = new LongAdder();
+
+    /**
+     * 任务执行总耗时，纳秒
+     */
+    private final LongAdder totalExecuteTime = new LongAdder();
+
+    /**
+     * 单次任务执行最大耗时，纳秒
+     */
+    private final AtomicLong maxExecuteTime = new AtomicLong();
+
+    /**
+     * 被拒绝的任务数
+     */
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param poolSize      线程数
+     * @param queueCapacity 一次性任务等待队列的最大长度
+     */
+    public LayeringCacheScheduler(int poolSize, int queueCapacity) {
+        this("layering-cache-scheduler", poolSize, queueCapacity);
+    }
+
+    /**
+     * @param threadNamePrefix 线程名称前缀
+     * @param poolSize         线程数
+     * @param queueCapacity    一次性任务等待队列的最大长度
+     */
+    public LayeringCacheScheduler(String threadNamePrefix, int poolSize, int queueCapacity) {
+        super(Math.max(1, poolSize),
+              new ThreadFactoryBuilder().setNameFormat(threadNamePrefix + "-%d").setDaemon(true).build(),
+              new ThreadPoolExecutor.AbortPolicy());
+        this.queueCapacity = Math.max(1, queueCapacity);
+        // 取消的任务立即从队列移除，避免停止后的周期任务占用队列
+        setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        checkCapacity();
+        // 获取父线程MDC中的内容，必须在提交之前获取
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return super.schedule(() -> runWithMdc(command, context), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        checkCapacity();
+        return super.schedule(callable, delay, unit);
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        startTime.set(System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        Long start = startTime.get();
+        if (start == null) {
+            return;
+        }
+        startTime.remove();
+        long time = System.nanoTime() - start;
+        executedCount.increment();
+        totalExecuteTime.add(time);
+        maxExecuteTime.accumulateAndGet(time, Math::max);
+    }
+
+    /**
+     * 一次性任务超过队列上限时拒绝
+     */
+    private void checkCapacity() {
+        if (getQueue().size() >= queueCapacity) {
+            rejectedCount.increment();
+            throw new RejectedExecutionException("layering-cache 后台任务队列已满，队列长度：" + queueCapacity);
+        }
+    }
+
+    /**
+     * 在子线程中恢复父线程的MDC内容再执行任务
+     *
+     * @param runnable {@link Runnable}
+     * @param context  父线程MDC内容
+     */
+    private void runWithMdc(Runnable runnable, Map<String, String> context) {
+        if (context != null) {
+            try {
+                MDC.setContextMap(context);
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        try {
+            runnable.run();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * 获取当前等待执行的任务数，包含等待下次执行的周期任务
+     *
+     * @return int
+     */
+    public int getQueueSize() {
+        return getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    /**
+     * 获取任务执行总耗时，单位毫秒
+     *
+     * @return long
+     */
+    public long getTotalExecuteTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalExecuteTime.sum());
+    }
+
+    /**
+     * 获取单次任务执行最大耗时，单位毫秒
+     *
+     * @return long
+     */
+    public long getMaxExecuteTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxExecuteTime.get());
+    }
+
+    /**
+     * 获取任务平均执行耗时，单位毫秒
+     *
+     * @return double
+     */
+    public double getAverageExecuteTime() {
+        long count = executedCount.sum();
+        return count == 0 ? 0 : totalExecuteTime.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
@@ -10,7 +10,6 @@ import com.github.zomin.setting.LayeringCacheSetting;
 import com.github.zomin.setting.SecondaryCacheSetting;
 import com.github.zomin.stats.StatsService;
 import com.github.zomin.support.Lock;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -20,9 +19,8 @@ import org.springframework.util.ObjectUtils;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,33 +36,18 @@ public class SyncSevice {
      */
     private AbstractCacheManager cacheManager;
 
-    /**
-     * 定时任务线程池
-     */
-    /**
-     * 定时任务线程池
-     * getExecutor
-     *
-     * @return java.util.concurrent.ScheduledThreadPoolExecutor
-     **/
-    public static ScheduledThreadPoolExecutor getExecutor() {
-        ThreadFactory threadFactory =
-            new ThreadFactoryBuilder().setNameFormat("Scheduled-pool-%d").build();
-        return new ScheduledThreadPoolExecutor(50,
-                                               threadFactory,
-                                               new ThreadPoolExecutor.AbortPolicy());
-    }
-
     /**
      * 同步缓存 syncCache
      *
+     * @param scheduler 执行定时任务的线程池
      * @param syncCacheNames 指定同步Cache名称
      * @param initialDelay 初始化延时时间
      * @param delay 执行频率
+     * @return 定时任务，停止时取消
      **/
-    public void syncCache(List<String> syncCacheNames, long initialDelay, long delay) {
+    public ScheduledFuture<?> syncCache(ScheduledExecutorService scheduler, List<String> syncCacheNames, long initialDelay, long delay) {
         RedisTemplate<String, Object> redisTemplate = cacheManager.getRedisTemplate();
-        getExecutor().scheduleWithFixedDelay(() -> {
+        return scheduler.scheduleWithFixedDelay(() -> {
             if(log.isDebugEnabled()) {
                 log.debug(Thread.currentThread().getName() + "执行缓存主动刷新定时任务");
             }
@@ -135,12 +118,6 @@ public class SyncSevice {
 
 
 
-    /**
-     * 关闭线程池
-     */
-    public void shutdownExecutor() {
-        getExecutor().shutdown();
-    }
 
     public void setCacheManager(AbstractCacheManager cacheManager) {
         this.cacheManager = cacheManager;
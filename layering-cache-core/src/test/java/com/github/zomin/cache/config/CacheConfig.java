@@ -16,6 +16,9 @@ public class CacheConfig {
         LayeringCacheManager layeringCacheManager = new LayeringCacheManager(redisTemplate);
         // 开启统计功能
         layeringCacheManager.setStats(true);
+        // 开启热点key探测，每次请求都采样
+        layeringCacheManager.setHotKey(true);
+        layeringCacheManager.setHotKeySampleRate(1);
         return layeringCacheManager;
     }
 
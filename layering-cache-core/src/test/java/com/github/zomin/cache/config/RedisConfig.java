@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.zomin.redis.embedded.EmbeddedRedisServer;
 import com.github.zomin.redis.serializer.RedisKeySerializer;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Value;
@@ -38,6 +39,8 @@ public class RedisConfig {
     private String password;
     @Value("${spring.redis.database}")
     private int database;
+    @Value("${spring.redis.embedded:false}")
+    private boolean embedded;
     @Value("${spring.redis.jedis.pool.max-active:8}")
     private int maxActive;
     @Value("${spring.redis.jedis.pool.max-idle:8}")
@@ -101,11 +104,25 @@ public class RedisConfig {
         return builder.build();
     }
 
+    /**
+     * 进程内的redis替身，spring.redis.embedded=true 时启动
+     *
+     * @return EmbeddedRedisServer
+     */
+    @Bean(destroyMethod = "stop")
+    public EmbeddedRedisServer embeddedRedisServer() {
+        EmbeddedRedisServer server = new EmbeddedRedisServer();
+        if (embedded) {
+            server.start();
+        }
+        return server;
+    }
+
     @Bean
-    public RedisStandaloneConfiguration config() {
+    public RedisStandaloneConfiguration config(EmbeddedRedisServer embeddedRedisServer) {
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
-        config.setHostName(hostName);
-        config.setPort(port);
+        config.setHostName(embedded ? embeddedRedisServer.getHost() : hostName);
+        config.setPort(embedded ? embeddedRedisServer.getPort() : port);
         config.setPassword(RedisPassword.of(password));
         config.setDatabase(database);
         return config;
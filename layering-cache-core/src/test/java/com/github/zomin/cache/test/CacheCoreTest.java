@@ -1,17 +1,46 @@
 package com.github.zomin.cache.test;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.zomin.cache.AbstractValueAdaptingCache;
 import com.github.zomin.cache.Cache;
 import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.LazyValue;
+import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.caffeine.EstimatedSizeWeigher;
 import com.github.zomin.cache.config.CacheConfig;
+import com.github.zomin.cache.offheap.OffHeapCache;
 import com.github.zomin.cache.redis.RedisCache;
 import com.github.zomin.cache.redis.RedisCacheKey;
+import com.github.zomin.listener.RedisEvictPublisher;
+import com.github.zomin.listener.RedisPubSubMessage;
+import com.github.zomin.listener.RedisPubSubMessageCodec;
+import com.github.zomin.listener.RedisPubSubMessageType;
+import com.github.zomin.listener.RedisPublisher;
+import com.github.zomin.manager.AbstractCacheManager;
 import com.github.zomin.manager.CacheManager;
+import com.github.zomin.manager.FirstCacheBudget;
+import com.github.zomin.manager.FirstCacheSnapshot;
+import com.github.zomin.manager.FirstCacheWarmer;
+import com.github.zomin.manager.LayeringCacheManager;
+import com.github.zomin.redis.serializer.ProtostuffRedisSerializer;
 import com.github.zomin.setting.FirstCacheSetting;
 import com.github.zomin.setting.LayeringCacheSetting;
 import com.github.zomin.setting.SecondaryCacheSetting;
 import com.github.zomin.stats.CacheStats;
+import com.github.zomin.stats.CacheStatsInfo;
+import com.github.zomin.stats.HotKey;
+import com.github.zomin.stats.HotKeyTracker;
+import com.github.zomin.stats.LatencyHistogram;
+import com.github.zomin.stats.LatencyPercentiles;
+import com.github.zomin.stats.LayeringCacheMetrics;
+import com.github.zomin.stats.StatsService;
+import com.github.zomin.support.AwaitThreadContainer;
 import com.github.zomin.support.ExpireMode;
+import com.github.zomin.support.LayeringCacheScheduler;
 import com.github.zomin.support.Lock;
+import com.github.zomin.util.BeanFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,12 +48,45 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.support.NullValue;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import redis.clients.jedis.exceptions.JedisDataException;
 
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 // SpringJUnit4ClassRunner再Junit环境下提供Spring TestContext Framework的功能。
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -329,6 +391,476 @@ public class CacheCoreTest {
         Assert.assertEquals(str1, "test1");
     }
 
+    @Test
+    public void testCacheBatch() throws Exception {
+        String cacheName = "cache:name:batch";
+        List<String> keys = Arrays.asList("cache:batch:1", "cache:batch:2", "cache:batch:3");
+        LayeringCache cache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1);
+        cache.evictAll(keys);
+        Thread.sleep(500);
+
+        // 只有未命中的key才会交给bulkLoader，并且只调用一次
+        cache.put("cache:batch:1", "test1");
+        AtomicInteger loadCount = new AtomicInteger();
+        Map<String, String> result = cache.getAll(keys, missKeys -> {
+            loadCount.incrementAndGet();
+            Assert.assertEquals(2, missKeys.size());
+            Map<String, String> loaded = new HashMap<>();
+            for (String key : missKeys) {
+                loaded.put(key, "load:" + key);
+            }
+            return loaded;
+        });
+        Assert.assertEquals(1, loadCount.get());
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("test1", result.get("cache:batch:1"));
+        Assert.assertEquals("load:cache:batch:2", cache.get("cache:batch:2", String.class));
+
+        // 全部命中不调用bulkLoader
+        result = cache.getAll(keys, missKeys -> {
+            throw new IllegalStateException("不应该加载数据");
+        });
+        Assert.assertEquals(3, result.size());
+
+        Map<String, String> putMap = new HashMap<>();
+        putMap.put("cache:batch:1", "put1");
+        putMap.put("cache:batch:2", "put2");
+        cache.putAll(putMap);
+        Thread.sleep(500);
+        Assert.assertEquals("put2", cache.get("cache:batch:2", String.class));
+
+        cache.evictAll(keys);
+        Thread.sleep(500);
+        Assert.assertTrue(cache.getAll(keys, null).isEmpty());
+    }
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRedisPubSubMessageCodec() {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+
+        // String、Integer、Long直接编码，其它类型的key使用value序列化器
+        for (Object key : Arrays.asList("cache:key:codec", 123, -123, 123L, Long.MIN_VALUE, Long.MAX_VALUE, new BigDecimal("12.5"))) {
+            RedisPubSubMessage message = new RedisPubSubMessage();
+            message.setCacheName("cache:name:codec");
+            message.setKey(key);
+            message.setMessageType(RedisPubSubMessageType.UPDATE);
+            RedisPubSubMessage decoded = RedisPubSubMessageCodec.decode(RedisPubSubMessageCodec.encode(message, valueSerializer), valueSerializer);
+            Assert.assertEquals("cache:name:codec", decoded.getCacheName());
+            Assert.assertEquals(RedisPubSubMessageType.UPDATE, decoded.getMessageType());
+            Assert.assertEquals(key, decoded.getKey());
+            Assert.assertEquals(key.getClass(), decoded.getKey().getClass());
+            Assert.assertNull(decoded.getKeys());
+            Assert.assertNull(decoded.getNodeId());
+        }
+
+        // 批量key和节点ID
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName("cache:name:codec");
+        message.setKeys(Arrays.asList("cache:key:codec", 1, 2L, new BigDecimal("3.5")));
+        message.setMessageType(RedisPubSubMessageType.EVICT);
+        message.setNodeId("node:codec");
+        RedisPubSubMessage decoded = RedisPubSubMessageCodec.decode(RedisPubSubMessageCodec.encode(message, valueSerializer), valueSerializer);
+        Assert.assertEquals(message.getKeys(), decoded.getKeys());
+        Assert.assertEquals("node:codec", decoded.getNodeId());
+        Assert.assertEquals(RedisPubSubMessageType.EVICT, decoded.getMessageType());
+
+        // 每种消息类型都能还原，没有key的消息
+        for (RedisPubSubMessageType type : RedisPubSubMessageType.values()) {
+            message = new RedisPubSubMessage();
+            message.setCacheName("cache:name:codec");
+            message.setMessageType(type);
+            decoded = RedisPubSubMessageCodec.decode(RedisPubSubMessageCodec.encode(message, valueSerializer), valueSerializer);
+            Assert.assertEquals(type, decoded.getMessageType());
+            Assert.assertNull(decoded.getKey());
+            Assert.assertNull(decoded.getKeys());
+        }
+
+        // 旧节点用value序列化器发布的消息
+        message = new RedisPubSubMessage();
+        message.setCacheName("cache:name:codec");
+        message.setKey("cache:key:codec");
+        message.setMessageType(RedisPubSubMessageType.EVICT);
+        decoded = RedisPubSubMessageCodec.decode(valueSerializer.serialize(message), valueSerializer);
+        Assert.assertEquals("cache:name:codec", decoded.getCacheName());
+        Assert.assertEquals("cache:key:codec", decoded.getKey());
+        Assert.assertEquals(RedisPubSubMessageType.EVICT, decoded.getMessageType());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRedisPublisherLegacyFormat() {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        List<byte[]> bodies = new ArrayList<>();
+        RedisTemplate<String, Object> recordTemplate = recordPublishTemplate(bodies::add);
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName("cache:name:legacy");
+        message.setKeys(Arrays.asList("cache:key:legacy:1", "cache:key:legacy:2"));
+        message.setMessageType(RedisPubSubMessageType.EVICT);
+        message.setNodeId("node:legacy");
+        RedisPublisher.publisher(recordTemplate, new ChannelTopic("cache:name:legacy"), message, true);
+
+        // 旧节点不认识的消息类型不发布
+        message = new RedisPubSubMessage();
+        message.setCacheName("cache:name:legacy");
+        message.setKey("cache:key:legacy:1");
+        message.setMessageType(RedisPubSubMessageType.LOADED);
+        RedisPublisher.publisher(recordTemplate, new ChannelTopic("cache:name:legacy"), message, true);
+
+        // 旧格式是CacheManager的配置，已经创建和之后创建的缓存都使用所属CacheManager的配置
+        AbstractCacheManager abstractCacheManager = (AbstractCacheManager) cacheManager;
+        LayeringCache existingCache = (LayeringCache) cacheManager.getCache("cache:name:legacy", layeringCacheSetting1);
+        abstractCacheManager.setPubSubLegacyFormat(true);
+        try {
+            Assert.assertTrue(existingCache.isPubSubLegacyFormat());
+            Assert.assertTrue(((LayeringCache) cacheManager.getCache("cache:name:legacy", layeringCacheSetting2)).isPubSubLegacyFormat());
+        } finally {
+            abstractCacheManager.setPubSubLegacyFormat(false);
+        }
+        Assert.assertFalse(existingCache.isPubSubLegacyFormat());
+
+        // 批量key拆成每个key一条消息，旧节点直接用value序列化器反序列化
+        Assert.assertEquals(2, bodies.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            Assert.assertFalse(new String(bodies.get(i), StandardCharsets.UTF_8).contains("nodeId"));
+            RedisPubSubMessage legacyMessage = (RedisPubSubMessage) valueSerializer.deserialize(bodies.get(i));
+            Assert.assertEquals("cache:key:legacy:" + (i + 1), legacyMessage.getKey());
+            Assert.assertEquals(RedisPubSubMessageType.EVICT, legacyMessage.getMessageType());
+            Assert.assertNull(legacyMessage.getKeys());
+        }
+    }
+
+    @Test
+    public void testRedisCacheGetWithTtl() {
+        String cacheName = "cache:name:get_with_ttl";
+        String cacheKey = "cache:key:get_with_ttl";
+        SecondaryCacheSetting secondaryCacheSetting = layeringCacheSetting1.getSecondaryCacheSetting();
+
+        // 支持EVAL时一次往返获取缓存值和剩余有效时间
+        List<String> commands = new CopyOnWriteArrayList<>();
+        RedisCache redisCache = new RedisCache(cacheName, commandRecordTemplate(commands, null, null), secondaryCacheSetting, false);
+        redisCache.put(cacheKey, "test");
+        commands.clear();
+        Assert.assertEquals("test", redisCache.get(cacheKey, () -> "other"));
+        Assert.assertEquals(Arrays.asList("evalSha", "evalSha"), commands);
+        commands.clear();
+        Assert.assertEquals("test", redisCache.get(cacheKey, () -> "other"));
+        Assert.assertEquals(Collections.singletonList("evalSha"), commands);
+
+        // redis对EVAL返回错误回复时降级为分开获取，检测间隔内不再执行脚本
+        commands.clear();
+        RedisCache fallbackCache = new RedisCache(cacheName, commandRecordTemplate(commands, "ERR unknown command 'EVALSHA'", "ERR unknown command 'EVAL'"), secondaryCacheSetting, false);
+        Assert.assertEquals("test", fallbackCache.get(cacheKey, () -> "other"));
+        Assert.assertEquals(Arrays.asList("evalSha", "pTtl", "get"), commands);
+        commands.clear();
+        Assert.assertEquals("test", fallbackCache.get(cacheKey, () -> "other"));
+        Assert.assertEquals(Arrays.asList("pTtl", "get"), commands);
+
+        // redis没有缓存脚本时用EVAL重新执行
+        RedisCache noScriptCache = new RedisCache(cacheName, commandRecordTemplate(commands, "NOSCRIPT No matching script. Please use EVAL.", null),
+                                                  secondaryCacheSetting, false);
+        noScriptCache.get(cacheKey, () -> "other");
+        commands.clear();
+        Assert.assertEquals("test", noScriptCache.get(cacheKey, () -> "other"));
+        Assert.assertEquals(Arrays.asList("evalSha", "eval"), commands);
+        redisCache.evict(cacheKey);
+    }
+
+    @Test
+    public void testRedisCacheKey() {
+        RedisCache cache = (RedisCache) ((LayeringCache) cacheManager.getCache("cache:name:key", layeringCacheSetting1)).getSecondCache();
+        RedisSerializer keySerializer = cache.getNativeCache().getKeySerializer();
+
+        // 快速路径生成的key和逐字节拼接生成的key一致
+        for (Object key : new Object[]{"cache:key:1", "缓存:key:1", 1, 2L, new BigDecimal("3.14")}) {
+            RedisCacheKey redisCacheKey = cache.getRedisCacheKey(key);
+            Assert.assertEquals(new String(new RedisCacheKey(key, keySerializer).cacheName("cache:name:key").getKeyBytes(), StandardCharsets.UTF_8),
+                                redisCacheKey.getKey());
+            Assert.assertArrayEquals(keySerializer.serialize(redisCacheKey.getKey()), redisCacheKey.getRawKey());
+            // 没有先生成String key时直接生成的raw key也一致
+            Assert.assertArrayEquals(keySerializer.serialize(redisCacheKey.getKey()), cache.getRedisCacheKey(key).getRawKey());
+        }
+        Assert.assertEquals("cache:name:key:2", cache.getRedisCacheKey(2L).getKey());
+    }
+
+    @Test
+    public void testProtostuffRedisSerializer() {
+        ProtostuffRedisSerializer serializer = new ProtostuffRedisSerializer();
+        Map<String, Object> value = new HashMap<>();
+        value.put("list", Arrays.asList("test1", "test2"));
+        value.put("decimal", new BigDecimal("99.99"));
+        Assert.assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+        Assert.assertEquals("test", serializer.deserialize(serializer.serialize("test")));
+        Assert.assertEquals(10L, serializer.deserialize(serializer.serialize(10L)));
+        Assert.assertTrue(serializer.deserialize(serializer.serialize(NullValue.INSTANCE)) instanceof NullValue);
+        Assert.assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+
+    @Test
+    public void testCompressRedisCache() {
+        SecondaryCacheSetting secondaryCacheSetting = new SecondaryCacheSetting(10, 4, TimeUnit.SECONDS, true, true, 1);
+        secondaryCacheSetting.setCompressThreshold(1024);
+        RedisCache cache = new RedisCache("cache:name:compress", redisTemplate, secondaryCacheSetting, false);
+        String cacheKey1 = "cache:key:compress1";
+        String cacheKey2 = "cache:key:compress2";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("test").append(i % 10);
+        }
+        String largeValue = sb.toString();
+
+        // 超过阈值的值压缩后写入，首字节是压缩头
+        cache.put(cacheKey1, largeValue);
+        byte[] raw = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(cache.getRedisCacheKey(cacheKey1).getRawKey()));
+        Assert.assertEquals(0, raw[0]);
+        Assert.assertTrue(raw.length < largeValue.length() / 2);
+        Assert.assertEquals(largeValue, cache.get(cacheKey1));
+        Assert.assertEquals(largeValue, cache.get(cacheKey1, () -> "other"));
+
+        // 小于阈值的值和开启压缩之前写入的值原样读取
+        cache.put(cacheKey2, "test");
+        Assert.assertEquals("test", redisTemplate.opsForValue().get(cache.getRedisCacheKey(cacheKey2).getKey()));
+        redisTemplate.opsForValue().set(cache.getRedisCacheKey(cacheKey1).getKey(), largeValue);
+        Assert.assertEquals(largeValue, cache.get(cacheKey1));
+        Assert.assertEquals(2, cache.getAll(Arrays.asList(cacheKey1, cacheKey2), null).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFirstCacheLazyDeserialize() throws Exception {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(10, 1000, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        firstCacheSetting.setLazyDeserialize(true);
+        SecondaryCacheSetting secondaryCacheSetting = new SecondaryCacheSetting(10, 4, TimeUnit.SECONDS, true, true, 1);
+        LayeringCache cache = (LayeringCache) cacheManager.getCache("cache:name:lazy_deserialize",
+                                                                    new LayeringCacheSetting(firstCacheSetting, secondaryCacheSetting, ""));
+        Assert.assertTrue(cache.isLazyDeserialize());
+        String cacheKey = "cache:key:lazy_deserialize";
+        String nullCacheKey = "cache:key:lazy_deserialize_null";
+        cache.getFirstCache().evict(cacheKey);
+        cache.getSecondCache().put(cacheKey, "test");
+
+        // 二级缓存命中时一级缓存存放原始字节，返回值和一级缓存共用同一个反序列化结果
+        Assert.assertEquals("test", cache.get(cacheKey, () -> "other"));
+        Object stored = ((CaffeineCache) cache.getFirstCache()).getNativeCache().getIfPresent(cacheKey);
+        Assert.assertTrue(stored instanceof LazyValue);
+        Assert.assertTrue(((LazyValue) stored).isResolved());
+        Assert.assertEquals("test", cache.getFirstCache().get(cacheKey));
+        Assert.assertEquals("test", cache.get(cacheKey, () -> "other"));
+
+        // 批量读取的值在第一次访问前不反序列化
+        RedisCache redisCache = (RedisCache) cache.getSecondCache();
+        LazyValue lazyValue = (LazyValue) redisCache.getAllLazy(Collections.singletonList(cacheKey)).get(cacheKey);
+        Assert.assertFalse(lazyValue.isResolved());
+        Assert.assertEquals("test", lazyValue.get());
+        Assert.assertTrue(lazyValue.isResolved());
+
+        // 缓存的NULL值按字节识别，不需要反序列化
+        redisCache.put(nullCacheKey, null);
+        Assert.assertNull(redisCache.getLazy(nullCacheKey, () -> "other"));
+
+        // value 序列化器不支持序列化NULL值时也能创建缓存，延迟反序列化正常读取
+        RedisTemplate<String, Object> jsonRedisTemplate = new RedisTemplate<>();
+        jsonRedisTemplate.setConnectionFactory(redisTemplate.getConnectionFactory());
+        jsonRedisTemplate.setKeySerializer(redisTemplate.getKeySerializer());
+        jsonRedisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        jsonRedisTemplate.afterPropertiesSet();
+        RedisCache jsonRedisCache = new RedisCache("cache:name:lazy_deserialize_json", jsonRedisTemplate, 10, 4, false, true, true, 1, false);
+        jsonRedisCache.put(cacheKey, "test");
+        Assert.assertEquals("test", ((LazyValue) jsonRedisCache.getLazy(cacheKey)).get());
+
+        // 后台刷新从二级缓存读到的值放到一级缓存后，在第一次读取前不反序列化
+        FirstCacheSetting refreshSetting = new FirstCacheSetting(10, 1000, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        refreshSetting.setLazyDeserialize(true);
+        refreshSetting.setRefreshTime(1);
+        LayeringCache refreshCache = (LayeringCache) cacheManager.getCache("cache:name:lazy_deserialize_refresh",
+                                                                           new LayeringCacheSetting(refreshSetting, secondaryCacheSetting, ""));
+        String refreshKey = "cache:key:lazy_deserialize_refresh";
+        refreshCache.getSecondCache().put(refreshKey, "test");
+        Assert.assertEquals("test", refreshCache.get(refreshKey, () -> "other"));
+        refreshCache.getSecondCache().put(refreshKey, "refreshed");
+        Thread.sleep(1200);
+        Assert.assertEquals("test", refreshCache.getFirstCache().get(refreshKey));
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> refreshNativeCache = ((CaffeineCache) refreshCache.getFirstCache()).getNativeCache();
+        for (int i = 0; i < 50 && !(refreshNativeCache.getIfPresent(refreshKey) instanceof LazyValue
+            && !((LazyValue) refreshNativeCache.getIfPresent(refreshKey)).isResolved()); i++) {
+            Thread.sleep(20);
+        }
+        LazyValue refreshed = (LazyValue) refreshNativeCache.getIfPresent(refreshKey);
+        Assert.assertFalse(refreshed.isResolved());
+        Assert.assertEquals("refreshed", refreshCache.get(refreshKey, () -> "other"));
+        Assert.assertTrue(refreshed.isResolved());
+
+        // 按权重淘汰时第一次读取后按反序列化的对象重新计算权重
+        firstCacheSetting.setMaximumWeight(1000000);
+        CaffeineCache weightedCache = new CaffeineCache("cache:name:lazy_deserialize_weight", firstCacheSetting, false);
+        List<String> list = new ArrayList<>(Collections.nCopies(100, "test"));
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        weightedCache.putIfAbsent(cacheKey, new LazyValue(valueSerializer.serialize(list), valueSerializer));
+        Policy.Eviction<Object, Object> eviction = weightedCache.getNativeCache().policy().eviction().get();
+        weightedCache.getNativeCache().cleanUp();
+        long rawWeight = eviction.weightedSize().getAsLong();
+        Assert.assertEquals(list, weightedCache.get(cacheKey));
+        weightedCache.getNativeCache().cleanUp();
+        Assert.assertTrue(eviction.weightedSize().getAsLong() > rawWeight);
+        Assert.assertEquals(new EstimatedSizeWeigher().weigh(cacheKey, list), eviction.weightedSize().getAsLong(), 32);
+    }
+
+    @Test
+    public void testSingleFlightLoad() throws Exception {
+        String cacheName = "cache:name:single_flight";
+        String cacheKey = "cache:key:single_flight";
+        RedisCache cache = (RedisCache) ((LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1)).getSecondCache();
+        cache.evict(cacheKey);
+
+        // 本机并发加载同一个key，只有一个线程执行被缓存的方法
+        int threads = 20;
+        AtomicInteger loadCount = new AtomicInteger();
+        List<Object> results = runConcurrently(threads, () -> cache.get(cacheKey, () -> {
+            loadCount.incrementAndGet();
+            Thread.sleep(200);
+            return initCache(String.class);
+        }));
+        Assert.assertEquals(Collections.nCopies(threads, initCache(String.class)), results);
+        Assert.assertEquals(1, loadCount.get());
+
+        // 加载数据的线程抛出Error时，等待的线程也能结束并拿到异常
+        String errorKey = "cache:key:single_flight:error";
+        cache.evict(errorKey);
+        results = runConcurrently(threads, () -> cache.get(errorKey, () -> {
+            Thread.sleep(200);
+            throw new AssertionError("single flight error");
+        }));
+        Assert.assertEquals(threads, results.size());
+        for (Object result : results) {
+            Assert.assertTrue(String.valueOf(result), result instanceof AssertionError
+                || result instanceof AbstractValueAdaptingCache.LoaderCacheValueException);
+        }
+    }
+
+    /**
+     * 多个线程同时执行，返回每个线程的结果或抛出的异常
+     */
+    private List<Object> runConcurrently(int threads, Callable<Object> task) throws InterruptedException {
+        List<Object> results = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(threads);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                executorService.execute(() -> {
+                    try {
+                        results.add(task.call());
+                    } catch (Throwable e) {
+                        results.add(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue("并发任务没有在10秒内结束", latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+        return results;
+    }
+
+    @Test
+    public void testLoadedWakeUp() throws Exception {
+        String cacheName = "cache:name:loaded";
+        String cacheKey = "cache:key:loaded";
+        RedisCache cache = (RedisCache) ((LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1)).getSecondCache();
+        cache.evict(cacheKey);
+        String redisKey = cache.getRedisCacheKey(cacheKey).getKey();
+        // 等待新建缓存的频道订阅生效，先发一条消息，排除第一次处理消息时的初始化耗时
+        Thread.sleep(500);
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName(cacheName);
+        message.setKey(redisKey + ":warm_up");
+        message.setMessageType(RedisPubSubMessageType.LOADED);
+        RedisPublisher.publisher(redisTemplate, new ChannelTopic(cacheName), message);
+        Thread.sleep(500);
+
+        // 模拟其它节点正在加载数据，持有加载数据的分布式锁
+        Lock lock = new Lock(redisTemplate, redisKey + "_sync_lock");
+        Assert.assertTrue(lock.lock());
+        AtomicInteger loadCount = new AtomicInteger();
+        AtomicReference<Object> result = new AtomicReference<>();
+        Thread waiter = new Thread(() -> result.set(cache.get(cacheKey, () -> {
+            loadCount.incrementAndGet();
+            return "loader";
+        })));
+        try {
+            waiter.start();
+            // 等待线程没有拿到锁，进入等待状态
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(waiter.getState() == Thread.State.TIMED_WAITING && LockSupport.getBlocker(waiter) instanceof AwaitThreadContainer)) {
+                Assert.assertTrue("等待线程没有进入等待状态", System.currentTimeMillis() < deadline);
+                Thread.yield();
+            }
+
+            // 其它节点加载完成，写入缓存并发布加载完成的消息
+            redisTemplate.opsForValue().set(redisKey, initCache(String.class), 10, TimeUnit.SECONDS);
+            long publishTime = System.nanoTime();
+            message.setKey(redisKey);
+            RedisPublisher.publisher(redisTemplate, new ChannelTopic(cacheName), message);
+            while (LockSupport.getBlocker(waiter) instanceof AwaitThreadContainer
+                && System.nanoTime() - publishTime < TimeUnit.SECONDS.toNanos(5)) {
+                Thread.yield();
+            }
+            // 收到消息立即唤醒，不需要等到100毫秒的轮询间隔
+            long wakeUpTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishTime);
+            Assert.assertTrue("唤醒耗时" + wakeUpTime + "毫秒", wakeUpTime < 50);
+
+            waiter.join(5000);
+            Assert.assertEquals(initCache(String.class), result.get());
+            Assert.assertEquals(0, loadCount.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void testSharedScheduler() throws Exception {
+        AbstractCacheManager abstractCacheManager = (AbstractCacheManager) cacheManager;
+        LayeringCacheScheduler scheduler = abstractCacheManager.getScheduler();
+        Assert.assertSame(scheduler, abstractCacheManager.getScheduler());
+        // 开启了统计，统计定时任务在共用线程池中等待执行
+        Assert.assertTrue(scheduler.getQueueSize() >= 1);
+
+        long executedCount = scheduler.getExecutedCount();
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.execute(latch::countDown);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        sleep(1);
+        Assert.assertTrue(scheduler.getExecutedCount() > executedCount);
+        Assert.assertEquals(0, scheduler.getRejectedCount());
+
+        // 共用线程池的线程全部被占用时，删除消息仍然由专用线程按时间窗口发布
+        Assert.assertNotSame(scheduler, abstractCacheManager.getEvictPublishScheduler());
+        CountDownLatch blocked = new CountDownLatch(scheduler.getCorePoolSize());
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < scheduler.getCorePoolSize(); i++) {
+                scheduler.execute(() -> {
+                    blocked.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            CacheStats cacheStats = new CacheStats();
+            abstractCacheManager.getEvictPublisher().publish("cache:name:evict_publish_lane", "cache:key:evict_publish_lane", cacheStats);
+            long[] publishLatency = null;
+            for (int i = 0; i < 50 && publishLatency == null; i++) {
+                Thread.sleep(20);
+                publishLatency = cacheStats.getAndResetPublishLatency();
+            }
+            Assert.assertNotNull(publishLatency);
+        } finally {
+            release.countDown();
+        }
+    }
 
     /**
      * 测试统计
@@ -362,6 +894,568 @@ public class CacheCoreTest {
         Assert.assertTrue(cacheStats.getCachedMethodRequestTime().longValue() >= 0);
     }
 
+    @Test
+    public void testStatsFlush() {
+        String cacheName = "cache:name:stats_flush";
+        String cacheKey = "cache:key:stats_flush";
+        LayeringCache cache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1);
+        cache.evict(cacheKey);
+        cache.get(cacheKey, () -> initCache(String.class));
+        cache.get(cacheKey, () -> initCache(String.class));
+        cache.get(cacheKey, () -> initCache(String.class));
+
+        // 计数通过HINCRBY累加，重复写入不会覆盖
+        StatsService statsService = BeanFactory.getBean(StatsService.class);
+        statsService.flushCacheStats();
+        cache.get(cacheKey, () -> initCache(String.class));
+
+        // 写入redis失败时统计增量加回计数器，下个周期重新写入
+        RedisTemplate<String, Object> failingRedisTemplate = new RedisTemplate<String, Object>() {
+            @Override
+            public List<Object> executePipelined(RedisCallback<?> action) {
+                throw new RedisConnectionFailureException("redis 连接失败");
+            }
+        };
+        failingRedisTemplate.setKeySerializer(redisTemplate.getKeySerializer());
+        LayeringCacheManager failingCacheManager = new LayeringCacheManager(failingRedisTemplate);
+        AbstractCacheManager.getCacheManager().remove(failingCacheManager);
+        StatsService failingStatsService = new StatsService();
+        failingStatsService.setCacheManager(failingCacheManager);
+        try {
+            failingStatsService.flushCacheStats();
+            Assert.fail();
+        } catch (RedisConnectionFailureException e) {
+            // 预期异常
+        }
+        Assert.assertEquals(1, cache.getCacheStats().getCacheRequestCount().sum());
+        statsService.flushCacheStats();
+
+        // 不是hash的统计key读取时跳过，不影响其它缓存的统计数据
+        String wrongTypeKey = StatsService.CACHE_STATS_KEY_PREFIX + cacheName + ":wrong_type";
+        redisTemplate.opsForValue().set(wrongTypeKey, "test", 10, TimeUnit.SECONDS);
+
+        List<CacheStatsInfo> statsList = cacheManager.listCacheStats(cacheName);
+        redisTemplate.delete(wrongTypeKey);
+        Assert.assertEquals(1, statsList.size());
+        CacheStatsInfo cacheStats = statsList.get(0);
+        Assert.assertEquals(cacheName, cacheStats.getCacheName());
+        Assert.assertEquals(layeringCacheSetting1.getInternalKey(), cacheStats.getInternalKey());
+        Assert.assertEquals(layeringCacheSetting1.getInternalKey(), cacheStats.getLayeringCacheSetting().getInternalKey());
+        Assert.assertEquals(4, cacheStats.getRequestCount());
+        Assert.assertEquals(1, cacheStats.getMissCount());
+        Assert.assertEquals(75.0, cacheStats.getHitRate(), 0.001);
+        Assert.assertEquals(4, cacheStats.getFirstCacheLatency().getCount());
+        Assert.assertTrue(cacheStats.getSecondCacheLatency().getCount() >= 1);
+        Assert.assertEquals(1, cacheStats.getLoadLatency().getCount());
+        Assert.assertEquals(cacheKey, cacheStats.getHotKeys().get(0).getKey());
+        Assert.assertEquals(4, cacheStats.getHotKeys().get(0).getCount());
+
+        statsService.resetCacheStat(StatsService.CACHE_STATS_KEY_PREFIX + cacheName + layeringCacheSetting1.getInternalKey());
+        cacheStats = cacheManager.listCacheStats(cacheName).get(0);
+        Assert.assertEquals(0, cacheStats.getRequestCount());
+        Assert.assertEquals(cacheName, cacheStats.getCacheName());
+        Assert.assertNull(cacheStats.getLoadLatency());
+        Assert.assertNull(cacheStats.getHotKeys());
+    }
+
+    @Test
+    public void testFirstCacheRefresh() throws Exception {
+        String cacheName = "cache:name:first_cache_refresh";
+        String cacheKey = "cache:key:first_cache_refresh";
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(10, 1000, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        firstCacheSetting.setRefreshTime(1);
+        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting,
+            new SecondaryCacheSetting(100, 10, TimeUnit.SECONDS, true, true, 1), "一级缓存刷新");
+        LayeringCache cache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting);
+        Assert.assertEquals("test", cache.get(cacheKey, () -> initCache(String.class)));
+
+        // 只改二级缓存，一级缓存在刷新时间内不变
+        cache.getSecondCache().put(cacheKey, "refreshed");
+        Assert.assertEquals("test", cache.getFirstCache().get(cacheKey));
+
+        // 超过刷新时间后第一次读取返回旧值，同时异步刷新
+        Thread.sleep(1200);
+        Assert.assertEquals("test", cache.getFirstCache().get(cacheKey));
+        for (int i = 0; i < 50 && !"refreshed".equals(cache.getFirstCache().get(cacheKey)); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals("refreshed", cache.getFirstCache().get(cacheKey));
+    }
+
+    @Test
+    public void testFirstCacheWeight() {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(10, 1000, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        firstCacheSetting.setMaximumWeight(1000000);
+        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting,
+            new SecondaryCacheSetting(100, 10, TimeUnit.SECONDS, true, true, 1), "按权重淘汰");
+
+        // 两个按权重淘汰的缓存平分全局预算
+        AbstractCacheManager abstractCacheManager = (AbstractCacheManager) cacheManager;
+        abstractCacheManager.setFirstCacheMaximumWeight(1200000);
+        LayeringCache cache1;
+        LayeringCache cache2;
+        try {
+            cache1 = (LayeringCache) cacheManager.getCache("cache:name:first_cache_weight1", layeringCacheSetting);
+            cache2 = (LayeringCache) cacheManager.getCache("cache:name:first_cache_weight2", layeringCacheSetting);
+        } finally {
+            abstractCacheManager.setFirstCacheMaximumWeight(0);
+        }
+        Policy.Eviction<Object, Object> eviction1 = ((CaffeineCache) cache1.getFirstCache()).getNativeCache().policy().eviction().get();
+        Policy.Eviction<Object, Object> eviction2 = ((CaffeineCache) cache2.getFirstCache()).getNativeCache().policy().eviction().get();
+        Assert.assertTrue(eviction1.isWeighted());
+        Assert.assertEquals(600000, eviction1.getMaximum());
+        Assert.assertEquals(600000, eviction2.getMaximum());
+
+        cache1.getFirstCache().put("cache:key:first_cache_weight", "test");
+        ((CaffeineCache) cache1.getFirstCache()).getNativeCache().cleanUp();
+        Assert.assertTrue(eviction1.weightedSize().getAsLong() > 0);
+
+        EstimatedSizeWeigher weigher = new EstimatedSizeWeigher();
+        List<String> list = Arrays.asList(new String[100]);
+        Collections.fill(list, "test");
+        Assert.assertTrue(weigher.weigh("key", list) > weigher.weigh("key", "test") * 20);
+    }
+
+    @Test
+    public void testFirstCacheBudgetRebalance() {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(10, 1000, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        firstCacheSetting.setMaximumWeight(20000);
+        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting,
+            new SecondaryCacheSetting(100, 10, TimeUnit.SECONDS, true, true, 1), "预算重新分配");
+        // 不通过CacheManager创建，避免影响其它测试里全局预算的分配
+        LayeringCache busyCache = new LayeringCache(redisTemplate,
+            new CaffeineCache("cache:name:first_cache_budget_busy", firstCacheSetting, true, null, null, null),
+            new RedisCache("cache:name:first_cache_budget_busy", redisTemplate, layeringCacheSetting.getSecondaryCacheSetting(), true),
+            true, layeringCacheSetting);
+        LayeringCache idleCache = new LayeringCache(redisTemplate,
+            new CaffeineCache("cache:name:first_cache_budget_idle", firstCacheSetting, true, null, null, null),
+            new RedisCache("cache:name:first_cache_budget_idle", redisTemplate, layeringCacheSetting.getSecondaryCacheSetting(), true),
+            true, layeringCacheSetting);
+        List<LayeringCache> caches = Arrays.asList(busyCache, idleCache);
+
+        FirstCacheBudget budget = new FirstCacheBudget(20000);
+        budget.allocateEvenly(caches);
+        Policy.Eviction<Object, Object> busyEviction = ((CaffeineCache) busyCache.getFirstCache()).getNativeCache().policy().eviction().get();
+        Policy.Eviction<Object, Object> idleEviction = ((CaffeineCache) idleCache.getFirstCache()).getNativeCache().policy().eviction().get();
+        Assert.assertEquals(10000, busyEviction.getMaximum());
+        Assert.assertEquals(10000, idleEviction.getMaximum());
+
+        // 一个缓存容量不足频繁未命中和淘汰，另一个几乎没有使用
+        for (int i = 0; i < 500; i++) {
+            busyCache.getFirstCache().get("cache:key:first_cache_budget:" + i);
+            busyCache.getFirstCache().put("cache:key:first_cache_budget:" + i, "test" + i);
+        }
+        idleCache.getFirstCache().put("cache:key:first_cache_budget", "test");
+        ((CaffeineCache) busyCache.getFirstCache()).getNativeCache().cleanUp();
+        ((CaffeineCache) idleCache.getFirstCache()).getNativeCache().cleanUp();
+
+        budget.rebalance(caches);
+        Assert.assertTrue(busyEviction.getMaximum() > 10000);
+        Assert.assertTrue(idleEviction.getMaximum() < 10000);
+        Assert.assertTrue(busyEviction.getMaximum() + idleEviction.getMaximum() <= 20000);
+
+        // 新建缓存只分到平均份额，其它缓存按比例让出容量，保留按命中情况调整的结果
+        long busyMaximum = busyEviction.getMaximum();
+        long idleMaximum = idleEviction.getMaximum();
+        LayeringCache newCache = newBudgetCache("cache:name:first_cache_budget_new", layeringCacheSetting, true);
+        budget.allocate(Arrays.asList(busyCache, idleCache, newCache), newCache);
+        Policy.Eviction<Object, Object> newEviction = ((CaffeineCache) newCache.getFirstCache()).getNativeCache().policy().eviction().get();
+        Assert.assertEquals(6666, newEviction.getMaximum());
+        Assert.assertEquals(busyMaximum / (double) idleMaximum, busyEviction.getMaximum() / (double) idleEviction.getMaximum(), 0.01);
+        Assert.assertTrue(busyEviction.getMaximum() + idleEviction.getMaximum() + newEviction.getMaximum() <= 20000);
+    }
+
+    @Test
+    public void testFirstCacheBudgetLimit() {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(10, 1000, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        firstCacheSetting.setMaximumWeight(20000);
+        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting,
+            new SecondaryCacheSetting(100, 10, TimeUnit.SECONDS, true, true, 1), "预算上限");
+
+        // 两个缓存都没有淘汰但接近用满，按已用权重计算的目标值之和超过总预算时按比例缩小
+        LayeringCache cache1 = newBudgetCache("cache:name:first_cache_budget_limit1", layeringCacheSetting, true);
+        LayeringCache cache2 = newBudgetCache("cache:name:first_cache_budget_limit2", layeringCacheSetting, true);
+        List<LayeringCache> caches = Arrays.asList(cache1, cache2);
+        FirstCacheBudget budget = new FirstCacheBudget(20000);
+        budget.allocateEvenly(caches);
+        for (LayeringCache cache : caches) {
+            com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache.getFirstCache()).getNativeCache();
+            for (int i = 0; nativeCache.policy().eviction().get().weightedSize().getAsLong() < 8500; i++) {
+                cache.getFirstCache().put("cache:key:first_cache_budget_limit:" + i, "test" + i);
+                nativeCache.cleanUp();
+            }
+            Assert.assertEquals(0, nativeCache.stats().evictionCount());
+        }
+        Policy.Eviction<Object, Object> eviction1 = ((CaffeineCache) cache1.getFirstCache()).getNativeCache().policy().eviction().get();
+        Policy.Eviction<Object, Object> eviction2 = ((CaffeineCache) cache2.getFirstCache()).getNativeCache().policy().eviction().get();
+        budget.rebalance(caches);
+        Assert.assertTrue(eviction1.getMaximum() + eviction2.getMaximum() <= 20000);
+
+        // 没有开启统计时看不到淘汰次数，不重新分配
+        LayeringCache statsOffCache1 = newBudgetCache("cache:name:first_cache_budget_stats_off1", layeringCacheSetting, false);
+        LayeringCache statsOffCache2 = newBudgetCache("cache:name:first_cache_budget_stats_off2", layeringCacheSetting, false);
+        caches = Arrays.asList(statsOffCache1, statsOffCache2);
+        budget = new FirstCacheBudget(20000);
+        budget.allocateEvenly(caches);
+        statsOffCache1.getFirstCache().put("cache:key:first_cache_budget_stats_off", "test");
+        budget.rebalance(caches);
+        Assert.assertEquals(10000, ((CaffeineCache) statsOffCache1.getFirstCache()).getNativeCache().policy().eviction().get().getMaximum());
+        Assert.assertEquals(10000, ((CaffeineCache) statsOffCache2.getFirstCache()).getNativeCache().policy().eviction().get().getMaximum());
+    }
+
+    /**
+     * 不通过CacheManager创建按权重淘汰的缓存，避免影响其它测试里全局预算的分配
+     */
+    private LayeringCache newBudgetCache(String cacheName, LayeringCacheSetting layeringCacheSetting, boolean stats) {
+        return new LayeringCache(redisTemplate,
+            new CaffeineCache(cacheName, layeringCacheSetting.getFirstCacheSetting(), stats, null, null, null),
+            new RedisCache(cacheName, redisTemplate, layeringCacheSetting.getSecondaryCacheSetting(), stats),
+            stats, layeringCacheSetting);
+    }
+
+    @Test
+    public void testOffHeapCache() {
+        FirstCacheSetting firstCacheSetting = new FirstCacheSetting(10, 100, 10, TimeUnit.SECONDS, ExpireMode.WRITE);
+        firstCacheSetting.setOffHeap(true);
+        LayeringCacheSetting layeringCacheSetting = new LayeringCacheSetting(firstCacheSetting,
+            new SecondaryCacheSetting(100, 10, TimeUnit.SECONDS, true, true, 1), "堆外缓存");
+        LayeringCache cache = (LayeringCache) cacheManager.getCache("cache:name:off_heap", layeringCacheSetting);
+        Assert.assertTrue(cache.getFirstCache() instanceof OffHeapCache);
+        OffHeapCache offHeapCache = (OffHeapCache) cache.getFirstCache();
+
+        // 通过多级缓存读写，一级缓存存的是反序列化后相等的新对象
+        String cacheKey = "cache:key:off_heap";
+        cache.evict(cacheKey);
+        List<String> value = cache.get(cacheKey, () -> new ArrayList<>(Arrays.asList("test1", "test2")));
+        Object firstValue = offHeapCache.get(cacheKey);
+        Assert.assertNotSame(value, firstValue);
+        Assert.assertEquals(value, firstValue);
+        Assert.assertTrue(offHeapCache.getUsedBytes() > 0);
+
+        // 超过maximumSize后淘汰，删除的条目释放的内存块会被复用
+        for (int i = 0; i < 1000; i++) {
+            offHeapCache.put(cacheKey + i, "test" + i);
+        }
+        offHeapCache.getNativeCache().cleanUp();
+        Assert.assertTrue(offHeapCache.getNativeCache().estimatedSize() <= 100);
+        Assert.assertTrue(offHeapCache.getAllocatedBytes() <= 2 * 1024 * 1024);
+        Assert.assertEquals("test999", offHeapCache.get(cacheKey + 999));
+
+        offHeapCache.clear();
+        Assert.assertNull(offHeapCache.get(cacheKey + 999));
+        Assert.assertEquals(0, offHeapCache.getUsedBytes());
+    }
+
+    @Test
+    public void testFirstCacheSnapshot() throws Exception {
+        LayeringCache cache = (LayeringCache) cacheManager.getCache("cache:name:first_cache_snapshot", layeringCacheSetting1);
+        String cacheKey1 = "cache:key:first_cache_snapshot1";
+        String cacheKey2 = "cache:key:first_cache_snapshot2";
+        // 直接写两级缓存，避免删除消息异步清掉一级缓存
+        cache.getSecondCache().put(cacheKey1, "test1");
+        cache.getFirstCache().put(cacheKey1, "test1");
+        cache.getSecondCache().put(cacheKey2, "test2");
+        cache.getFirstCache().put(cacheKey2, "test2");
+        // 没有设置过期时间的redis key无法判断是否被重新写入过，不保存
+        String cacheKey3 = "cache:key:first_cache_snapshot3";
+        cache.getSecondCache().put(cacheKey3, "test3");
+        cache.getFirstCache().put(cacheKey3, "test3");
+        redisTemplate.persist(((RedisCache) cache.getSecondCache()).getRedisCacheKey(cacheKey3).getKey());
+
+        File file = File.createTempFile("layering-cache", ".snapshot");
+        file.deleteOnExit();
+        FirstCacheSnapshot snapshot = new FirstCacheSnapshot(file, redisTemplate, 100, ((AbstractCacheManager) cacheManager).getScheduler());
+        // 一级缓存有效时间4秒，保存时还剩2秒左右
+        Thread.sleep(2000);
+        Assert.assertEquals(2, snapshot.save(Collections.singletonList(cache)));
+
+        // 模拟重启：一级缓存为空，停机期间key2的二级缓存被删除
+        cache.getFirstCache().clear();
+        cache.getSecondCache().evict(cacheKey2);
+        cache.getSecondCache().evict(cacheKey3);
+        Assert.assertEquals(2, snapshot.load());
+        Assert.assertEquals(1, snapshot.restore(cache));
+        Assert.assertEquals("test1", cache.getFirstCache().get(cacheKey1));
+        Assert.assertNull(cache.getFirstCache().get(cacheKey2));
+
+        // 每个缓存只恢复一次
+        Assert.assertEquals(0, snapshot.restore(cache));
+
+        // 恢复的条目按保存时剩余的有效时间过期，不重新计算完整的4秒
+        Thread.sleep(3000);
+        Assert.assertNull(cache.getFirstCache().get(cacheKey1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFirstCacheWarmUp() throws Exception {
+        String cacheName = "cache:name:first_cache_warm_up";
+        String cacheKey1 = "cache:key:first_cache_warm_up1";
+        String cacheKey2 = "cache:key:first_cache_warm_up2";
+        // 已经运行的节点一级缓存里有两个key，其中key2的二级缓存已经被删除
+        LayeringCache runningCache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1);
+        runningCache.getSecondCache().put(cacheKey1, "test1");
+        runningCache.getFirstCache().put(cacheKey1, "test1");
+        runningCache.getFirstCache().put(cacheKey2, "test2");
+        runningCache.getSecondCache().evict(cacheKey2);
+
+        // 新节点使用单独的连接池订阅消息
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(
+            ((JedisConnectionFactory) redisTemplate.getConnectionFactory()).getStandaloneConfiguration());
+        connectionFactory.afterPropertiesSet();
+        RedisTemplate<String, Object> newRedisTemplate = new RedisTemplate<>();
+        newRedisTemplate.setConnectionFactory(connectionFactory);
+        newRedisTemplate.setKeySerializer(redisTemplate.getKeySerializer());
+        newRedisTemplate.setValueSerializer(redisTemplate.getValueSerializer());
+        newRedisTemplate.setHashKeySerializer(redisTemplate.getHashKeySerializer());
+        newRedisTemplate.setHashValueSerializer(redisTemplate.getHashValueSerializer());
+        newRedisTemplate.afterPropertiesSet();
+        LayeringCacheManager newNode = new LayeringCacheManager(newRedisTemplate);
+        try {
+            newNode.afterPropertiesSet();
+            newNode.start();
+            LayeringCache newCache = (LayeringCache) newNode.getCache(cacheName, layeringCacheSetting1);
+            for (int i = 0; i < 50 && subscribers(cacheName) < 2; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(2, subscribers(cacheName));
+
+            // 已经运行的节点回复热点key，新节点只预热二级缓存里还有的key
+            long requestCount = runningCache.getSecondCache().getCacheStats().getCacheRequestCount().longValue();
+            FirstCacheWarmer warmer = newNode.getFirstCacheWarmer();
+            warmer.request(newCache);
+            for (int i = 0; i < 50 && newCache.getFirstCache().get(cacheKey1) == null; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals("test1", newCache.getFirstCache().get(cacheKey1));
+            Assert.assertNull(newCache.getFirstCache().get(cacheKey2));
+            // 预热读取不计入统计
+            ((RedisCache) runningCache.getSecondCache()).getAllLazy(Collections.singletonList(cacheKey1));
+            Assert.assertEquals(requestCount, runningCache.getSecondCache().getCacheStats().getCacheRequestCount().longValue());
+
+            // 同一个请求已经有节点回复过，不再回复
+            newCache.getFirstCache().clear();
+            warmer.request(newCache);
+            Thread.sleep(1000);
+            Assert.assertNull(newCache.getFirstCache().get(cacheKey1));
+
+            // 节点ID追加在消息末尾，旧版本解码得到的其它内容不变；没有节点ID的回复不处理
+            RedisPubSubMessage message = new RedisPubSubMessage();
+            message.setCacheName(cacheName);
+            message.setMessageType(RedisPubSubMessageType.WARM_UP_RESPONSE);
+            message.setKeys(Arrays.asList(cacheKey1, cacheKey2));
+            RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+            byte[] withoutNodeId = RedisPubSubMessageCodec.encode(message, valueSerializer);
+            message.setNodeId(warmer.getNodeId());
+            byte[] withNodeId = RedisPubSubMessageCodec.encode(message, valueSerializer);
+            Assert.assertArrayEquals(withoutNodeId, Arrays.copyOf(withNodeId, withoutNodeId.length));
+            Assert.assertEquals(warmer.getNodeId(), RedisPubSubMessageCodec.decode(withNodeId, valueSerializer).getNodeId());
+            message.setNodeId(null);
+            RedisPublisher.publisher(redisTemplate, new ChannelTopic(cacheName), message);
+            Thread.sleep(500);
+            Assert.assertNull(newCache.getFirstCache().get(cacheKey1));
+        } finally {
+            newNode.destroy();
+            AbstractCacheManager.getCacheManager().remove(newNode);
+            connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * 频道的订阅者数量，发布一条没有节点ID的预热回复，收到的节点都会忽略
+     */
+    @SuppressWarnings("unchecked")
+    private long subscribers(String channel) {
+        RedisPubSubMessage message = new RedisPubSubMessage();
+        message.setCacheName(channel);
+        message.setMessageType(RedisPubSubMessageType.WARM_UP_RESPONSE);
+        byte[] body = RedisPubSubMessageCodec.encode(message, (RedisSerializer<Object>) redisTemplate.getValueSerializer());
+        return redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel.getBytes(StandardCharsets.UTF_8), body));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEvictPublisher() throws Exception {
+        String cacheName = "cache:name:evict_publisher";
+        List<RedisPubSubMessage> messages = new CopyOnWriteArrayList<>();
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        RedisTemplate<String, Object> recordTemplate = recordPublishTemplate(body -> messages.add(RedisPubSubMessageCodec.decode(body, valueSerializer)));
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            // 发布线程被占用时入队的key超过单条消息的最大数量，发布时拆成多条消息
+            executor.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            RedisEvictPublisher publisher = new RedisEvictPublisher(recordTemplate, executor, 10000, 2, "node:evict_publisher");
+            for (int i = 0; i < 5; i++) {
+                publisher.publish(cacheName, "cache:key:evict_publisher:" + i);
+            }
+            blocked.countDown();
+            for (int i = 0; i < 50 && messages.size() < 3; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(3, messages.size());
+            Assert.assertEquals(Arrays.asList("cache:key:evict_publisher:0", "cache:key:evict_publisher:1"), messages.get(0).getKeys());
+            Assert.assertEquals(Arrays.asList("cache:key:evict_publisher:2", "cache:key:evict_publisher:3"), messages.get(1).getKeys());
+            Assert.assertEquals("cache:key:evict_publisher:4", messages.get(2).getKey());
+            Assert.assertEquals("node:evict_publisher", messages.get(2).getNodeId());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 本节点发布的删除消息不会删除本机一级缓存，其它节点发布的消息会删除
+        String selfKey = "cache:key:evict_publisher:self";
+        String otherKey = "cache:key:evict_publisher:other";
+        LayeringCache cache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1);
+        cache.getFirstCache().put(selfKey, initCache(String.class));
+        cache.getFirstCache().put(otherKey, initCache(String.class));
+        RedisEvictPublisher selfPublisher = new RedisEvictPublisher(redisTemplate, null, 0, 1,
+            ((AbstractCacheManager) cacheManager).getNodeId());
+        RedisEvictPublisher otherPublisher = new RedisEvictPublisher(redisTemplate, null, 0, 1, "node:evict_publisher");
+        selfPublisher.publish(cacheName, selfKey);
+        otherPublisher.publish(cacheName, otherKey);
+        for (int i = 0; i < 50 && cache.getFirstCache().get(otherKey) != null; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertNull(cache.getFirstCache().get(otherKey));
+        Assert.assertNotNull(cache.getFirstCache().get(selfKey));
+
+        // 本机同名但配置不同的缓存在修改数据时直接删除，不依赖本节点发布的删除消息
+        LayeringCache sibling = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting2);
+        Assert.assertNotSame(cache, sibling);
+        String siblingKey = "cache:key:evict_publisher:sibling";
+        cache.getFirstCache().put(siblingKey, initCache(String.class));
+        sibling.getFirstCache().put(siblingKey, initCache(String.class));
+        sibling.evict(siblingKey);
+        Assert.assertNull(sibling.getFirstCache().get(siblingKey));
+        Assert.assertNull(cache.getFirstCache().get(siblingKey));
+    }
+
+    @Test
+    public void testHotKeyPromotion() {
+        String cacheName = "cache:name:hot_key_promotion";
+        String cacheKey = "cache:key:hot_key_promotion";
+        AbstractCacheManager abstractCacheManager = (AbstractCacheManager) cacheManager;
+        long threshold = abstractCacheManager.getHotKeyPromoteThreshold();
+        abstractCacheManager.setHotKeyPromoteThreshold(3);
+        LayeringCache cache;
+        try {
+            cache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1);
+        } finally {
+            abstractCacheManager.setHotKeyPromoteThreshold(threshold);
+        }
+        cache.evict(cacheKey);
+        // 前两次请求没有达到阈值，不提升
+        cache.get(cacheKey, () -> initCache(String.class));
+        cache.getFirstCache().evict(cacheKey);
+        cache.get(cacheKey, () -> initCache(String.class));
+        Assert.assertNull(cache.getHotKeyCache().getIfPresent(cacheKey));
+
+        // 第三次从二级缓存取数据时提升到热点key缓存
+        cache.getFirstCache().evict(cacheKey);
+        cache.get(cacheKey, () -> initCache(String.class));
+        Assert.assertNotNull(cache.getHotKeyCache().getIfPresent(cacheKey));
+
+        // 一级缓存被删除后仍然从热点key缓存命中
+        cache.getFirstCache().evict(cacheKey);
+        Assert.assertEquals(initCache(String.class), cache.get(cacheKey, () -> "other"));
+
+        // 修改数据时热点key缓存同时删除
+        cache.evict(cacheKey);
+        Assert.assertNull(cache.getHotKeyCache().getIfPresent(cacheKey));
+
+        // 没有开启一级缓存时热点key缓存的命中单独计数，没有设置HotKeyTracker时不提升
+        CaffeineCache firstCache = new CaffeineCache(cacheName, layeringCacheSetting1.getFirstCacheSetting(), true);
+        RedisCache secondCache = new RedisCache(cacheName, redisTemplate, layeringCacheSetting1.getSecondaryCacheSetting(), true);
+        LayeringCache hotKeyOnlyCache = new LayeringCache(redisTemplate, firstCache, secondCache, false, true, cacheName, layeringCacheSetting1);
+        hotKeyOnlyCache.setHotKeyCache(Caffeine.newBuilder().maximumSize(10).build(), 1);
+        Assert.assertEquals(initCache(String.class), hotKeyOnlyCache.get(cacheKey, () -> initCache(String.class)));
+        Assert.assertNull(hotKeyOnlyCache.getHotKeyCache().getIfPresent(cacheKey));
+        hotKeyOnlyCache.getHotKeyCache().put(cacheKey, "hot");
+        Assert.assertEquals("hot", hotKeyOnlyCache.get(cacheKey, () -> "other"));
+        Assert.assertEquals(1, hotKeyOnlyCache.getHotKeyHitCount());
+        Assert.assertEquals(0, firstCache.getCacheStats().getCacheRequestCount().longValue());
+        cache.evict(cacheKey);
+    }
+
+    @Test
+    public void testHotKeyTracker() {
+        HotKeyTracker tracker = new HotKeyTracker(3, 1);
+        for (int i = 0; i < 1000; i++) {
+            tracker.record("hot");
+            if (i % 10 == 0) {
+                tracker.record("warm");
+            }
+            // 每个冷key只请求一次
+            tracker.record("cold" + i);
+        }
+        List<HotKey> hotKeys = tracker.getHotKeys();
+        Assert.assertEquals(3, hotKeys.size());
+        Assert.assertEquals("hot", hotKeys.get(0).getKey());
+        Assert.assertTrue(hotKeys.get(0).getCount() >= 1000);
+        Assert.assertEquals("warm", hotKeys.get(1).getKey());
+        Assert.assertTrue(tracker.estimate("hot") >= 1000);
+
+        String cacheName = "cache:name:tracker";
+        Cache cache = cacheManager.getCache(cacheName, layeringCacheSetting1);
+        cache.get("cache:key:hot_key", () -> initCache(String.class));
+        List<CacheStatsInfo> hotKeyList = cacheManager.listHotKeys(cacheName);
+        Assert.assertEquals(1, hotKeyList.size());
+        Assert.assertEquals("cache:key:hot_key", hotKeyList.get(0).getHotKeys().get(0).getKey());
+    }
+
+    @Test
+    public void testMetrics() {
+        String cacheName = "cache:name:metrics";
+        String cacheKey = "cache:key:metrics";
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new LayeringCacheMetrics((AbstractCacheManager) cacheManager).bindTo(registry);
+
+        // 绑定之后新建的缓存也会注册指标
+        LayeringCache cache = (LayeringCache) cacheManager.getCache(cacheName, layeringCacheSetting1);
+        cache.evict(cacheKey);
+        cache.get(cacheKey, () -> initCache(String.class));
+        cache.get(cacheKey, () -> initCache(String.class));
+        cache.get(cacheKey, () -> initCache(String.class));
+
+        // 统计数据同步清零之后，指标仍然是累计值
+        BeanFactory.getBean(StatsService.class).flushCacheStats();
+
+        String internalKey = layeringCacheSetting1.getInternalKey();
+        Assert.assertEquals(1.0, registry.get("layering.cache.gets").tags("cache", cacheName, "internalKey", internalKey,
+                                                                         "level", "second", "result", "miss").functionCounter().count(), 0.0);
+        Assert.assertEquals(1, registry.get("layering.cache.loads").tags("cache", cacheName, "level", "second").functionTimer().count(), 0.0);
+        Assert.assertTrue(registry.get("layering.cache.gets").tags("cache", cacheName, "level", "first", "result", "hit")
+                              .functionCounter().count() >= 1);
+        Assert.assertEquals(1.0, registry.get("layering.cache.size").tags("cache", cacheName, "level", "first").gauge().value(), 0.0);
+        Assert.assertTrue(Double.isNaN(registry.get("layering.cache.weight").tags("cache", cacheName).gauge().value()));
+        Assert.assertNotNull(registry.get("layering.cache.scheduler.tasks").functionTimer());
+        Assert.assertNotNull(registry.get("layering.cache.evict.publisher.tasks").functionTimer());
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1微秒到1000微秒各一次
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        LatencyPercentiles percentiles = LatencyHistogram.percentiles(histogram.getAndReset());
+        Assert.assertEquals(1000, percentiles.getCount());
+        // 分桶的相对误差不超过6.25%
+        Assert.assertEquals(500, percentiles.getP50(), 500 * 0.0625);
+        Assert.assertEquals(900, percentiles.getP90(), 900 * 0.0625);
+        Assert.assertEquals(990, percentiles.getP99(), 990 * 0.0625);
+        Assert.assertEquals(999, percentiles.getP999(), 999 * 0.0625);
+        Assert.assertNull(LatencyHistogram.percentiles(histogram.getAndReset()));
+    }
+
     /**
      * 测试锁
      */
@@ -372,6 +1466,68 @@ public class CacheCoreTest {
         lock.unlock();
     }
 
+    /**
+     * 只记录发布的消息内容，不真正发到redis的客户端
+     */
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> recordPublishTemplate(Consumer<byte[]> consumer) {
+        RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[]{RedisConnection.class}, (proxy, method, args) -> {
+                if ("publish".equals(method.getName())) {
+                    consumer.accept((byte[]) args[1]);
+                }
+                return 0L;
+            });
+        RedisTemplate<String, Object> recordTemplate = new RedisTemplate<String, Object>() {
+            @Override
+            public <T> T execute(RedisCallback<T> action, boolean exposeConnection, boolean pipeline) {
+                return action.doInRedis(connection);
+            }
+        };
+        recordTemplate.setValueSerializer(redisTemplate.getValueSerializer());
+        return recordTemplate;
+    }
+
+    /**
+     * 记录执行的eval、pTtl、get命令，evalShaError、evalError不为NULL时模拟redis对EVALSHA、EVAL命令返回的错误回复
+     */
+    private RedisTemplate<String, Object> commandRecordTemplate(List<String> commands, String evalShaError, String evalError) {
+        RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        RedisConnectionFactory recordFactory = (RedisConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[]{RedisConnectionFactory.class}, (factoryProxy, factoryMethod, factoryArgs) -> {
+                Object target = invoke(connectionFactory, factoryMethod, factoryArgs);
+                if (!"getConnection".equals(factoryMethod.getName())) {
+                    return target;
+                }
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RedisConnection.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("eval") || "pTtl".equals(method.getName()) || "get".equals(method.getName())) {
+                        commands.add(method.getName());
+                    }
+                    String message = "evalSha".equals(method.getName()) ? evalShaError : "eval".equals(method.getName()) ? evalError : null;
+                    if (message != null) {
+                        throw new InvalidDataAccessApiUsageException(message, new JedisDataException(message));
+                    }
+                    return invoke(target, method, args);
+                });
+            });
+        RedisTemplate<String, Object> recordTemplate = new RedisTemplate<>();
+        recordTemplate.setConnectionFactory(recordFactory);
+        recordTemplate.setKeySerializer(redisTemplate.getKeySerializer());
+        recordTemplate.setValueSerializer(redisTemplate.getValueSerializer());
+        recordTemplate.setHashKeySerializer(redisTemplate.getHashKeySerializer());
+        recordTemplate.setHashValueSerializer(redisTemplate.getHashValueSerializer());
+        recordTemplate.afterPropertiesSet();
+        return recordTemplate;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
     private <T> T initCache(Class<T> t) {
         logger.debug("加载缓存");
         return (T) "test";
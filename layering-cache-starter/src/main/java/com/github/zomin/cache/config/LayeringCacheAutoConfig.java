@@ -1,11 +1,16 @@
 package com.github.zomin.cache.config;
 
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.github.zomin.aspect.LayeringAspect;
 import com.github.zomin.cache.LayeringCacheUtils;
 import com.github.zomin.cache.properties.LayeringCacheProperties;
+import com.github.zomin.manager.AbstractCacheManager;
 import com.github.zomin.manager.CacheManager;
 import com.github.zomin.manager.LayeringCacheManager;
+import com.github.zomin.stats.LayeringCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -27,7 +32,8 @@ import org.springframework.data.redis.core.RedisTemplate;
 public class LayeringCacheAutoConfig {
     @Bean(name="layerCacheManager")
     @ConditionalOnMissingBean(CacheManager.class)
-    public CacheManager layeringCacheManager(RedisTemplate<String, Object> redisTemplate, LayeringCacheProperties properties) {
+    public CacheManager layeringCacheManager(RedisTemplate<String, Object> redisTemplate, LayeringCacheProperties properties,
+                                             ObjectProvider<Weigher<Object, Object>> firstCacheWeigher) {
         LayeringCacheManager layeringCacheManager = new LayeringCacheManager(redisTemplate);
         // 缓存统计功能
         layeringCacheManager.setStats(properties.getStats().isEnabled());
@@ -39,6 +45,35 @@ public class LayeringCacheAutoConfig {
         layeringCacheManager.setSyncInitialDelay(properties.getSync().getInitialDelay());
         layeringCacheManager.setSyncDelay(properties.getSync().getDelay());
         layeringCacheManager.setSyncCacheNames(properties.getSync().getCacheKeys());
+
+        // 合并发布删除一级缓存消息
+        layeringCacheManager.setEvictBatchWindow(properties.getEvictBatch().getWindow());
+        layeringCacheManager.setEvictBatchMaxSize(properties.getEvictBatch().getMaxSize());
+
+        // 滚动升级期间按旧格式发布pub/sub消息
+        layeringCacheManager.setPubSubLegacyFormat(properties.isPubSubLegacyFormat());
+
+        // 后台任务线程池
+        layeringCacheManager.setSchedulerPoolSize(properties.getScheduler().getPoolSize());
+        layeringCacheManager.setSchedulerQueueCapacity(properties.getScheduler().getQueueCapacity());
+
+        // 一级缓存内存预算，容器中有Weigher时用它计算权重
+        layeringCacheManager.setFirstCacheMaximumWeight(properties.getFirstCache().getMaximumWeight());
+        layeringCacheManager.setFirstCacheResizeDelay(properties.getFirstCache().getResizeDelay());
+        layeringCacheManager.setFirstCacheSnapshotFile(properties.getFirstCache().getSnapshotFile());
+        layeringCacheManager.setFirstCacheSnapshotDelay(properties.getFirstCache().getSnapshotDelay());
+        layeringCacheManager.setFirstCacheSnapshotSize(properties.getFirstCache().getSnapshotSize());
+        layeringCacheManager.setFirstCacheWarmUp(properties.getFirstCache().isWarmUp());
+        layeringCacheManager.setFirstCacheWarmUpSize(properties.getFirstCache().getWarmUpSize());
+        firstCacheWeigher.ifAvailable(layeringCacheManager::setFirstCacheWeigher);
+
+        // 热点key探测
+        layeringCacheManager.setHotKey(properties.getHotKey().isEnabled());
+        layeringCacheManager.setHotKeyTopK(properties.getHotKey().getTopK());
+        layeringCacheManager.setHotKeySampleRate(properties.getHotKey().getSampleRate());
+        layeringCacheManager.setHotKeyPromoteThreshold(properties.getHotKey().getPromoteThreshold());
+        layeringCacheManager.setHotKeyCacheMaximumSize(properties.getHotKey().getCacheMaximumSize());
+        layeringCacheManager.setHotKeyCacheExpireTime(properties.getHotKey().getCacheExpireTime());
         return layeringCacheManager;
     }
 
@@ -50,4 +85,16 @@ public class LayeringCacheAutoConfig {
     @Bean
     public LayeringCacheUtils layeringCacheUtils() {return new LayeringCacheUtils();}
 
+    /**
+     * 引入了micrometer时把缓存指标注册到MeterRegistry，spring-boot-actuator会自动绑定MeterBinder
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class LayeringCacheMetricsConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(LayeringCacheMetrics.class)
+        public LayeringCacheMetrics layeringCacheMetrics(CacheManager cacheManager) {
+            return new LayeringCacheMetrics((AbstractCacheManager) cacheManager);
+        }
+    }
 }
@@ -9,11 +9,14 @@ import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.zomin.cache.properties.LayeringCacheProperties;
+import com.github.zomin.redis.serializer.ProtostuffRedisSerializer;
 import com.github.zomin.redis.serializer.RedisKeySerializer;
 import com.github.zomin.redis.utils.RedisUtils;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -34,6 +37,7 @@ import java.util.TimeZone;
  * Redis 配置类
  */
 @Configuration
+@EnableConfigurationProperties({LayeringCacheProperties.class})
 public class RedisAutoConfig extends CachingConfigurerSupport {
     @Value("${spring.redis.host}")
     private String hostName;
@@ -126,14 +130,18 @@ public class RedisAutoConfig extends CachingConfigurerSupport {
     }
 
     /**
-     * value 值 序列化
+     * value 值 序列化，layering.cache.serializer=protostuff 时使用protostuff，否则使用Jackson
      *
+     * @param properties 多级缓存配置
      * @return RedisSerializer
      */
     @Bean
     @ConditionalOnMissingBean(RedisSerializer.class)
     @SuppressWarnings("findsecbugs:JACKSON_UNSAFE_DESERIALIZATION")
-    public RedisSerializer<Object> redisSerializer() { //NOSONAR
+    public RedisSerializer<Object> redisSerializer(LayeringCacheProperties properties) { //NOSONAR
+        if ("protostuff".equalsIgnoreCase(properties.getSerializer())) {
+            return new ProtostuffRedisSerializer();
+        }
         Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<Object>(
             Object.class);
         ObjectMapper om = new ObjectMapper();
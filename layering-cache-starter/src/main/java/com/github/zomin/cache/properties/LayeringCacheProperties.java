@@ -20,6 +20,35 @@ public class LayeringCacheProperties {
      */
     private Sync sync = new Sync();
 
+    /**
+     * 合并发布删除一级缓存消息
+     */
+    private EvictBatch evictBatch = new EvictBatch();
+
+    /**
+     * 后台任务线程池
+     */
+    private Scheduler scheduler = new Scheduler();
+
+    /**
+     * 热点key探测
+     */
+    private HotKey hotKey = new HotKey();
+
+    /**
+     * 一级缓存
+     */
+    private FirstCache firstCache = new FirstCache();
+
+    /**
+     * redis value 序列化方式：jackson 或 protostuff，使用protostuff时需要引入 protostuff-runtime 依赖
+     */
+    private String serializer = "jackson";
+
+    /**
+     * 是否按升级前的格式发布pub/sub消息，从旧版本滚动升级时开启，所有节点升级完成后关闭
+     */
+    private boolean pubSubLegacyFormat = false;
 
     /**
      * 命名空间，必须唯一般使用服务名
@@ -60,6 +89,54 @@ public class LayeringCacheProperties {
         this.sync = sync;
     }
 
+    public EvictBatch getEvictBatch() {
+        return evictBatch;
+    }
+
+    public void setEvictBatch(EvictBatch evictBatch) {
+        this.evictBatch = evictBatch;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public FirstCache getFirstCache() {
+        return firstCache;
+    }
+
+    public void setFirstCache(FirstCache firstCache) {
+        this.firstCache = firstCache;
+    }
+
+    public String getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
+
+    public boolean isPubSubLegacyFormat() {
+        return pubSubLegacyFormat;
+    }
+
+    public void setPubSubLegacyFormat(boolean pubSubLegacyFormat) {
+        this.pubSubLegacyFormat = pubSubLegacyFormat;
+    }
+
+    public HotKey getHotKey() {
+        return hotKey;
+    }
+
+    public void setHotKey(HotKey hotKey) {
+        this.hotKey = hotKey;
+    }
+
     public boolean isLayeringCacheServletEnabled() {
         return layeringCacheServletEnabled;
     }
@@ -170,4 +247,233 @@ public class LayeringCacheProperties {
             this.cacheKeys = cacheKeys;
         }
     }
+
+    public static class EvictBatch {
+        /**
+         * 合并发布的时间窗口，单位毫秒，小于等于0表示逐条同步发布
+         */
+        private long window = 5;
+
+        /**
+         * 单条消息最多合并的key数量
+         */
+        private int maxSize = 500;
+
+        public long getWindow() {
+            return window;
+        }
+
+        public void setWindow(long window) {
+            this.window = window;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class Scheduler {
+        /**
+         * 统计、同步、强制刷新等后台任务共用的线程数
+         */
+        private int poolSize = 8;
+
+        /**
+         * 一次性任务等待队列的最大长度，超过后新任务被拒绝
+         */
+        private int queueCapacity = 1000;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class FirstCache {
+        /**
+         * 所有一级缓存共用的最大权重，默认按估算的内存占用（字节）计算，0表示不限制
+         */
+        private long maximumWeight = 0;
+
+        /**
+         * 按命中情况重新分配最大权重的间隔时间，单位秒，需要开启统计（layering-cache.stats.enabled）
+         */
+        private long resizeDelay = 60;
+
+        /**
+         * 一级缓存快照文件路径，重启后从快照恢复最热的条目，为空表示不保存快照
+         */
+        private String snapshotFile;
+
+        /**
+         * 保存快照的间隔时间，单位秒
+         */
+        private long snapshotDelay = 300;
+
+        /**
+         * 每个缓存保存到快照的最大条目数
+         */
+        private int snapshotSize = 1000;
+
+        /**
+         * 新建缓存时是否从其它节点预热一级缓存
+         */
+        private boolean warmUp = false;
+
+        /**
+         * 每个缓存最多预热的key数量
+         */
+        private int warmUpSize = 1000;
+
+        public long getMaximumWeight() {
+            return maximumWeight;
+        }
+
+        public void setMaximumWeight(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        public long getResizeDelay() {
+            return resizeDelay;
+        }
+
+        public void setResizeDelay(long resizeDelay) {
+            this.resizeDelay = resizeDelay;
+        }
+
+        public String getSnapshotFile() {
+            return snapshotFile;
+        }
+
+        public void setSnapshotFile(String snapshotFile) {
+            this.snapshotFile = snapshotFile;
+        }
+
+        public long getSnapshotDelay() {
+            return snapshotDelay;
+        }
+
+        public void setSnapshotDelay(long snapshotDelay) {
+            this.snapshotDelay = snapshotDelay;
+        }
+
+        public int getSnapshotSize() {
+            return snapshotSize;
+        }
+
+        public void setSnapshotSize(int snapshotSize) {
+            this.snapshotSize = snapshotSize;
+        }
+
+        public boolean isWarmUp() {
+            return warmUp;
+        }
+
+        public void setWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+        }
+
+        public int getWarmUpSize() {
+            return warmUpSize;
+        }
+
+        public void setWarmUpSize(int warmUpSize) {
+            this.warmUpSize = warmUpSize;
+        }
+    }
+
+    public static class HotKey {
+        /**
+         * 是否开启热点key探测
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每个缓存保留的热点key数量
+         */
+        private int topK = 10;
+
+        /**
+         * 采样率，每多少次请求采样一次
+         */
+        private int sampleRate = 10;
+
+        /**
+         * 估算的请求次数达到该值的热点key提升到热点key缓存，小于等于0表示不提升
+         */
+        private long promoteThreshold = 1000;
+
+        /**
+         * 每个缓存的热点key缓存最多保存的key数量
+         */
+        private int cacheMaximumSize = 1000;
+
+        /**
+         * 热点key缓存的有效时间，单位秒
+         */
+        private long cacheExpireTime = 60;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTopK() {
+            return topK;
+        }
+
+        public void setTopK(int topK) {
+            this.topK = topK;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public long getPromoteThreshold() {
+            return promoteThreshold;
+        }
+
+        public void setPromoteThreshold(long promoteThreshold) {
+            this.promoteThreshold = promoteThreshold;
+        }
+
+        public int getCacheMaximumSize() {
+            return cacheMaximumSize;
+        }
+
+        public void setCacheMaximumSize(int cacheMaximumSize) {
+            this.cacheMaximumSize = cacheMaximumSize;
+        }
+
+        public long getCacheExpireTime() {
+            return cacheExpireTime;
+        }
+
+        public void setCacheExpireTime(long cacheExpireTime) {
+            this.cacheExpireTime = cacheExpireTime;
+        }
+    }
 }
@@ -0,0 +1,306 @@
+package com.github.zomin.redis.embedded;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 进程内的redis替身，使用RESP协议，可以直接用Jedis/Lettuce连接
+ * <p>
+ * 支持本项目用到的命令：GET/SET(EX/PX/NX/XX)/SETEX/PSETEX/SETNX/MGET/DEL/EXISTS/TYPE/EXPIRE/PEXPIRE/TTL/PTTL/
+ * INCR/INCRBY/HGET/HSET/HGETALL/HDEL/HINCRBY/KEYS/SCAN/PUBLISH/SUBSCRIBE/PSUBSCRIBE，以及本项目自带lua脚本的
+ * EVAL/EVALSHA。每条命令执行前可以注入固定的延迟，用来模拟网络往返。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class EmbeddedRedisServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedRedisServer.class);
+
+    /**
+     * RedisCache 一次获取缓存值和剩余有效时间的脚本
+     */
+    static final String GET_WITH_TTL_SCRIPT = "return {redis.call('pttl', KEYS[1]), redis.call('get', KEYS[1])}";
+
+    /**
+     * Lock 解锁脚本
+     */
+    static final String UNLOCK_SCRIPT = "if redis.call(\"get\",KEYS[1]) == ARGV[1] "
+            + "then "
+            + "    return redis.call(\"del\",KEYS[1]) "
+            + "else "
+            + "    return 0 "
+            + "end ";
+
+    private final RedisDataStore store = new RedisDataStore();
+
+    /**
+     * 已知的脚本，key是脚本的SHA1
+     */
+    private final Map<String, ScriptHandler> scripts = new ConcurrentHashMap<>(16);
+
+    /**
+     * 频道订阅者
+     */
+    private final Map<String, Set<RespConnection>> channels = new ConcurrentHashMap<>(16);
+
+    /**
+     * 模式订阅者，key是匹配模式
+     */
+    private final Map<String, Set<RespConnection>> patterns = new ConcurrentHashMap<>(16);
+
+    private final Set<RespConnection> connections = new CopyOnWriteArraySet<>();
+
+    private final AtomicInteger connectionIndex = new AtomicInteger();
+
+    private final int port;
+
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * 每条命令注入的延迟，纳秒
+     */
+    private volatile long latencyNanos;
+
+    /**
+     * 使用随机端口
+     */
+    public EmbeddedRedisServer() {
+        this(0);
+    }
+
+    /**
+     * @param port 端口，0表示随机端口
+     */
+    public EmbeddedRedisServer(int port) {
+        this.port = port;
+        registerScript(GET_WITH_TTL_SCRIPT, (store, keys, args) -> {
+            List<Object> result = new ArrayList<>(2);
+            result.add(store.pttl(keys.get(0)));
+            byte[] value = store.get(keys.get(0));
+            // lua table 遇到nil会被截断
+            if (value != null) {
+                result.add(value);
+            }
+            return result;
+        });
+        registerScript(UNLOCK_SCRIPT, (store, keys, args) -> {
+            byte[] value = store.get(keys.get(0));
+            if (value != null && Arrays.equals(value, args.get(0))) {
+                return store.del(keys);
+            }
+            return 0L;
+        });
+    }
+
+    /**
+     * 启动服务
+     *
+     * @return EmbeddedRedisServer
+     */
+    public synchronized EmbeddedRedisServer start() {
+        if (serverSocket != null) {
+            return this;
+        }
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            throw new IllegalStateException("内嵌redis启动失败，端口：" + port, e);
+        }
+        Thread acceptor = new Thread(this::accept, "embedded-redis-acceptor-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("内嵌redis启动完成，端口：{}", getPort());
+        return this;
+    }
+
+    /**
+     * 停止服务并断开所有连接
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("关闭内嵌redis失败", e);
+        }
+        for (RespConnection connection : connections) {
+            connection.close();
+        }
+        serverSocket = null;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public String getHost() {
+        return InetAddress.getLoopbackAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? port : socket.getLocalPort();
+    }
+
+    /**
+     * 设置每条命令注入的延迟
+     *
+     * @param latency  延迟
+     * @param timeUnit 时间单位
+     */
+    public void setLatency(long latency, TimeUnit timeUnit) {
+        this.latencyNanos = timeUnit.toNanos(latency);
+    }
+
+    /**
+     * 注册脚本的Java实现
+     *
+     * @param script  脚本内容
+     * @param handler 脚本实现
+     */
+    public void registerScript(String script, ScriptHandler handler) {
+        scripts.put(sha1(script), handler);
+    }
+
+    /**
+     * 清空数据
+     */
+    public void flushAll() {
+        store.flushAll();
+    }
+
+    public RedisDataStore getStore() {
+        return store;
+    }
+
+    long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    ScriptHandler getScript(String sha1) {
+        return scripts.get(sha1);
+    }
+
+    boolean hasScript(String sha1) {
+        return scripts.containsKey(sha1);
+    }
+
+    void subscribe(String channel, RespConnection connection) {
+        channels.computeIfAbsent(channel, k -> new CopyOnWriteArraySet<>()).add(connection);
+    }
+
+    void unsubscribe(String channel, RespConnection connection) {
+        Set<RespConnection> subscribers = channels.get(channel);
+        if (subscribers != null) {
+            subscribers.remove(connection);
+        }
+    }
+
+    void psubscribe(String pattern, RespConnection connection) {
+        patterns.computeIfAbsent(pattern, k -> new CopyOnWriteArraySet<>()).add(connection);
+    }
+
+    void punsubscribe(String pattern, RespConnection connection) {
+        Set<RespConnection> subscribers = patterns.get(pattern);
+        if (subscribers != null) {
+            subscribers.remove(connection);
+        }
+    }
+
+    /**
+     * 发布消息
+     *
+     * @return 收到消息的订阅者数量
+     */
+    long publish(byte[] channel, byte[] message) {
+        long count = 0;
+        String channelKey = RedisDataStore.toKey(channel);
+        Set<RespConnection> subscribers = channels.get(channelKey);
+        if (subscribers != null) {
+            for (RespConnection subscriber : subscribers) {
+                if (subscriber.deliver(channel, message)) {
+                    count++;
+                }
+            }
+        }
+        for (Map.Entry<String, Set<RespConnection>> entry : patterns.entrySet()) {
+            Pattern regex = RedisDataStore.globToRegex(RedisDataStore.toBytes(entry.getKey()));
+            if (!regex.matcher(channelKey).matches()) {
+                continue;
+            }
+            for (RespConnection subscriber : entry.getValue()) {
+                if (subscriber.deliverPattern(RedisDataStore.toBytes(entry.getKey()), channel, message)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    void removeConnection(RespConnection connection) {
+        connections.remove(connection);
+        for (Set<RespConnection> subscribers : channels.values()) {
+            subscribers.remove(connection);
+        }
+        for (Set<RespConnection> subscribers : patterns.values()) {
+            subscribers.remove(connection);
+        }
+    }
+
+    private void accept() {
+        ServerSocket socket = serverSocket;
+        while (socket != null && !socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                client.setTcpNoDelay(true);
+                RespConnection connection = new RespConnection(this, client);
+                connections.add(connection);
+                Thread thread = new Thread(connection, "embedded-redis-connection-" + connectionIndex.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("内嵌redis接收连接失败", e);
+                }
+            }
+        }
+    }
+
+    static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
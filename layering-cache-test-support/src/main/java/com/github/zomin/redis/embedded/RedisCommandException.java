@@ -0,0 +1,13 @@
+package com.github.zomin.redis.embedded;
+
+/**
+ * 命令执行失败，消息内容会作为redis错误回复原样返回给客户端，需要以错误类型开头，如 "ERR ..."
+ *
+ * @author kalend.zhang
+ */
+public class RedisCommandException extends RuntimeException {
+
+    public RedisCommandException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,417 @@
+package com.github.zomin.redis.embedded;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 内嵌redis的数据存储
+ * <p>
+ * 所有操作都在同一把锁内执行，和redis单线程执行命令的语义一致，lua脚本也因此是原子的。
+ * key使用ISO-8859-1编码成字符串保存，和原始byte数组一一对应。过期的key在访问时删除。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+public class RedisDataStore {
+
+    /**
+     * key 不存在时 TTL/PTTL 的返回值
+     */
+    public static final long KEY_NOT_EXISTS = -2;
+
+    /**
+     * key 没有设置过期时间时 TTL/PTTL 的返回值
+     */
+    public static final long NO_EXPIRE = -1;
+
+    private final Map<String, Entry> data = new HashMap<>(256);
+
+    /**
+     * 获取字符串类型的值
+     *
+     * @param key key
+     * @return 不存在时返回null
+     */
+    public synchronized byte[] get(byte[] key) {
+        Entry entry = getEntry(key);
+        return entry == null ? null : entry.asString();
+    }
+
+    /**
+     * 设置字符串类型的值
+     *
+     * @param key          key
+     * @param value        值
+     * @param expireMillis 过期时间，小于等于0表示不过期
+     * @param nx           只在key不存在时设置
+     * @param xx           只在key存在时设置
+     * @return 是否设置成功
+     */
+    public synchronized boolean set(byte[] key, byte[] value, long expireMillis, boolean nx, boolean xx) {
+        Entry entry = getEntry(key);
+        if ((nx && entry != null) || (xx && entry == null)) {
+            return false;
+        }
+        data.put(toKey(key), new Entry(value, expireMillis > 0 ? System.currentTimeMillis() + expireMillis : 0));
+        return true;
+    }
+
+    /**
+     * 删除key
+     *
+     * @param keys keys
+     * @return 删除的数量
+     */
+    public synchronized long del(List<byte[]> keys) {
+        long count = 0;
+        for (byte[] key : keys) {
+            if (getEntry(key) != null) {
+                data.remove(toKey(key));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * key是否存在
+     *
+     * @param key key
+     * @return boolean
+     */
+    public synchronized boolean exists(byte[] key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * 获取key的类型
+     *
+     * @param key key
+     * @return none、string 或 hash
+     */
+    public synchronized String type(byte[] key) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return "none";
+        }
+        return entry.value instanceof byte[] ? "string" : "hash";
+    }
+
+    /**
+     * 获取剩余有效时间
+     *
+     * @param key key
+     * @return 毫秒，key不存在返回-2，没有过期时间返回-1
+     */
+    public synchronized long pttl(byte[] key) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return KEY_NOT_EXISTS;
+        }
+        if (entry.expireAt == 0) {
+            return NO_EXPIRE;
+        }
+        return Math.max(0, entry.expireAt - System.currentTimeMillis());
+    }
+
+    /**
+     * 设置有效时间
+     *
+     * @param key          key
+     * @param expireMillis 有效时间，毫秒，小于等于0表示移除过期时间
+     * @return key是否存在
+     */
+    public synchronized boolean pexpire(byte[] key, long expireMillis) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.expireAt = expireMillis > 0 ? System.currentTimeMillis() + expireMillis : 0;
+        return true;
+    }
+
+    /**
+     * 自增
+     *
+     * @param key       key
+     * @param increment 增量
+     * @return 自增后的值
+     */
+    public synchronized long incrBy(byte[] key, long increment) {
+        Entry entry = getEntry(key);
+        long value = entry == null ? increment : parseLong(entry.asString()) + increment;
+        byte[] bytes = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        if (entry == null) {
+            data.put(toKey(key), new Entry(bytes, 0));
+        } else {
+            entry.value = bytes;
+        }
+        return value;
+    }
+
+    /**
+     * 获取hash的一个字段
+     *
+     * @param key   key
+     * @param field 字段
+     * @return 不存在时返回null
+     */
+    public synchronized byte[] hget(byte[] key, byte[] field) {
+        Entry entry = getEntry(key);
+        return entry == null ? null : entry.asHash().get(toKey(field));
+    }
+
+    /**
+     * 设置hash的字段
+     *
+     * @param key   key
+     * @param field 字段
+     * @param value 值
+     * @return 新增的字段返回true
+     */
+    public synchronized boolean hset(byte[] key, byte[] field, byte[] value) {
+        return getOrCreateHash(key).put(toKey(field), value) == null;
+    }
+
+    /**
+     * 获取hash的所有字段
+     *
+     * @param key key
+     * @return 字段和值，key不存在时返回空Map
+     */
+    public synchronized Map<byte[], byte[]> hgetAll(byte[] key) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return Collections.emptyMap();
+        }
+        Map<byte[], byte[]> result = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> field : entry.asHash().entrySet()) {
+            result.put(toBytes(field.getKey()), field.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 删除hash的字段
+     *
+     * @param key    key
+     * @param fields 字段
+     * @return 删除的数量
+     */
+    public synchronized long hdel(byte[] key, List<byte[]> fields) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return 0;
+        }
+        Map<String, byte[]> hash = entry.asHash();
+        long count = 0;
+        for (byte[] field : fields) {
+            if (hash.remove(toKey(field)) != null) {
+                count++;
+            }
+        }
+        if (hash.isEmpty()) {
+            data.remove(toKey(key));
+        }
+        return count;
+    }
+
+    /**
+     * hash字段自增
+     *
+     * @param key       key
+     * @param field     字段
+     * @param increment 增量
+     * @return 自增后的值
+     */
+    public synchronized long hincrBy(byte[] key, byte[] field, long increment) {
+        Map<String, byte[]> hash = getOrCreateHash(key);
+        byte[] old = hash.get(toKey(field));
+        long value = (old == null ? 0 : parseLong(old)) + increment;
+        hash.put(toKey(field), Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        return value;
+    }
+
+    /**
+     * 查找匹配的key
+     *
+     * @param pattern glob风格的匹配模式
+     * @return keys
+     */
+    public synchronized List<byte[]> keys(byte[] pattern) {
+        Pattern regex = globToRegex(pattern);
+        List<byte[]> result = new ArrayList<>();
+        for (String key : liveKeys()) {
+            if (regex.matcher(key).matches()) {
+                result.add(toBytes(key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 迭代key，游标是排序后key的下标
+     *
+     * @param cursor  游标
+     * @param pattern glob风格的匹配模式，null表示全部
+     * @param count   本次最多检查的key数量
+     * @return 第一个元素是下一个游标，第二个元素是本次匹配的key
+     */
+    public synchronized Object[] scan(long cursor, byte[] pattern, int count) {
+        List<String> keys = liveKeys();
+        Collections.sort(keys);
+        Pattern regex = pattern == null ? null : globToRegex(pattern);
+        List<byte[]> matched = new ArrayList<>();
+        int index = (int) Math.min(cursor, keys.size());
+        int end = Math.min(keys.size(), index + Math.max(1, count));
+        for (; index < end; index++) {
+            String key = keys.get(index);
+            if (regex == null || regex.matcher(key).matches()) {
+                matched.add(toBytes(key));
+            }
+        }
+        long next = index >= keys.size() ? 0 : index;
+        return new Object[]{next, matched};
+    }
+
+    /**
+     * key数量
+     *
+     * @return long
+     */
+    public synchronized long size() {
+        return liveKeys().size();
+    }
+
+    /**
+     * 清空所有数据
+     */
+    public synchronized void flushAll() {
+        data.clear();
+    }
+
+    /**
+     * glob风格的匹配模式转换成正则表达式
+     *
+     * @param pattern 匹配模式
+     * @return Pattern
+     */
+    static Pattern globToRegex(byte[] pattern) {
+        String glob = toKey(pattern);
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+                regex.append(c == '^' ? "\\^" : String.valueOf(c));
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                inClass = true;
+                regex.append('[');
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '^') {
+                    regex.append('^');
+                    i++;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    static String toKey(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static long parseLong(byte[] bytes) {
+        try {
+            return Long.parseLong(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw new RedisCommandException("ERR value is not an integer or out of range");
+        }
+    }
+
+    private List<String> liveKeys() {
+        List<String> keys = new ArrayList<>(data.size());
+        long now = System.currentTimeMillis();
+        data.entrySet().removeIf(entry -> entry.getValue().isExpired(now));
+        keys.addAll(data.keySet());
+        return keys;
+    }
+
+    private Entry getEntry(byte[] key) {
+        String k = toKey(key);
+        Entry entry = data.get(k);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            data.remove(k);
+            return null;
+        }
+        return entry;
+    }
+
+    private Map<String, byte[]> getOrCreateHash(byte[] key) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            entry = new Entry(new LinkedHashMap<String, byte[]>(), 0);
+            data.put(toKey(key), entry);
+        }
+        return entry.asHash();
+    }
+
+    /**
+     * 一个key的值和过期时间
+     */
+    private static class Entry {
+        /**
+         * byte[] 或者 Map&lt;String, byte[]&gt;
+         */
+        private Object value;
+
+        /**
+         * 过期的时间点，0表示不过期
+         */
+        private long expireAt;
+
+        Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt != 0 && expireAt <= now;
+        }
+
+        byte[] asString() {
+            if (!(value instanceof byte[])) {
+                throw new RedisCommandException("WRONGTYPE Operation against a key holding the wrong kind of value");
+            }
+            return (byte[]) value;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, byte[]> asHash() {
+            if (!(value instanceof Map)) {
+                throw new RedisCommandException("WRONGTYPE Operation against a key holding the wrong kind of value");
+            }
+            return (Map<String, byte[]>) value;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.github.zomin.redis.embedded;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 内嵌redis的一个客户端连接，解析RESP请求并执行命令
+ *
+ * @author kalend.zhang
+ */
+class RespConnection implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(RespConnection.class);
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] OK = "OK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = "PONG".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO_REPLY = new byte[0];
+
+    private final EmbeddedRedisServer server;
+
+    private final RedisDataStore store;
+
+    private final Socket socket;
+
+    private final InputStream in;
+
+    private final OutputStream out;
+
+    /**
+     * 当前连接订阅的频道
+     */
+    private final Set<String> channels = new LinkedHashSet<>();
+
+    /**
+     * 当前连接订阅的模式
+     */
+    private final Set<String> patterns = new LinkedHashSet<>();
+
+    RespConnection(EmbeddedRedisServer server, Socket socket) throws IOException {
+        this.server = server;
+        this.store = server.getStore();
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!socket.isClosed()) {
+                List<byte[]> command = readCommand();
+                if (command == null) {
+                    break;
+                }
+                if (command.isEmpty()) {
+                    continue;
+                }
+                long latency = server.getLatencyNanos();
+                if (latency > 0) {
+                    LockSupport.parkNanos(latency);
+                }
+                Object reply;
+                try {
+                    reply = execute(command);
+                } catch (RedisCommandException e) {
+                    reply = e;
+                } catch (RuntimeException e) {
+                    reply = new RedisCommandException("ERR " + e);
+                }
+                if (reply != NO_REPLY) {
+                    write(reply);
+                }
+                if ("QUIT".equals(name(command))) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("内嵌redis连接断开：{}", e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    void close() {
+        server.removeConnection(this);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    boolean deliver(byte[] channel, byte[] message) {
+        return send(Arrays.asList("message".getBytes(StandardCharsets.US_ASCII), channel, message));
+    }
+
+    boolean deliverPattern(byte[] pattern, byte[] channel, byte[] message) {
+        return send(Arrays.asList("pmessage".getBytes(StandardCharsets.US_ASCII), pattern, channel, message));
+    }
+
+    private boolean send(Object reply) {
+        try {
+            write(reply);
+            return true;
+        } catch (IOException e) {
+            close();
+            return false;
+        }
+    }
+
+    private Object execute(List<byte[]> command) {
+        String name = name(command);
+        switch (name) {
+            case "PING":
+                if (!channels.isEmpty() || !patterns.isEmpty()) {
+                    return Arrays.asList("pong".getBytes(StandardCharsets.US_ASCII), new byte[0]);
+                }
+                return command.size() > 1 ? command.get(1) : new Status(PONG);
+            case "ECHO":
+                return arg(command, 1);
+            case "QUIT":
+            case "SELECT":
+            case "AUTH":
+            case "CLIENT":
+                return new Status(OK);
+            case "FLUSHDB":
+            case "FLUSHALL":
+                store.flushAll();
+                return new Status(OK);
+            case "DBSIZE":
+                return store.size();
+            case "GET":
+                return store.get(arg(command, 1));
+            case "SET":
+                return set(command);
+            case "SETNX":
+                return store.set(arg(command, 1), arg(command, 2), 0, true, false) ? 1L : 0L;
+            case "SETEX":
+                store.set(arg(command, 1), arg(command, 3), longArg(command, 2) * 1000, false, false);
+                return new Status(OK);
+            case "PSETEX":
+                store.set(arg(command, 1), arg(command, 3), longArg(command, 2), false, false);
+                return new Status(OK);
+            case "MGET":
+                List<Object> values = new ArrayList<>(command.size() - 1);
+                for (int i = 1; i < command.size(); i++) {
+                    values.add(store.get(command.get(i)));
+                }
+                return values;
+            case "DEL":
+            case "UNLINK":
+                return store.del(command.subList(1, command.size()));
+            case "EXISTS":
+                long exists = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    exists += store.exists(command.get(i)) ? 1 : 0;
+                }
+                return exists;
+            case "TYPE":
+                return new Status(store.type(arg(command, 1)).getBytes(StandardCharsets.US_ASCII));
+            case "EXPIRE":
+                return store.pexpire(arg(command, 1), longArg(command, 2) * 1000) ? 1L : 0L;
+            case "PEXPIRE":
+                return store.pexpire(arg(command, 1), longArg(command, 2)) ? 1L : 0L;
+            case "PERSIST":
+                return store.pexpire(arg(command, 1), 0) ? 1L : 0L;
+            case "TTL":
+                long pttl = store.pttl(arg(command, 1));
+                return pttl < 0 ? pttl : (pttl + 500) / 1000;
+            case "PTTL":
+                return store.pttl(arg(command, 1));
+            case "INCR":
+                return store.incrBy(arg(command, 1), 1);
+            case "INCRBY":
+                return store.incrBy(arg(command, 1), longArg(command, 2));
+            case "DECR":
+                return store.incrBy(arg(command, 1), -1);
+            case "DECRBY":
+                return store.incrBy(arg(command, 1), -longArg(command, 2));
+            case "HGET":
+                return store.hget(arg(command, 1), arg(command, 2));
+            case "HSET":
+            case "HMSET":
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    added += store.hset(command.get(1), command.get(i), command.get(i + 1)) ? 1 : 0;
+                }
+                return "HMSET".equals(name) ? new Status(OK) : added;
+            case "HGETALL":
+                List<Object> entries = new ArrayList<>();
+                for (Map.Entry<byte[], byte[]> entry : store.hgetAll(arg(command, 1)).entrySet()) {
+                    entries.add(entry.getKey());
+                    entries.add(entry.getValue());
+                }
+                return entries;
+            case "HDEL":
+                return store.hdel(arg(command, 1), command.subList(2, command.size()));
+            case "HINCRBY":
+                return store.hincrBy(arg(command, 1), arg(command, 2), longArg(command, 3));
+            case "KEYS":
+                return store.keys(arg(command, 1));
+            case "SCAN":
+                return scan(command);
+            case "EVAL":
+                return eval(EmbeddedRedisServer.sha1(new String(arg(command, 1), StandardCharsets.UTF_8)), command, true);
+            case "EVALSHA":
+                return eval(new String(arg(command, 1), StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT), command, false);
+            case "SCRIPT":
+                return script(command);
+            case "PUBLISH":
+                return server.publish(arg(command, 1), arg(command, 2));
+            case "SUBSCRIBE":
+                return subscribe(command, false);
+            case "PSUBSCRIBE":
+                return subscribe(command, true);
+            case "UNSUBSCRIBE":
+                return unsubscribe(command, false);
+            case "PUNSUBSCRIBE":
+                return unsubscribe(command, true);
+            default:
+                throw new RedisCommandException("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private Object set(List<byte[]> command) {
+        long expireMillis = 0;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < command.size(); i++) {
+            String option = new String(command.get(i), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            switch (option) {
+                case "EX":
+                    expireMillis = longArg(command, ++i) * 1000;
+                    break;
+                case "PX":
+                    expireMillis = longArg(command, ++i);
+                    break;
+                case "NX":
+                    nx = true;
+                    break;
+                case "XX":
+                    xx = true;
+                    break;
+                default:
+                    throw new RedisCommandException("ERR syntax error");
+            }
+        }
+        return store.set(arg(command, 1), arg(command, 2), expireMillis, nx, xx) ? new Status(OK) : null;
+    }
+
+    private Object scan(List<byte[]> command) {
+        byte[] pattern = null;
+        int count = 10;
+        for (int i = 2; i + 1 < command.size(); i += 2) {
+            String option = new String(command.get(i), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            if ("MATCH".equals(option)) {
+                pattern = command.get(i + 1);
+            } else if ("COUNT".equals(option)) {
+                count = (int) longArg(command, i + 1);
+            }
+        }
+        Object[] result = store.scan(longArg(command, 1), pattern, count);
+        return Arrays.asList(String.valueOf(result[0]).getBytes(StandardCharsets.US_ASCII), result[1]);
+    }
+
+    private Object eval(String sha1, List<byte[]> command, boolean eval) {
+        ScriptHandler handler = server.getScript(sha1);
+        if (handler == null) {
+            if (eval) {
+                throw new RedisCommandException("ERR embedded redis does not support script " + sha1);
+            }
+            throw new RedisCommandException("NOSCRIPT No matching script. Please use EVAL.");
+        }
+        int numKeys = (int) longArg(command, 2);
+        List<byte[]> keys = command.subList(3, 3 + numKeys);
+        List<byte[]> args = command.subList(3 + numKeys, command.size());
+        synchronized (store) {
+            return handler.execute(store, keys, args);
+        }
+    }
+
+    private Object script(List<byte[]> command) {
+        String subCommand = new String(arg(command, 1), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+        switch (subCommand) {
+            case "LOAD":
+                String sha1 = EmbeddedRedisServer.sha1(new String(arg(command, 2), StandardCharsets.UTF_8));
+                if (!server.hasScript(sha1)) {
+                    throw new RedisCommandException("ERR embedded redis does not support script " + sha1);
+                }
+                return sha1.getBytes(StandardCharsets.US_ASCII);
+            case "EXISTS":
+                List<Object> exists = new ArrayList<>();
+                for (int i = 2; i < command.size(); i++) {
+                    exists.add(server.hasScript(new String(command.get(i), StandardCharsets.US_ASCII)) ? 1L : 0L);
+                }
+                return exists;
+            case "FLUSH":
+                return new Status(OK);
+            default:
+                throw new RedisCommandException("ERR unknown SCRIPT subcommand '" + subCommand + "'");
+        }
+    }
+
+    private Object subscribe(List<byte[]> command, boolean pattern) {
+        String kind = pattern ? "psubscribe" : "subscribe";
+        for (int i = 1; i < command.size(); i++) {
+            String name = RedisDataStore.toKey(command.get(i));
+            if (pattern) {
+                patterns.add(name);
+                server.psubscribe(name, this);
+            } else {
+                channels.add(name);
+                server.subscribe(name, this);
+            }
+            send(Arrays.asList(kind.getBytes(StandardCharsets.US_ASCII), command.get(i), (long) (channels.size() + patterns.size())));
+        }
+        return NO_REPLY;
+    }
+
+    private Object unsubscribe(List<byte[]> command, boolean pattern) {
+        String kind = pattern ? "punsubscribe" : "unsubscribe";
+        Set<String> subscribed = pattern ? patterns : channels;
+        Collection<String> names = new ArrayList<>();
+        for (int i = 1; i < command.size(); i++) {
+            names.add(RedisDataStore.toKey(command.get(i)));
+        }
+        if (names.isEmpty()) {
+            names.addAll(subscribed);
+        }
+        if (names.isEmpty()) {
+            send(Arrays.asList(kind.getBytes(StandardCharsets.US_ASCII), null, (long) (channels.size() + patterns.size())));
+            return NO_REPLY;
+        }
+        for (String name : names) {
+            subscribed.remove(name);
+            if (pattern) {
+                server.punsubscribe(name, this);
+            } else {
+                server.unsubscribe(name, this);
+            }
+            send(Arrays.asList(kind.getBytes(StandardCharsets.US_ASCII), RedisDataStore.toBytes(name),
+                    (long) (channels.size() + patterns.size())));
+        }
+        return NO_REPLY;
+    }
+
+    private static String name(List<byte[]> command) {
+        return new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+    }
+
+    private static byte[] arg(List<byte[]> command, int index) {
+        if (index >= command.size()) {
+            throw new RedisCommandException("ERR wrong number of arguments for '" + name(command).toLowerCase(Locale.ROOT) + "' command");
+        }
+        return command.get(index);
+    }
+
+    private static long longArg(List<byte[]> command, int index) {
+        return RedisDataStore.parseLong(arg(command, index));
+    }
+
+    // ------------------------------ RESP ------------------------------
+
+    private List<byte[]> readCommand() throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first != '*') {
+            // inline 命令
+            String line = (char) first + readLine();
+            List<byte[]> command = new ArrayList<>();
+            for (String part : line.trim().split("\\s+")) {
+                if (!part.isEmpty()) {
+                    command.add(part.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return command;
+        }
+        int count = Integer.parseInt(readLine());
+        List<byte[]> command = new ArrayList<>(Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("协议错误，期望批量字符串");
+            }
+            int length = Integer.parseInt(readLine());
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                offset += read;
+            }
+            readLine();
+            command.add(bytes);
+        }
+        return command;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\r') {
+                in.read();
+                return sb.toString();
+            }
+            sb.append((char) b);
+        }
+        throw new EOFException();
+    }
+
+    private void write(Object reply) throws IOException {
+        synchronized (out) {
+            writeReply(reply);
+            out.flush();
+        }
+    }
+
+    private void writeReply(Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1".getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+        } else if (reply instanceof Status) {
+            out.write('+');
+            out.write(((Status) reply).value);
+            out.write(CRLF);
+        } else if (reply instanceof RedisCommandException) {
+            out.write('-');
+            out.write(((RedisCommandException) reply).getMessage().getBytes(StandardCharsets.UTF_8));
+            out.write(CRLF);
+        } else if (reply instanceof Long) {
+            out.write(':');
+            out.write(reply.toString().getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+        } else if (reply instanceof byte[]) {
+            byte[] bytes = (byte[]) reply;
+            out.write('$');
+            out.write(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(bytes);
+            out.write(CRLF);
+        } else if (reply instanceof List) {
+            List<?> list = (List<?>) reply;
+            out.write('*');
+            out.write(Integer.toString(list.size()).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            for (Object item : list) {
+                writeReply(item);
+            }
+        } else if (reply instanceof Number) {
+            writeReply(((Number) reply).longValue());
+        } else if (reply instanceof Boolean) {
+            writeReply((Boolean) reply ? 1L : 0L);
+        } else {
+            writeReply(reply.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 状态回复，如 +OK
+     */
+    private static class Status {
+        private final byte[] value;
+
+        Status(byte[] value) {
+            this.value = value;
+        }
+    }
+}
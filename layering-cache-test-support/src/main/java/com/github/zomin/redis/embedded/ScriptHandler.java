@@ -0,0 +1,25 @@
+package com.github.zomin.redis.embedded;
+
+import java.util.List;
+
+/**
+ * 内嵌redis不解释lua，已知的脚本由对应的Java实现执行
+ * <p>
+ * 返回值按redis的规则转换：Long 是整数回复，byte[] 是批量回复，List 是数组回复，null 是空回复。
+ * </p>
+ *
+ * @author kalend.zhang
+ */
+@FunctionalInterface
+public interface ScriptHandler {
+
+    /**
+     * 执行脚本
+     *
+     * @param store 数据存储，脚本执行期间持有存储的锁
+     * @param keys  KEYS
+     * @param args  ARGV
+     * @return 脚本返回值
+     */
+    Object execute(RedisDataStore store, List<byte[]> keys, List<byte[]> args);
+}
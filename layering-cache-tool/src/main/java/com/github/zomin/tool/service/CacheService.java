@@ -2,7 +2,9 @@ package com.github.zomin.tool.service;
 
 import com.github.zomin.cache.Cache;
 import com.github.zomin.cache.LayeringCache;
+import com.github.zomin.cache.LazyValue;
 import com.github.zomin.cache.caffeine.CaffeineCache;
+import com.github.zomin.cache.offheap.OffHeapCache;
 import com.github.zomin.manager.AbstractCacheManager;
 import com.github.zomin.setting.FirstCacheSetting;
 import com.github.zomin.setting.LayeringCacheSetting;
@@ -110,10 +112,17 @@ public class CacheService {
                     ConcurrentMap<String,Cache> cacheConcurrentMap = cacheManager.getCacheContainer().get(tempKey);
                     for (String tempCacheKey : cacheConcurrentMap.keySet()){
                         LayeringCache lc = (LayeringCache)cacheConcurrentMap.get(tempCacheKey);
+                        if (lc.getFirstCache() instanceof OffHeapCache) {
+                            // 堆外缓存的索引里只有内存块，需要通过缓存读取反序列化后的值
+                            for (Object cmKey : ((OffHeapCache) lc.getFirstCache()).getNativeCache().asMap().keySet()) {
+                                cacheMap.put(tempKey, lc.getFirstCache().get(cmKey));
+                            }
+                            continue;
+                        }
                         ConcurrentMap cm = ((CaffeineCache) lc.getFirstCache()).getNativeCache().asMap();
                         Set<String> cmKeyset = cm.keySet();
                         for (String cmKey : cmKeyset) {
-                            Object value = cm.get(cmKey);
+                            Object value = LazyValue.unwrap(cm.get(cmKey));
                             cacheMap.put(tempKey, value);
                         }
                     }
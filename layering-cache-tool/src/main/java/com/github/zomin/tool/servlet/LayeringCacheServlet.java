@@ -81,6 +81,18 @@ public class LayeringCacheServlet extends HttpServlet {
             return;
         }
 
+        // 本节点实时热点key
+        if (URLConstant.CACHE_STATS_HOT_KEYS.equals(path)) {
+            String cacheName = request.getParameter("cacheName");
+            Set<AbstractCacheManager> cacheManagers = AbstractCacheManager.getCacheManager();
+            List<CacheStatsInfo> hotKeys = new ArrayList<>();
+            for (AbstractCacheManager cacheManager : cacheManagers) {
+                hotKeys.addAll(cacheManager.listHotKeys(cacheName));
+            }
+            response.getWriter().write(JSON.toJSONString(Result.success(hotKeys)));
+            return;
+        }
+
         // 删除缓存
         if (URLConstant.CACHE_STATS_DELETE_CACHW.equals(path)) {
             String cacheNameParam = request.getParameter("cacheName");
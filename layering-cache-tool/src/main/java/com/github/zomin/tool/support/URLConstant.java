@@ -16,6 +16,11 @@ public class URLConstant {
      */
     public static final String CACHE_STATS_LIST = "/cache-stats/list";
 
+    /**
+     * 本节点实时热点key
+     */
+    public static final String CACHE_STATS_HOT_KEYS = "/cache-stats/hot-keys";
+
     /**
      * 删除缓存统计
      */